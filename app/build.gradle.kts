@@ -5,11 +5,15 @@
  * For more details on building Java & JVM projects, please refer to https://docs.gradle.org/8.7/userguide/building_java_projects.html in the Gradle documentation.
  */
 
+import java.io.OutputStream
+
 plugins {
     // Apply the application plugin to add support for building a CLI application in Java.
     application
     // Shadow plugin to create fat/uber jar file.
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    // JMH plugin for the benchmarks in src/jmh, run by "./gradlew jmh".
+    id("me.champeau.jmh") version "0.7.2"
     id("java")
 }
 
@@ -24,8 +28,6 @@ dependencies {
 
     // This dependency is used by the application.
     implementation(libs.guava)
-    // Suppress the warning for no logging implementation.
-    implementation("org.apache.logging.log4j:log4j-core:2.19.0")
     // The apache POI library used for parsing Excel files.
     // https://mvnrepository.com/artifact/org.apache.poi/poi-ooxml
     implementation("org.apache.poi:poi-ooxml:5.2.5")
@@ -45,3 +47,102 @@ application {
     // Define the main class for the application.
     mainClass = "club.netheril.convert_3gpp_excel.App"
 }
+
+jmh {
+    jmhVersion = "1.37"
+    // Fixed forks and iterations so that numbers are comparable between runs.
+    fork = 2
+    warmupIterations = 3
+    warmup = "2s"
+    iterations = 5
+    timeOnIteration = "2s"
+    // Report allocation rate (gc.alloc.rate.norm) along with throughput.
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    // Run a subset of benchmarks with "./gradlew jmh -Pjmh.includes=<regex>".
+    if (project.hasProperty("jmh.includes")) {
+        includes = listOf(project.property("jmh.includes").toString())
+    }
+}
+
+sourceSets {
+    named("jmh") {
+        // Benchmarks share the Excel files of tests.
+        resources.srcDir("src/test/resources")
+    }
+}
+
+// Startup-optimized distribution, i.e., the shadow jar, a dynamic CDS archive of the classes
+// loaded by a training run over the test workbooks, and a launcher using the archive, see
+// src/fast-start/bin/convert_3gpp_excel. Install it by "./gradlew installFastStartDist".
+val fastStartHome = layout.buildDirectory.dir("install/fast-start")
+val fastStartJava = javaToolchains.launcherFor { languageVersion = java.toolchain.languageVersion }
+
+val syncFastStartDist by tasks.registering(Sync::class) {
+    from(tasks.named("shadowJar")) {
+        into("lib")
+        rename { "convert_3gpp_excel.jar" }
+    }
+    from("src/fast-start") {
+        filePermissions { unix("rwxr-xr-x") }
+    }
+    into(fastStartHome)
+    // The archive is created by installFastStartDist.
+    preserve { include("lib/app.jsa") }
+}
+
+// The workbooks converted by training runs of the fast-start distribution.
+val fastStartTrainingFiles =
+    listOf("table_5.3B.1.3-1.xlsx", "table_5.6A.1-2.xlsx").map { "src/test/resources/$it" }
+
+val installFastStartDist by tasks.registering(Exec::class) {
+    group = "distribution"
+    description = "Installs the startup-optimized distribution with a trained CDS archive."
+    dependsOn(syncFastStartDist)
+    inputs.files(fastStartTrainingFiles)
+    inputs.files(syncFastStartDist)
+    outputs.file(fastStartHome.map { it.file("lib/app.jsa") })
+    doFirst {
+        // The archive must match the jar, so it is always created from scratch.
+        fastStartHome.get().file("lib/app.jsa").asFile.delete()
+        environment("JAVA_HOME", fastStartJava.get().metadata.installationPath.asFile.path)
+    }
+    // Covers both a single file and a batch, the archive is written when the JVM exits.
+    executable(fastStartHome.get().file("bin/convert_3gpp_excel").asFile)
+    args(listOf("--batch", "--format=json") + fastStartTrainingFiles.map { file(it).path })
+    standardOutput = OutputStream.nullOutputStream()
+}
+
+// Compares the median wall time of converting a single file by "java -jar" and by the launcher of
+// the fast-start distribution, run by "./gradlew startupBenchmark".
+tasks.register("startupBenchmark") {
+    group = "benchmark"
+    description = "Measures cold-start latency of the CLI with and without the CDS archive."
+    dependsOn(installFastStartDist)
+    doLast {
+        val runs = 10
+        val javaHome = fastStartJava.get().metadata.installationPath.asFile.path
+        val home = fastStartHome.get().asFile
+        val input = file(fastStartTrainingFiles[1]).path
+        fun medianMillis(command: List<String>): Long {
+            val millis =
+                (0..runs).map {
+                    val process =
+                        ProcessBuilder(command)
+                            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    process.environment()["JAVA_HOME"] = javaHome
+                    val start = System.nanoTime()
+                    check(process.start().waitFor() == 0) { "Failed to run $command" }
+                    (System.nanoTime() - start) / 1_000_000
+                }
+            // The first run only warms up the page cache.
+            return millis.drop(1).sorted()[runs / 2]
+        }
+        val jar = "$home/lib/convert_3gpp_excel.jar"
+        val baseline = medianMillis(listOf("$javaHome/bin/java", "-jar", jar, input))
+        val fastStart = medianMillis(listOf("$home/bin/convert_3gpp_excel", input))
+        logger.lifecycle("java -jar:          $baseline ms")
+        logger.lifecycle("fast-start launcher: $fastStart ms")
+    }
+}
@@ -0,0 +1,85 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Benchmarks of opening a corpus store of many synthetic tables and fetching one of them.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CorpusStoreBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SyntheticCorpus {
+    @Param({"1000"})
+    public int tableCount;
+
+    @Param({"1000"})
+    public int logicalRows;
+
+    Path file;
+    CorpusStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      TableData data;
+      try (XSSFWorkbook workbook = SyntheticTables.createWorkbook(logicalRows)) {
+        data = TableSheetParser.parse(workbook, SyntheticTables.tableMetadata(logicalRows));
+      }
+      file = Files.createTempFile("corpus", ".3gps");
+      Files.delete(file);
+      try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+        for (int i = 0; i < tableCount; i++) {
+          writer.put(metadata(i), data);
+        }
+      }
+      store = CorpusStore.open(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      store.close();
+      Files.delete(file);
+    }
+
+    static TableMetadata metadata(int table) {
+      return TableMetadata.builder()
+          .setSpecName("38.101-3")
+          .setSpecVersion("h50")
+          .setTableSerialNumber("5.5B.4-" + table)
+          .setTableTitle("")
+          .setTableDataRect(SyntheticTables.tableDataRect(1))
+          .build();
+    }
+  }
+
+  // What a lookup from the command line does, except starting the JVM.
+  @Benchmark
+  public int openAndGet(SyntheticCorpus state) throws IOException {
+    try (CorpusStore store = CorpusStore.open(state.file)) {
+      return store.get("38.101-3", "h50", "5.5B.4-" + state.tableCount / 2).rowCount();
+    }
+  }
+
+  @Benchmark
+  public int get(SyntheticCorpus state) throws IOException {
+    return state.store.get("38.101-3", "h50", "5.5B.4-" + state.tableCount / 2).rowCount();
+  }
+
+  @Benchmark
+  public TableData getAndDeserialize(SyntheticCorpus state) throws IOException {
+    return state.store.get("38.101-3", "h50", "5.5B.4-" + state.tableCount / 2).toTableData();
+  }
+}
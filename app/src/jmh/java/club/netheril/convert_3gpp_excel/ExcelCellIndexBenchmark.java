@@ -0,0 +1,24 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Benchmarks of parsing Excel cell names.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ExcelCellIndexBenchmark {
+  @Param({"A5", "AF11", "XFD1048576"})
+  public String cellName;
+
+  @Benchmark
+  public ExcelCellIndex parseCellName() {
+    return ExcelCellIndex.of(cellName);
+  }
+}
@@ -0,0 +1,127 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Benchmarks of cell text extraction and border scanning in SheetParserUtils.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SheetParserUtilsBenchmark {
+
+  // Cells of "table_border_test_data.xlsx", see SheetParserUtilsTest.
+  @State(Scope.Benchmark)
+  public static class BorderTestData {
+    @Param({"plain", "numeric", "richText"})
+    public String cellKind;
+
+    XSSFWorkbook workbook;
+    XSSFSheet sheet;
+    ExcelCellIndex cellIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      workbook = SyntheticTables.openResource("table_border_test_data.xlsx");
+      sheet = workbook.getSheetAt(0);
+      switch (cellKind) {
+        case "plain":
+          cellIndex = ExcelCellIndex.of(1, 3);
+          break;
+        case "numeric":
+          cellIndex = ExcelCellIndex.of(1, 1);
+          break;
+        case "richText":
+          // A cell in which text contains subscriptions and superscriptions.
+          cellIndex = ExcelCellIndex.of(3, 3);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown cell kind " + cellKind);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      workbook.close();
+    }
+  }
+
+  // A synthetic large bordered table, see SyntheticTables.
+  @State(Scope.Benchmark)
+  public static class SyntheticTable {
+    @Param({"1000"})
+    public int logicalRows;
+
+    XSSFWorkbook workbook;
+    XSSFSheet sheet;
+    ImmutableSet<Integer> allRows;
+    ImmutableSet<Integer> allColumns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      workbook = SyntheticTables.createWorkbook(logicalRows);
+      sheet = workbook.getSheet(TableSheetParser.SHEET_NAME);
+      ExcelRect rect = SyntheticTables.tableDataRect(logicalRows);
+      allRows =
+          IntStream.range(rect.beginRow(), rect.endRow()).boxed().collect(toImmutableSet());
+      allColumns =
+          IntStream.range(rect.beginColumn(), rect.endColumn()).boxed().collect(toImmutableSet());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      workbook.close();
+    }
+  }
+
+  @Benchmark
+  public String safeGetCellString(BorderTestData state) {
+    return SheetParserUtils.safeGetCellString(state.sheet, state.cellIndex);
+  }
+
+  @Benchmark
+  public String safeGetCellStringByRowAndColumn(BorderTestData state) {
+    return SheetParserUtils.safeGetCellString(
+        state.sheet, state.cellIndex.row(), state.cellIndex.column());
+  }
+
+  // Top borders of all columns in a row in the middle of the table.
+  @Benchmark
+  public ImmutableSet<Integer> getColumnsWithTopBorder(SyntheticTable state) {
+    return SheetParserUtils.getColumnsWithTopBorder(
+        state.sheet, state.logicalRows, state.allColumns);
+  }
+
+  @Benchmark
+  public BitSet getColumnsWithTopBorderInRange(SyntheticTable state) {
+    return SheetParserUtils.getColumnsWithTopBorder(
+        state.sheet, state.logicalRows, 0, SyntheticTables.COLUMN_COUNT);
+  }
+
+  // Left borders of all rows of the table at the second column.
+  @Benchmark
+  public ImmutableSet<Integer> getRowsWithLeftBorder(SyntheticTable state) {
+    return SheetParserUtils.getRowsWithLeftBorder(state.sheet, state.allRows, 1);
+  }
+
+  @Benchmark
+  public BitSet getRowsWithLeftBorderInRange(SyntheticTable state) {
+    return SheetParserUtils.getRowsWithLeftBorder(
+        state.sheet, 0, state.allRows.size(), /* column= */ 1);
+  }
+}
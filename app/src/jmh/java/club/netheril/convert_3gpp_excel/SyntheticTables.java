@@ -0,0 +1,119 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+// Generates workbooks used by benchmarks.
+final class SyntheticTables {
+  // Number of physical rows of each logical row in a synthetic table.
+  private static final int ROWS_PER_LOGICAL_ROW = 2;
+
+  // Number of columns of a synthetic table, the first column is a leaf column and others are
+  // split into two child rows.
+  static final int COLUMN_COUNT = 8;
+
+  // Creates a workbook with a Metadata sheet and a Table sheet, in which the table has the given
+  // number of logical rows. Each logical row looks like this:
+  // ┌─────────────┬────────────┬────┬─────┬───
+  // │             │ 5,10,15,20 │ 40 │ ... │
+  // │ DC_1A_n1A   ├────────────┼────┼─────┼───
+  // │             │ 20         │    │ ... │
+  // └─────────────┴────────────┴────┴─────┴───
+  static XSSFWorkbook createWorkbook(int logicalRowCount) {
+    XSSFWorkbook workbook = new XSSFWorkbook();
+    XSSFCellStyle fullBorders = createStyle(workbook, true, true);
+    XSSFCellStyle topBorders = createStyle(workbook, true, false);
+    XSSFCellStyle bottomBorders = createStyle(workbook, false, true);
+
+    XSSFSheet table = workbook.createSheet(TableSheetParser.SHEET_NAME);
+    for (int logicalRow = 0; logicalRow < logicalRowCount; logicalRow++) {
+      for (int i = 0; i < ROWS_PER_LOGICAL_ROW; i++) {
+        XSSFRow row = table.createRow(logicalRow * ROWS_PER_LOGICAL_ROW + i);
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+          if (column == 0) {
+            row.createCell(column).setCellStyle(i == 0 ? topBorders : bottomBorders);
+            if (i == 0) {
+              row.getCell(column)
+                  .setCellValue(String.format("DC_%dA_n%dA", logicalRow, logicalRow));
+            }
+          } else {
+            row.createCell(column).setCellStyle(fullBorders);
+            if ((column + i) % 3 == 0) {
+              row.getCell(column).setCellValue(logicalRow * 10 + column);
+            } else if ((column + i) % 3 == 1) {
+              row.getCell(column).setCellValue("5,10,15,20");
+            }
+          }
+        }
+      }
+    }
+
+    XSSFSheet metadata = workbook.createSheet(MetadataSheetParser.SHEET_NAME);
+    String[][] keyValues = {
+      {"Spec", "38.101-3"},
+      {"Version", "h50"},
+      {"Number", "synthetic"},
+      {"Title", String.format("Synthetic table with %d logical rows", logicalRowCount)},
+      {"Top left", "A1"},
+      {"Bottom right", lastCellName(logicalRowCount)},
+    };
+    for (int i = 0; i < keyValues.length; i++) {
+      XSSFRow row = metadata.createRow(i);
+      row.createCell(0).setCellValue(keyValues[i][0]);
+      row.createCell(1).setCellValue(keyValues[i][1]);
+    }
+    return workbook;
+  }
+
+  // The rect of the table in a workbook created by createWorkbook().
+  static ExcelRect tableDataRect(int logicalRowCount) {
+    return ExcelRect.of(0, logicalRowCount * ROWS_PER_LOGICAL_ROW, 0, COLUMN_COUNT);
+  }
+
+  static TableMetadata tableMetadata(int logicalRowCount) {
+    return TableMetadata.builder()
+        .setSpecName("38.101-3")
+        .setSpecVersion("h50")
+        .setTableSerialNumber("synthetic")
+        .setTableTitle("")
+        .setTableDataRect(tableDataRect(logicalRowCount))
+        .build();
+  }
+
+  static XSSFWorkbook openResource(String fileName) {
+    InputStream file = SyntheticTables.class.getClassLoader().getResourceAsStream(fileName);
+    if (file == null) {
+      throw new IllegalStateException(String.format("Unable to find file '%s'", fileName));
+    }
+    try {
+      return new XSSFWorkbook(file);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Unable to read Excel from file '%s'", fileName), e);
+    }
+  }
+
+  private static String lastCellName(int logicalRowCount) {
+    return tableDataRect(logicalRowCount).bottomRight().toString();
+  }
+
+  private static XSSFCellStyle createStyle(XSSFWorkbook workbook, boolean top, boolean bottom) {
+    XSSFCellStyle style = workbook.createCellStyle();
+    style.setBorderLeft(BorderStyle.THIN);
+    style.setBorderRight(BorderStyle.THIN);
+    style.setBorderTop(top ? BorderStyle.THIN : BorderStyle.NONE);
+    style.setBorderBottom(bottom ? BorderStyle.THIN : BorderStyle.NONE);
+    // Border colors are always set by Excel, and are required by border checks.
+    style.setLeftBorderColor(IndexedColors.BLACK.getIndex());
+    style.setRightBorderColor(IndexedColors.BLACK.getIndex());
+    style.setTopBorderColor(IndexedColors.BLACK.getIndex());
+    style.setBottomBorderColor(IndexedColors.BLACK.getIndex());
+    return style;
+  }
+}
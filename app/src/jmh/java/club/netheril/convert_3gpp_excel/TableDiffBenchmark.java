@@ -0,0 +1,54 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Benchmarks of diffing two versions of a synthetic large table.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TableDiffBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class TableVersions {
+    @Param({"10000"})
+    public int logicalRows;
+
+    TableData oldData;
+    // The old table with a row in the middle changed.
+    TableData newData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      try (XSSFWorkbook workbook = SyntheticTables.createWorkbook(logicalRows)) {
+        oldData = TableSheetParser.parse(workbook, SyntheticTables.tableMetadata(logicalRows));
+      }
+      ArrayList<TableRow> rows = new ArrayList<>(oldData.rows());
+      int changedRow = rows.size() / 2;
+      ArrayList<TableColumn> columns = new ArrayList<>(rows.get(changedRow).columns());
+      columns.set(columns.size() - 1, TableColumn.leaf("changed"));
+      rows.set(changedRow, TableRow.of(columns));
+      newData = TableData.of(rows);
+    }
+  }
+
+  @Benchmark
+  public TableDiff identical(TableVersions state) {
+    return TableDiff.of(state.oldData, state.oldData);
+  }
+
+  @Benchmark
+  public TableDiff oneRowChanged(TableVersions state) {
+    return TableDiff.of(state.oldData, state.newData);
+  }
+}
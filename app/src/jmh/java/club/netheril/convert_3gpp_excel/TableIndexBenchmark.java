@@ -0,0 +1,55 @@
+package club.netheril.convert_3gpp_excel;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Benchmarks of building and looking up a TableIndex of a synthetic large table.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TableIndexBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SyntheticTable {
+    @Param({"10000"})
+    public int logicalRows;
+
+    TableData data;
+    TableIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      try (XSSFWorkbook workbook = SyntheticTables.createWorkbook(logicalRows)) {
+        data = TableSheetParser.parse(workbook, SyntheticTables.tableMetadata(logicalRows));
+      }
+      index = TableIndex.of(data);
+    }
+  }
+
+  @Benchmark
+  public TableIndex build(SyntheticTable state) {
+    return TableIndex.of(state.data);
+  }
+
+  // One band combination in the middle of the table.
+  @Benchmark
+  public ImmutableList<TableIndex.ColumnPath> find(SyntheticTable state) {
+    return state.index.find("DC_5000A_n5000A");
+  }
+
+  // Band combinations "DC_12A_...", "DC_120A_...", ..., "DC_1299A_...".
+  @Benchmark
+  public ImmutableList<TableIndex.ColumnPath> findPrefix(SyntheticTable state) {
+    return state.index.findPrefix("DC_12");
+  }
+}
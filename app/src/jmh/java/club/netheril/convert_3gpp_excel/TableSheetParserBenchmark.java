@@ -0,0 +1,90 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Benchmarks of TableSheetParser.parse() on a loaded workbook, i.e., excluding the time of loading
+// the workbook itself.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TableSheetParserBenchmark {
+
+  // Test workbooks with the same table data rects as in TableSheetParserTest.
+  @State(Scope.Benchmark)
+  public static class TestWorkbook {
+    @Param({"table_5.3B.1.3-1.xlsx:A6:G20", "table_5.6A.1-2.xlsx:A4:AF11"})
+    public String fileAndRect;
+
+    XSSFWorkbook workbook;
+    TableMetadata metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      String[] parts = fileAndRect.split(":");
+      workbook = SyntheticTables.openResource(parts[0]);
+      metadata =
+          TableMetadata.builder()
+              .setSpecName("")
+              .setSpecVersion("")
+              .setTableSerialNumber("")
+              .setTableTitle("")
+              .setTableDataRect(ExcelRect.of(parts[1], parts[2]))
+              .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      workbook.close();
+    }
+  }
+
+  // Synthetic large bordered tables, see SyntheticTables.
+  @State(Scope.Benchmark)
+  public static class SyntheticWorkbook {
+    @Param({"100", "1000", "10000"})
+    public int logicalRows;
+
+    XSSFWorkbook workbook;
+    TableMetadata metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      workbook = SyntheticTables.createWorkbook(logicalRows);
+      metadata = SyntheticTables.tableMetadata(logicalRows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      workbook.close();
+    }
+  }
+
+  @Benchmark
+  public TableData parseTestWorkbook(TestWorkbook state) {
+    return TableSheetParser.parse(state.workbook, state.metadata);
+  }
+
+  @Benchmark
+  public TableData parseSyntheticWorkbook(SyntheticWorkbook state) {
+    return TableSheetParser.parse(state.workbook, state.metadata);
+  }
+
+  // Includes the time of taking the snapshot of the table data rect.
+  @Benchmark
+  public TableData parseParallelSyntheticWorkbook(SyntheticWorkbook state) {
+    return TableSheetParser.parseParallel(
+        state.workbook, state.metadata, ForkJoinPool.commonPool());
+  }
+}
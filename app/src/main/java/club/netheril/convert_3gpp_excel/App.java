@@ -3,35 +3,547 @@
  */
 package club.netheril.convert_3gpp_excel;
 
-import java.io.FileInputStream;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nullable;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class App {
 
+  // Parse the Excel file with the streaming engine, see StreamingWorkbookParser.
+  private static final String FLAG_STREAMING = "--streaming";
+  // Convert all Excel files in the given files, directories and glob patterns, see
+  // BatchConverter.
+  private static final String FLAG_BATCH = "--batch";
+  // Output format, e.g., "--format=json", see TableDataWriter.Format.
+  private static final String FLAG_FORMAT = "--format";
+  // Parse logical rows of a table in parallel, see TableSheetParser.parseParallel().
+  private static final String FLAG_PARALLEL = "--parallel";
+  // Directory of the conversion cache, e.g., "--cache=/tmp/3gpp-cache", see ConversionCache.
+  private static final String FLAG_CACHE = "--cache";
+  // Print timing and counters of parsing to the standard error at the end, see ParserStats.
+  private static final String FLAG_STATS = "--stats";
+  // Run a conversion server on the given local port, e.g., "--serve=8080", see ConversionServer.
+  private static final String FLAG_SERVE = "--serve";
+  // Watch the given directories and convert workbooks whenever they are saved, into the given
+  // output directory, e.g., "--watch=out", see WorkbookWatcher.
+  private static final String FLAG_WATCH = "--watch";
+  // Corpus store of parsed tables, e.g., "--store=corpus.3gps", see CorpusStore. With --batch,
+  // tables are written into the store instead of the standard output. Otherwise, the arguments are
+  // keys of tables to print from the store, e.g., "38.101-1/h40/5.5A.1-1", or all keys are listed
+  // if there are no arguments.
+  private static final String FLAG_STORE = "--store";
+
+  private static final ImmutableSet<String> ALL_FLAGS =
+      ImmutableSet.of(
+          FLAG_STREAMING,
+          FLAG_BATCH,
+          FLAG_FORMAT,
+          FLAG_PARALLEL,
+          FLAG_CACHE,
+          FLAG_STATS,
+          FLAG_SERVE,
+          FLAG_WATCH,
+          FLAG_STORE);
+
+  // Size of the buffer of the standard output.
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  // Max total size of entries in the conversion cache.
+  private static final long CACHE_MAX_BYTES = 1L << 30;
+
+  // Max total size of results cached in memory by the conversion server.
+  private static final long SERVER_CACHE_MAX_BYTES = 256L << 20;
+
+  // Requests queued per worker of the conversion server, more requests are rejected.
+  private static final int SERVER_QUEUED_REQUESTS_PER_WORKER = 4;
+
   static TableData parseExcelFile(String excelFileName) {
+    return parseExcelFile(excelFileName, null);
+  }
+
+  // Same as parseExcelFile(excelFileName), but if a pool is given, logical rows are parsed in
+  // parallel by the pool.
+  static TableData parseExcelFile(String excelFileName, @Nullable ForkJoinPool pool) {
+    return parseExcelTable(excelFileName, pool).data();
+  }
+
+  // Same as parseExcelFile(excelFileName, pool), but the metadata of the table is also returned.
+  static ParsedTable parseExcelTable(String excelFileName, @Nullable ForkJoinPool pool) {
+    try {
+      return parseExcelTable(WorkbookSource.of(Path.of(excelFileName)), pool);
+    } catch (Throwable e) {
+      throw new IllegalArgumentException(
+          String.format("Failed to parse Excel file '%s' as a 3GPP spec table", excelFileName), e);
+    }
+  }
+
+  // Loads the workbook from the given source as an XSSFWorkbook and parses it, the workbook must
+  // have only one table.
+  static ParsedTable parseExcelTable(WorkbookSource source, @Nullable ForkJoinPool pool)
+      throws IOException {
+    return parseLoadedTables(source, pool, /* single= */ true).get(0);
+  }
+
+  // Loads the workbook from the given source as an XSSFWorkbook and parses all tables described
+  // by its metadata sheet, see MetadataSheetParser.parseAll(). A workbook of more than one table
+  // is parsed by TableSheetParser.parseAll(), in the given pool or the common pool.
+  static ImmutableList<ParsedTable> parseExcelTables(
+      WorkbookSource source, @Nullable ForkJoinPool pool) throws IOException {
+    return parseLoadedTables(source, pool, /* single= */ false);
+  }
+
+  private static ImmutableList<ParsedTable> parseLoadedTables(
+      WorkbookSource source, @Nullable ForkJoinPool pool, boolean single) throws IOException {
+    ParserStats.Timer loadTimer = ParserStats.start(ParserStats.Phase.LOAD, source.name());
+    OPCPackage pkg = source.open();
     try {
-      FileInputStream file = new FileInputStream(excelFileName);
-      XSSFWorkbook wb = new XSSFWorkbook(file);
-      TableMetadata metadata = MetadataSheetParser.parse(wb);
-      TableData data = TableSheetParser.parse(wb, metadata);
-      wb.close();
-      return data;
+      XSSFWorkbook wb = new XSSFWorkbook(pkg);
+      loadTimer.stop();
+      ParserStats.Timer metadataTimer =
+          ParserStats.start(ParserStats.Phase.METADATA, source.name());
+      ImmutableList<TableMetadata> metadata =
+          single
+              ? ImmutableList.of(MetadataSheetParser.parse(wb))
+              : MetadataSheetParser.parseAll(wb);
+      metadataTimer.stop();
+      if (metadata.size() > 1) {
+        return TableSheetParser.parseAll(
+            wb, metadata, pool == null ? ForkJoinPool.commonPool() : pool);
+      }
+      TableData data =
+          pool == null
+              ? TableSheetParser.parse(wb, metadata.get(0))
+              : TableSheetParser.parseParallel(wb, metadata.get(0), pool);
+      return ImmutableList.of(ParsedTable.of(metadata.get(0), data));
+    } finally {
+      // The package is opened as read only, revert() closes it (and the file) without saving.
+      pkg.revert();
+    }
+  }
 
+  // Same as parseExcelFile(), but the workbook is streamed instead of being fully loaded.
+  static TableData parseExcelFileStreaming(String excelFileName) {
+    return parseExcelFileStreaming(excelFileName, null);
+  }
+
+  static TableData parseExcelFileStreaming(String excelFileName, @Nullable ForkJoinPool pool) {
+    return parseExcelTableStreaming(excelFileName, pool).data();
+  }
+
+  static ParsedTable parseExcelTableStreaming(String excelFileName, @Nullable ForkJoinPool pool) {
+    try {
+      return StreamingWorkbookParser.parseTable(WorkbookSource.of(Path.of(excelFileName)), pool);
     } catch (Throwable e) {
       throw new IllegalArgumentException(
           String.format("Failed to parse Excel file '%s' as a 3GPP spec table", excelFileName), e);
     }
   }
 
+  // Parses all tables in the Excel file by the given engine, unless they are found in the given
+  // cache. The latency of the file is recorded in ParserStats.
+  static ImmutableList<ParsedTable> parseExcelTables(
+      String excelFileName,
+      boolean streaming,
+      @Nullable ForkJoinPool pool,
+      @Nullable ConversionCache cache) {
+    long startNanos = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      ImmutableList<ParsedTable> tables =
+          parseExcelTablesOrCached(excelFileName, streaming, pool, cache);
+      succeeded = true;
+      return tables;
+    } finally {
+      ParserStats.recordFile(excelFileName, System.nanoTime() - startNanos, succeeded);
+    }
+  }
+
+  private static ImmutableList<ParsedTable> parseExcelTablesOrCached(
+      String excelFileName,
+      boolean streaming,
+      @Nullable ForkJoinPool pool,
+      @Nullable ConversionCache cache) {
+    if (cache == null) {
+      return parseExcelTables(WorkbookSource.of(Path.of(excelFileName)), streaming, pool);
+    }
+    try {
+      // The cache reads the file once, and the same bytes are parsed.
+      return cache.getOrConvert(
+          Path.of(excelFileName), source -> parseExcelTables(source, streaming, pool));
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          String.format("Failed to parse Excel file '%s' as a 3GPP spec table", excelFileName), e);
+    }
+  }
+
+  // Parses all tables in the workbook from the given source by the given engine.
+  private static ImmutableList<ParsedTable> parseExcelTables(
+      WorkbookSource source, boolean streaming, @Nullable ForkJoinPool pool) {
+    try {
+      return streaming
+          ? StreamingWorkbookParser.parseTables(source, pool)
+          : parseExcelTables(source, pool);
+    } catch (Throwable e) {
+      throw new IllegalArgumentException(
+          String.format("Failed to parse Excel file '%s' as a 3GPP spec table", source.name()), e);
+    }
+  }
+
+  // The source of a table in outputs, i.e., the name of its file, followed by its table serial
+  // number if the file has more than one table, e.g., "38.101-3.xlsx#5.3B.1.3-1".
+  static String tableSource(String fileName, ParsedTable table, int tableCount) {
+    return tableCount == 1
+        ? fileName
+        : String.format("%s#%s", fileName, table.metadata().tableSerialNumber());
+  }
+
   public static void main(String[] args) {
-    if (args.length != 1) {
+    ImmutableList<String> flags =
+        Arrays.stream(args).filter(arg -> arg.startsWith("--")).collect(toImmutableList());
+    ImmutableList<String> files =
+        Arrays.stream(args).filter(arg -> !arg.startsWith("--")).collect(toImmutableList());
+    // Flags are either "--name" or "--name=value".
+    HashMap<String, String> flagValues = new HashMap<>();
+    for (String flag : flags) {
+      int separator = flag.indexOf('=');
+      String name = separator < 0 ? flag : flag.substring(0, separator);
+      if (!ALL_FLAGS.contains(name)) {
+        throw new IllegalArgumentException(String.format("Unrecognizable flag '%s'", flag));
+      }
+      flagValues.put(name, separator < 0 ? "" : flag.substring(separator + 1));
+    }
+    if (flagValues.containsKey(FLAG_SERVE)) {
+      serve(flagValues.get(FLAG_SERVE));
+      return;
+    }
+    boolean streaming = flagValues.containsKey(FLAG_STREAMING);
+    // Files of a batch are already converted in parallel, but a large table still benefits from
+    // parsing its rows in parallel. The common pool is shared by all files.
+    ForkJoinPool pool = flagValues.containsKey(FLAG_PARALLEL) ? ForkJoinPool.commonPool() : null;
+    ConversionCache cache = null;
+    if (flagValues.containsKey(FLAG_CACHE)) {
+      String cacheDirectory = flagValues.get(FLAG_CACHE);
+      try {
+        cache = ConversionCache.open(Path.of(cacheDirectory), CACHE_MAX_BYTES);
+      } catch (IOException | InvalidPathException e) {
+        throw new IllegalArgumentException(
+            String.format("Unable to open conversion cache in '%s'", cacheDirectory), e);
+      }
+    }
+    if (flagValues.containsKey(FLAG_WATCH)) {
+      // Outputs are files, so they are JSON unless another format is given.
+      watch(
+          files,
+          flagValues.get(FLAG_WATCH),
+          streaming,
+          pool,
+          cache,
+          flagValues.containsKey(FLAG_FORMAT)
+              ? TableDataWriter.Format.of(flagValues.get(FLAG_FORMAT))
+              : TableDataWriter.Format.JSON);
+      return;
+    }
+    TableDataWriter.Format format =
+        flagValues.containsKey(FLAG_FORMAT)
+            ? TableDataWriter.Format.of(flagValues.get(FLAG_FORMAT))
+            : TableDataWriter.Format.PRETTY;
+    Writer out =
+        new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+    boolean stats = flagValues.containsKey(FLAG_STATS);
+    if (flagValues.containsKey(FLAG_STORE) && !flagValues.containsKey(FLAG_BATCH)) {
+      lookup(flagValues.get(FLAG_STORE), files, format, out);
+      flush(out);
+      return;
+    }
+    if (flagValues.containsKey(FLAG_BATCH)) {
+      boolean succeeded =
+          flagValues.containsKey(FLAG_STORE)
+              ? runBatch(files, streaming, pool, cache, flagValues.get(FLAG_STORE))
+              : runBatch(files, streaming, pool, cache, format, out);
+      flush(out);
+      if (stats) {
+        System.err.println(ParserStats.report());
+      }
+      System.exit(succeeded ? 0 : 1);
+    }
+    if (files.size() != 1) {
       throw new IllegalArgumentException(
           String.format(
               "We expect only one command argument, i.e., path to the excel file. But we got '%s'",
               String.join(", ", args)));
     }
-    System.out.println(
-        String.format(
-            "Successfully parsed Excel file %s, data =\n%s\n", args[0], parseExcelFile(args[0])));
+    String fileName = files.get(0);
+    writeResult(fileName, parseExcelTables(fileName, streaming, pool, cache), format, out);
+    flush(out);
+    if (stats) {
+      System.err.println(ParserStats.report());
+    }
+  }
+
+  // Starts a conversion server on the given port of the loopback address, the server keeps running
+  // after main() returns.
+  private static void serve(String port) {
+    int workers = Runtime.getRuntime().availableProcessors();
+    InetSocketAddress address;
+    try {
+      address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format("Invalid port '%s' to serve", port), e);
+    }
+    try {
+      ConversionServer server =
+          ConversionServer.start(
+              address,
+              workers,
+              workers * SERVER_QUEUED_REQUESTS_PER_WORKER,
+              SERVER_CACHE_MAX_BYTES);
+      System.err.println(
+          String.format(
+              "Serving on http://%s:%d%s",
+              server.address().getHostString(),
+              server.address().getPort(),
+              ConversionServer.CONVERT_PATH));
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to serve on port %s", port), e);
+    }
+  }
+
+  // Watches the given directories and converts workbooks in them into the output directory, until
+  // the process is killed.
+  private static void watch(
+      List<String> directories,
+      String outputDirectory,
+      boolean streaming,
+      @Nullable ForkJoinPool pool,
+      @Nullable ConversionCache cache,
+      TableDataWriter.Format format) {
+    ImmutableList<Path> directoryPaths;
+    Path outputPath;
+    try {
+      directoryPaths = directories.stream().map(Path::of).collect(toImmutableList());
+      outputPath = Path.of(outputDirectory);
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("Invalid directory to watch or output", e);
+    }
+    try (WorkbookWatcher watcher =
+        WorkbookWatcher.create(
+            directoryPaths,
+            outputPath,
+            file -> parseExcelTables(file.toString(), streaming, pool, cache),
+            streaming
+                ? BatchConverter.STREAMING_HEAP_BYTES_PER_FILE_BYTE
+                : BatchConverter.HEAP_BYTES_PER_FILE_BYTE,
+            format,
+            WorkbookWatcher.DEFAULT_QUIET_PERIOD,
+            result -> {
+              if (result.succeeded()) {
+                System.err.println(String.format("Converted Excel file %s", result.file()));
+              } else {
+                System.err.println(
+                    String.format(
+                        "Failed to parse Excel file %s: %s", result.file(), result.error()));
+              }
+            })) {
+      System.err.println(
+          String.format(
+              "Watching %s, outputs are written to %s",
+              String.join(", ", directories),
+              outputDirectory));
+      watcher.run();
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Unable to watch '%s'", String.join(", ", directories)), e);
+    }
+  }
+
+  // Writes the tables parsed from the given file in the given format, one after another.
+  private static void writeResult(
+      String fileName, List<ParsedTable> tables, TableDataWriter.Format format, Writer out) {
+    for (ParsedTable table : tables) {
+      String source = tableSource(fileName, table, tables.size());
+      writeResult(
+          source,
+          String.format("Successfully parsed Excel file %s, data =\n", source),
+          table.data(),
+          format,
+          out);
+    }
+  }
+
+  // Writes the table data from the given source (e.g., a file), where the pretty format begins
+  // with the given title.
+  private static void writeResult(
+      String source,
+      String prettyTitle,
+      TableData data,
+      TableDataWriter.Format format,
+      Writer out) {
+    try {
+      if (format == TableDataWriter.Format.PRETTY) {
+        out.write(prettyTitle);
+        TableDataWriter.write(data, format, out);
+        out.write("\n\n");
+      } else {
+        TableDataWriter.write(data, format, source, out);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write to the standard output", e);
+    }
+  }
+
+  private static void flush(Writer out) {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write to the standard output", e);
+    }
+  }
+
+  // Converts all Excel files found in the inputs, returns whether all of them succeed.
+  private static boolean runBatch(
+      List<String> inputs,
+      boolean streaming,
+      @Nullable ForkJoinPool pool,
+      @Nullable ConversionCache cache,
+      TableDataWriter.Format format,
+      Writer out) {
+    ImmutableList<Path> files;
+    try {
+      files = BatchConverter.expandInputs(inputs);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to list Excel files in '%s'", String.join(", ", inputs)), e);
+    }
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            files,
+            file -> parseExcelTables(file.toString(), streaming, pool, cache),
+            streaming
+                ? BatchConverter.STREAMING_HEAP_BYTES_PER_FILE_BYTE
+                : BatchConverter.HEAP_BYTES_PER_FILE_BYTE,
+            result -> {
+              if (result.succeeded()) {
+                writeResult(result.file().toString(), result.tables(), format, out);
+              } else {
+                // Keeps the order of outputs and errors when both go to a terminal.
+                flush(out);
+                System.err.println(
+                    String.format(
+                        "Failed to parse Excel file %s: %s", result.file(), result.error()));
+              }
+            });
+    System.err.println(summary);
+    return summary.failures().isEmpty();
+  }
+
+  // Converts all Excel files found in the inputs into the corpus store in the given file, returns
+  // whether all of them succeed.
+  private static boolean runBatch(
+      List<String> inputs,
+      boolean streaming,
+      @Nullable ForkJoinPool pool,
+      @Nullable ConversionCache cache,
+      String storeFile) {
+    ImmutableList<Path> files;
+    try {
+      files = BatchConverter.expandInputs(inputs);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to list Excel files in '%s'", String.join(", ", inputs)), e);
+    }
+    Path storePath;
+    try {
+      storePath = Path.of(storeFile);
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException(String.format("Invalid corpus store '%s'", storeFile), e);
+    }
+    BatchConverter.Summary summary;
+    try (CorpusStore.Writer store = CorpusStore.append(storePath)) {
+      summary =
+          BatchConverter.convert(
+              files,
+              file -> {
+                // Tables are put by the workers, so that they are serialized in parallel, and
+                // results of BatchConverter don't hold them until they are reported. Each table
+                // of a workbook is keyed by its own metadata.
+                for (ParsedTable table :
+                    parseExcelTables(file.toString(), streaming, pool, cache)) {
+                  try {
+                    store.put(table);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(
+                        String.format("Unable to write to corpus store '%s'", storeFile), e);
+                  }
+                }
+                return ImmutableList.of();
+              },
+              streaming
+                  ? BatchConverter.STREAMING_HEAP_BYTES_PER_FILE_BYTE
+                  : BatchConverter.HEAP_BYTES_PER_FILE_BYTE,
+              result -> {
+                if (!result.succeeded()) {
+                  System.err.println(
+                      String.format(
+                          "Failed to parse Excel file %s: %s", result.file(), result.error()));
+                }
+              });
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Unable to write to corpus store '%s'", storeFile), e);
+    }
+    System.err.println(summary);
+    return summary.failures().isEmpty();
+  }
+
+  // Writes the tables of the given keys from the corpus store in the given file, or lists all keys
+  // in the store if there are no keys.
+  private static void lookup(
+      String storeFile, List<String> keys, TableDataWriter.Format format, Writer out) {
+    try (CorpusStore store = CorpusStore.open(Path.of(storeFile))) {
+      if (keys.isEmpty()) {
+        for (CorpusStore.Key key : store.keys()) {
+          out.write(key + "\n");
+        }
+        return;
+      }
+      for (String text : keys) {
+        CorpusStore.Key key = CorpusStore.Key.parse(text);
+        BinaryTable table = store.get(key);
+        if (table == null) {
+          throw new IllegalArgumentException(
+              String.format("Table '%s' is not found in corpus store '%s'", key, storeFile));
+        }
+        writeResult(
+            key.toString(),
+            String.format("Table %s, data =\n", key),
+            table.toTableData(),
+            format,
+            out);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Unable to read corpus store '%s'", storeFile), e);
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException(String.format("Invalid corpus store '%s'", storeFile), e);
+    }
   }
 }
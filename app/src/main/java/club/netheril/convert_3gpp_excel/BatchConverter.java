@@ -0,0 +1,290 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+// This class converts many Excel files concurrently in one JVM.
+//
+// Each file is converted on its own virtual thread, but a file is only admitted when its
+// estimated heap usage fits into the heap budget, so that a few large workbooks don't exhaust the
+// heap. Results are reported in the same (deterministic) order as the input files, and a file
+// which fails to convert doesn't stop the others.
+final class BatchConverter {
+  private static final String EXCEL_FILE_SUFFIX = ".xlsx";
+
+  // Excel creates "~$name.xlsx" lock files next to opened workbooks.
+  private static final String EXCEL_LOCK_FILE_PREFIX = "~$";
+
+  // A loaded XSSFWorkbook typically takes tens of times of the (compressed) file size in heap,
+  // this is a conservative estimate for admission. The streaming engine only keeps the table data
+  // rect, which takes much less.
+  static final long HEAP_BYTES_PER_FILE_BYTE = 64;
+  static final long STREAMING_HEAP_BYTES_PER_FILE_BYTE = 8;
+
+  // The fraction of the max heap that converting files may take in total.
+  private static final double HEAP_BUDGET_FRACTION = 0.5;
+
+  // Heap budget is managed by permits of this size.
+  private static final long BYTES_PER_PERMIT = 1 << 20;
+
+  @AutoValue
+  abstract static class FileResult {
+    abstract Path file();
+
+    // Tables of the file (see App.parseExcelTables()), non-null if the file is converted
+    // successfully.
+    @Nullable
+    abstract ImmutableList<ParsedTable> tables();
+
+    // Non-null if the file fails to convert.
+    @Nullable
+    abstract Throwable error();
+
+    boolean succeeded() {
+      return error() == null;
+    }
+
+    static FileResult success(Path file, List<ParsedTable> tables) {
+      return new AutoValue_BatchConverter_FileResult(file, ImmutableList.copyOf(tables), null);
+    }
+
+    static FileResult failure(Path file, Throwable error) {
+      return new AutoValue_BatchConverter_FileResult(file, null, checkNotNull(error));
+    }
+  }
+
+  @AutoValue
+  abstract static class Summary {
+    abstract int fileCount();
+
+    abstract ImmutableList<FileResult> failures();
+
+    abstract long elapsedNanos();
+
+    double filesPerSecond() {
+      return elapsedNanos() == 0 ? 0 : fileCount() * 1e9 / elapsedNanos();
+    }
+
+    @Override
+    public final String toString() {
+      StringBuilder builder =
+          new StringBuilder(
+              String.format(
+                  "Converted %d files in %.3f s (%.2f files/s), %d succeeded, %d failed",
+                  fileCount(),
+                  elapsedNanos() / 1e9,
+                  filesPerSecond(),
+                  fileCount() - failures().size(),
+                  failures().size()));
+      for (FileResult failure : failures()) {
+        builder.append(String.format("\n  %s: %s", failure.file(), failure.error()));
+      }
+      return builder.toString();
+    }
+  }
+
+  // Expands the given inputs to a list of Excel files. An input could be a file, a directory (in
+  // which all Excel files are included recursively) or a glob pattern, e.g., "specs/**/*.xlsx".
+  // Files expanded from one input are sorted, and duplicated files are only kept once.
+  public static ImmutableList<Path> expandInputs(List<String> inputs) throws IOException {
+    LinkedHashSet<Path> files = new LinkedHashSet<>();
+    for (String input : inputs) {
+      if (isGlob(input)) {
+        files.addAll(expandGlob(input));
+      } else {
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) {
+          files.addAll(listExcelFiles(path, file -> true));
+        } else {
+          checkArgument(Files.isRegularFile(path), "Unable to find Excel file '%s'", input);
+          files.add(path.normalize());
+        }
+      }
+    }
+    return ImmutableList.copyOf(files);
+  }
+
+  private static boolean isGlob(String input) {
+    return input.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+  }
+
+  private static ImmutableList<Path> expandGlob(String glob) throws IOException {
+    // Walk from the longest leading path without any glob characters.
+    Path base = Paths.get("");
+    Path pattern = Paths.get(glob);
+    for (Path segment : pattern) {
+      if (isGlob(segment.toString())) {
+        break;
+      }
+      base = base.resolve(segment);
+    }
+    if (pattern.isAbsolute()) {
+      base = pattern.getRoot().resolve(base);
+    }
+    if (!Files.isDirectory(base)) {
+      return ImmutableList.of();
+    }
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    return listExcelFiles(base, matcher::matches);
+  }
+
+  private static ImmutableList<Path> listExcelFiles(Path directory, PathMatcher filter)
+      throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths
+          .filter(Files::isRegularFile)
+          .filter(BatchConverter::isExcelFile)
+          .filter(filter::matches)
+          .map(Path::normalize)
+          .sorted()
+          .collect(toImmutableList());
+    }
+  }
+
+  // Whether the given path is named as an Excel file, excluding lock files of opened workbooks.
+  static boolean isExcelFile(Path path) {
+    String name = path.getFileName().toString();
+    return name.endsWith(EXCEL_FILE_SUFFIX) && !name.startsWith(EXCEL_LOCK_FILE_PREFIX);
+  }
+
+  // Estimated heap usage of converting the given file.
+  static long estimateHeapBytes(Path file, long heapBytesPerFileByte) {
+    try {
+      return Files.size(file) * heapBytesPerFileByte;
+    } catch (IOException e) {
+      // The file will fail to convert anyway.
+      return 0;
+    }
+  }
+
+  // Converts all files with the default heap budget, see convert() below.
+  public static Summary convert(
+      List<Path> files,
+      Function<Path, ? extends List<ParsedTable>> parser,
+      long heapBytesPerFileByte,
+      Consumer<FileResult> onResult) {
+    return convert(
+        files,
+        parser,
+        (long) (Runtime.getRuntime().maxMemory() * HEAP_BUDGET_FRACTION),
+        file -> estimateHeapBytes(file, heapBytesPerFileByte),
+        onResult);
+  }
+
+  // Converts all files concurrently with the given parser, the total estimated heap usage of files
+  // being converted or waiting to be reported at the same time is bounded by heapBudgetBytes
+  // (except a file which alone exceeds the budget, which is converted when no other file is being
+  // converted or waiting).
+  //
+  // onResult() is called for each file in the same order as the input files, on the calling
+  // thread.
+  public static Summary convert(
+      List<Path> files,
+      Function<Path, ? extends List<ParsedTable>> parser,
+      long heapBudgetBytes,
+      ToLongFunction<Path> heapEstimator,
+      Consumer<FileResult> onResult) {
+    checkNotNull(files);
+    checkNotNull(parser);
+    checkNotNull(onResult);
+    int totalPermits =
+        (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudgetBytes / BYTES_PER_PERMIT));
+    // Permits of a file are only released after its result is reported, since a converted result
+    // holds its table until then. Both happen on the calling thread.
+    int freePermits = totalPermits;
+
+    long startNanos = System.nanoTime();
+    ArrayList<FileResult> failures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      ArrayDeque<PendingResult> results = new ArrayDeque<>(files.size());
+      for (Path file : files) {
+        // Admission happens on the calling thread in the input order, so that a large file is not
+        // starved by small files behind it.
+        int permits =
+            (int)
+                Math.max(
+                    1, Math.min(totalPermits, heapEstimator.applyAsLong(file) / BYTES_PER_PERMIT));
+        // Waits for the earliest results until the file fits, all permits are free when there are
+        // no pending results.
+        while (freePermits < permits) {
+          freePermits += report(results.poll(), failures, onResult);
+        }
+        freePermits -= permits;
+        results.add(
+            new PendingResult(
+                executor.submit(
+                    () -> {
+                      try {
+                        return FileResult.success(file, parser.apply(file));
+                      } catch (Throwable e) {
+                        return FileResult.failure(file, e);
+                      }
+                    }),
+                permits));
+        // Report finished results as early as possible, but still in order.
+        while (!results.isEmpty() && results.peek().result.isDone()) {
+          freePermits += report(results.poll(), failures, onResult);
+        }
+      }
+      while (!results.isEmpty()) {
+        report(results.poll(), failures, onResult);
+      }
+    }
+    return new AutoValue_BatchConverter_Summary(
+        files.size(), ImmutableList.copyOf(failures), System.nanoTime() - startNanos);
+  }
+
+  // The result of a file which is admitted but not reported yet, with the heap permits it holds.
+  private static final class PendingResult {
+    final Future<FileResult> result;
+    final int permits;
+
+    PendingResult(Future<FileResult> result, int permits) {
+      this.result = result;
+      this.permits = permits;
+    }
+  }
+
+  // Waits for and reports the given result, returns the permits it releases.
+  private static int report(
+      PendingResult pending, List<FileResult> failures, Consumer<FileResult> onResult) {
+    FileResult fileResult;
+    try {
+      fileResult = pending.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for conversion results", e);
+    } catch (ExecutionException e) {
+      // Not expected, all errors are caught by the conversion task.
+      throw new IllegalStateException("Unexpected conversion failure", e.getCause());
+    }
+    if (!fileResult.succeeded()) {
+      failures.add(fileResult);
+    }
+    onResult.accept(fileResult);
+    return pending.permits;
+  }
+}
@@ -0,0 +1,293 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A lazy view of a table serialized by BinaryTableFormat, usually backed by a memory-mapped file.
+//
+// Opening a table only validates the header, rows, columns and cells are read from the buffer
+// when they are accessed, and each string is decoded at most once. Views are cheap objects which
+// only hold an offset, so the whole tree is never deserialized unless toTableData() is called.
+//
+// The buffer may come from an untrusted or corrupted file, so every read is checked when it
+// happens: an offset, a count or a string out of range throws an IllegalArgumentException, and
+// offsets of children must point before their parents (as they are written), so that a corrupted
+// tree never loops.
+//
+// A binary table is safe to be read by multiple threads.
+final class BinaryTable {
+  private final ByteBuffer buffer;
+  private final int totalSize;
+  private final int stringCount;
+  private final int stringDataOffset;
+  private final int stringDataSize;
+  private final int nodesOffset;
+  private final int rootOffset;
+  private final TableMetadata metadata;
+
+  // Decoded strings, null if not decoded yet. Concurrent decoding of the same string is benign.
+  private final String[] strings;
+
+  private BinaryTable(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.limit() < BinaryTableFormat.HEADER_SIZE
+        || buffer.getInt(0) != BinaryTableFormat.MAGIC) {
+      throw new IllegalArgumentException("Invalid binary table, the magic number doesn't match");
+    }
+    if (buffer.getInt(Integer.BYTES) != BinaryTableFormat.VERSION) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unsupported binary table version %d, expected %d",
+              buffer.getInt(Integer.BYTES), BinaryTableFormat.VERSION));
+    }
+    this.totalSize = buffer.getInt(BinaryTableFormat.TOTAL_SIZE_OFFSET);
+    this.stringCount = buffer.getInt(BinaryTableFormat.STRING_COUNT_OFFSET);
+    this.nodesOffset = buffer.getInt(BinaryTableFormat.NODES_OFFSET_OFFSET);
+    this.rootOffset = buffer.getInt(BinaryTableFormat.ROOT_OFFSET_OFFSET);
+    // In long, so that a corrupted count can't overflow.
+    long stringDataOffset = BinaryTableFormat.HEADER_SIZE + (stringCount + 1L) * Integer.BYTES;
+    long metadataOffset = (long) nodesOffset - BinaryTableFormat.METADATA_SIZE;
+    if (totalSize > buffer.limit()
+        || stringCount < 0
+        || stringDataOffset > metadataOffset
+        || nodesOffset > rootOffset
+        || (long) rootOffset + Integer.BYTES > totalSize) {
+      throw new IllegalArgumentException("Invalid binary table, it is truncated or corrupted");
+    }
+    this.stringDataOffset = (int) stringDataOffset;
+    this.stringDataSize = (int) (metadataOffset - stringDataOffset);
+    // Bounded by the buffer, since the ends of strings are in it.
+    this.strings = new String[stringCount];
+
+    int offset = (int) metadataOffset;
+    this.metadata =
+        TableMetadata.builder()
+            .setSpecName(string(buffer.getInt(offset)))
+            .setSpecVersion(string(buffer.getInt(offset + Integer.BYTES)))
+            .setTableSerialNumber(string(buffer.getInt(offset + 2 * Integer.BYTES)))
+            .setTableTitle(string(buffer.getInt(offset + 3 * Integer.BYTES)))
+            .setTableSheetName(string(buffer.getInt(offset + 4 * Integer.BYTES)))
+            .setTableDataRect(
+                ExcelRect.of(
+                    buffer.getInt(offset + 5 * Integer.BYTES),
+                    buffer.getInt(offset + 6 * Integer.BYTES),
+                    buffer.getInt(offset + 7 * Integer.BYTES),
+                    buffer.getInt(offset + 8 * Integer.BYTES)))
+            .build();
+  }
+
+  // Reads a binary table from the given buffer, starting at its position. The buffer is not
+  // copied, and it must not be modified afterwards.
+  public static BinaryTable of(ByteBuffer buffer) {
+    return new BinaryTable(checkNotNull(buffer).slice());
+  }
+
+  public TableMetadata metadata() {
+    return metadata;
+  }
+
+  // Size of the serialized table in bytes, i.e., where whatever follows it in the buffer begins.
+  public int size() {
+    return totalSize;
+  }
+
+  public int rowCount() {
+    return countAt(rootOffset);
+  }
+
+  public Row row(int index) {
+    return new Row(this, rowOffsetAt(rootOffset, index));
+  }
+
+  // Deserializes the whole table.
+  public TableData toTableData() {
+    return TableData.of(toTableRows(rootOffset));
+  }
+
+  // The offset of the index-th row in the row list at the given offset.
+  private int rowOffsetAt(int rowListOffset, int index) {
+    int count = countAt(rowListOffset);
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException(
+          String.format("Invalid row index %d, there are %d rows", index, count));
+    }
+    return childOffsetAt(rowListOffset, rowListOffset + (index + 1L) * Integer.BYTES);
+  }
+
+  private ImmutableList<TableRow> toTableRows(int rowListOffset) {
+    int count = countAt(rowListOffset);
+    ImmutableList.Builder<TableRow> rows = ImmutableList.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(new Row(this, rowOffsetAt(rowListOffset, i)).toTableRow());
+    }
+    return rows.build();
+  }
+
+  // Reads an integer in the nodes section.
+  private int nodeIntAt(long offset) {
+    if (offset < nodesOffset || offset + Integer.BYTES > totalSize) {
+      throw new IllegalArgumentException(
+          String.format("Invalid binary table, offset %d is out of the nodes", offset));
+    }
+    return buffer.getInt((int) offset);
+  }
+
+  // Reads the count of a list at the given offset, whose integer entries follow the count.
+  private int countAt(int offset) {
+    int count = nodeIntAt(offset);
+    if (count < 0 || count > (totalSize - offset - Integer.BYTES) / Integer.BYTES) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid binary table, count %d at offset %d is out of range", count, offset));
+    }
+    return count;
+  }
+
+  // Reads the offset of a child of the node at the given offset, which must be before the node.
+  private int childOffsetAt(int parentOffset, long entryOffset) {
+    int childOffset = nodeIntAt(entryOffset);
+    if (childOffset < 0 || (long) nodesOffset + childOffset >= parentOffset) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid binary table, child offset %d of the node at offset %d is out of range",
+              childOffset, parentOffset));
+    }
+    return nodesOffset + childOffset;
+  }
+
+  private String string(int id) {
+    if (id < 0 || id >= stringCount) {
+      throw new IllegalArgumentException(
+          String.format("Invalid binary table, string id %d is out of range", id));
+    }
+    String string = strings[id];
+    if (string == null) {
+      int begin = buffer.getInt(BinaryTableFormat.HEADER_SIZE + id * Integer.BYTES);
+      int end = buffer.getInt(BinaryTableFormat.HEADER_SIZE + (id + 1) * Integer.BYTES);
+      if (begin < 0 || begin > end || end > stringDataSize) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Invalid binary table, string %d at [%d, %d) is out of the string data",
+                id, begin, end));
+      }
+      byte[] bytes = new byte[end - begin];
+      buffer.get(stringDataOffset + begin, bytes);
+      string = new String(bytes, StandardCharsets.UTF_8);
+      strings[id] = string;
+    }
+    return string;
+  }
+
+  // A lazy view of a row.
+  static final class Row {
+    private final BinaryTable table;
+    private final int offset;
+
+    private Row(BinaryTable table, int offset) {
+      this.table = table;
+      this.offset = offset;
+    }
+
+    public int columnCount() {
+      return table.countAt(offset);
+    }
+
+    public Column column(int index) {
+      int count = columnCount();
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException(
+            String.format("Invalid column index %d, there are %d columns", index, count));
+      }
+      return new Column(table, table.childOffsetAt(offset, offset + (index + 1L) * Integer.BYTES));
+    }
+
+    public TableRow toTableRow() {
+      int count = columnCount();
+      ImmutableList.Builder<TableColumn> columns = ImmutableList.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        columns.add(column(i).toTableColumn());
+      }
+      return TableRow.of(columns.build());
+    }
+  }
+
+  // A lazy view of a column.
+  static final class Column {
+    private final BinaryTable table;
+    private final int offset;
+
+    private Column(BinaryTable table, int offset) {
+      this.table = table;
+      this.offset = offset;
+    }
+
+    public TableColumn.Type type() {
+      int type = table.nodeIntAt(offset);
+      switch (type) {
+        case BinaryTableFormat.TYPE_EMPTY:
+          return TableColumn.Type.EMPTY;
+        case BinaryTableFormat.TYPE_LEAF:
+          return TableColumn.Type.LEAF;
+        case BinaryTableFormat.TYPE_PARENT:
+          return TableColumn.Type.PARENT;
+        default:
+          throw new IllegalArgumentException(
+              String.format("Invalid binary table, unknown column type %d", type));
+      }
+    }
+
+    // Number of cells of a leaf column, 0 for other columns.
+    public int cellCount() {
+      return type() == TableColumn.Type.LEAF ? table.countAt(offset + Integer.BYTES) : 0;
+    }
+
+    public String cell(int index) {
+      int count = cellCount();
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException(
+            String.format("Invalid cell index %d, there are %d cells", index, count));
+      }
+      return table.string(table.nodeIntAt(offset + (index + 2L) * Integer.BYTES));
+    }
+
+    // Number of child rows of a parent column, 0 for other columns.
+    public int childRowCount() {
+      return type() == TableColumn.Type.PARENT ? table.countAt(childRowListOffset()) : 0;
+    }
+
+    public Row childRow(int index) {
+      if (type() != TableColumn.Type.PARENT) {
+        throw new IndexOutOfBoundsException(
+            String.format("Invalid child row index %d, the column is not a parent", index));
+      }
+      return new Row(table, table.rowOffsetAt(childRowListOffset(), index));
+    }
+
+    private int childRowListOffset() {
+      return table.childOffsetAt(offset, offset + Integer.BYTES);
+    }
+
+    public TableColumn toTableColumn() {
+      switch (type()) {
+        case EMPTY:
+          return TableColumn.empty();
+        case LEAF:
+          {
+            int count = cellCount();
+            ImmutableList.Builder<String> cells = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+              cells.add(cell(i));
+            }
+            return TableColumn.leaf(cells.build());
+          }
+        case PARENT:
+          return TableColumn.parent(table.toTableRows(childRowListOffset()));
+        default:
+          throw new IllegalStateException("Unknown TableColumn type: " + type());
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// This class defines a compact binary serialization of a parsed table, i.e., TableMetadata and
+// TableData, which can be read lazily from a memory-mapped file by BinaryTable without
+// deserializing the whole tree.
+//
+// All integers are 32-bit big-endian, and all offsets are relative to the beginning of the
+// (possibly embedded) table. The layout is:
+//
+//   Header:   magic, version, total size, string count, nodes offset, root offset
+//   Strings:  (string count + 1) ends of strings in the string data, then the UTF-8 string data,
+//             i.e., string i is bytes [end(i - 1), end(i)) of the string data. Each distinct
+//             string (cells and metadata) is stored only once.
+//   Metadata: string ids of the spec name, spec version, table serial number, table title and
+//             table sheet name, then begin row, end row, begin column and end column of the table
+//             data rect.
+//   Nodes:    rows and columns, children are always written before their parents.
+//             Row list: count, then offsets of rows.
+//             Row:      column count, then offsets of columns.
+//             Column:   type (see TYPE_*), then for a leaf column the cell count and string ids
+//                       of cells, for a parent column the offset of its row list, and nothing
+//                       for an empty one.
+//   The root offset points to the row list of the table. Offsets in nodes are relative to the
+//   beginning of the nodes section.
+final class BinaryTableFormat {
+  static final int MAGIC = 0x33475054; // "3GPT"
+  static final int VERSION = 2;
+
+  static final int HEADER_SIZE = 6 * Integer.BYTES;
+  static final int TOTAL_SIZE_OFFSET = 2 * Integer.BYTES;
+  static final int STRING_COUNT_OFFSET = 3 * Integer.BYTES;
+  static final int NODES_OFFSET_OFFSET = 4 * Integer.BYTES;
+  static final int ROOT_OFFSET_OFFSET = 5 * Integer.BYTES;
+
+  static final int METADATA_SIZE = 9 * Integer.BYTES;
+
+  static final int TYPE_EMPTY = 0;
+  static final int TYPE_LEAF = 1;
+  static final int TYPE_PARENT = 2;
+
+  // Serializes the given table.
+  public static byte[] toBytes(TableMetadata metadata, TableData data) {
+    checkNotNull(metadata);
+    checkNotNull(data);
+    try {
+      return new Encoder(metadata, data).encode();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected error of writing to a byte array", e);
+    }
+  }
+
+  public static void write(TableMetadata metadata, TableData data, OutputStream out)
+      throws IOException {
+    out.write(toBytes(metadata, data));
+  }
+
+  public static void write(TableMetadata metadata, TableData data, Path file) throws IOException {
+    Files.write(file, toBytes(metadata, data));
+  }
+
+  // Memory-maps the given file as a binary table. The mapping stays valid after the file is
+  // closed, until the returned table is garbage collected.
+  public static BinaryTable open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return BinaryTable.of(buffer);
+    }
+  }
+
+  private static final class Encoder {
+    private final TableMetadata metadata;
+    private final TableData data;
+    private final LinkedHashMap<String, Integer> stringIds = new LinkedHashMap<>();
+
+    private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+
+    Encoder(TableMetadata metadata, TableData data) {
+      this.metadata = metadata;
+      this.data = data;
+    }
+
+    byte[] encode() throws IOException {
+      // Metadata strings are registered first, so that they come first in the dictionary.
+      int[] metadataStrings = {
+        stringId(metadata.specName()),
+        stringId(metadata.specVersion()),
+        stringId(metadata.tableSerialNumber()),
+        stringId(metadata.tableTitle()),
+        stringId(metadata.tableSheetName()),
+      };
+      int rootOffset = writeRows(data.rows());
+      nodes.flush();
+
+      ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      ByteArrayOutputStream stringEnds = new ByteArrayOutputStream();
+      DataOutputStream ends = new DataOutputStream(stringEnds);
+      ends.writeInt(0);
+      for (String string : stringIds.keySet()) {
+        stringBytes.write(string.getBytes(StandardCharsets.UTF_8));
+        ends.writeInt(stringBytes.size());
+      }
+      ends.flush();
+
+      int nodesOffset = HEADER_SIZE + stringEnds.size() + stringBytes.size() + METADATA_SIZE;
+      int totalSize = nodesOffset + nodeBytes.size();
+
+      ByteArrayOutputStream result = new ByteArrayOutputStream(totalSize);
+      DataOutputStream out = new DataOutputStream(result);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(totalSize);
+      out.writeInt(stringIds.size());
+      out.writeInt(nodesOffset);
+      out.writeInt(nodesOffset + rootOffset);
+      stringEnds.writeTo(out);
+      stringBytes.writeTo(out);
+      for (int id : metadataStrings) {
+        out.writeInt(id);
+      }
+      ExcelRect rect = metadata.tableDataRect();
+      out.writeInt(rect.beginRow());
+      out.writeInt(rect.endRow());
+      out.writeInt(rect.beginColumn());
+      out.writeInt(rect.endColumn());
+      // Offsets of nodes are relative to the nodes section, they are rebased by the reader.
+      nodeBytes.writeTo(out);
+      out.flush();
+      return result.toByteArray();
+    }
+
+    private int stringId(String string) {
+      Integer id = stringIds.get(string);
+      if (id == null) {
+        id = stringIds.size();
+        stringIds.put(string, id);
+      }
+      return id;
+    }
+
+    // Writes the rows (and their descendants), returns the offset of the row list.
+    private int writeRows(List<TableRow> rows) throws IOException {
+      int[] rowOffsets = new int[rows.size()];
+      for (int i = 0; i < rows.size(); i++) {
+        rowOffsets[i] = writeRow(rows.get(i));
+      }
+      int offset = nodes.size();
+      nodes.writeInt(rows.size());
+      for (int rowOffset : rowOffsets) {
+        nodes.writeInt(rowOffset);
+      }
+      return offset;
+    }
+
+    private int writeRow(TableRow row) throws IOException {
+      List<TableColumn> columns = row.columns();
+      int[] columnOffsets = new int[columns.size()];
+      for (int i = 0; i < columns.size(); i++) {
+        columnOffsets[i] = writeColumn(columns.get(i));
+      }
+      int offset = nodes.size();
+      nodes.writeInt(columns.size());
+      for (int columnOffset : columnOffsets) {
+        nodes.writeInt(columnOffset);
+      }
+      return offset;
+    }
+
+    private int writeColumn(TableColumn column) throws IOException {
+      switch (column.type()) {
+        case EMPTY:
+          {
+            int offset = nodes.size();
+            nodes.writeInt(TYPE_EMPTY);
+            return offset;
+          }
+        case LEAF:
+          {
+            int offset = nodes.size();
+            nodes.writeInt(TYPE_LEAF);
+            nodes.writeInt(column.cells().size());
+            for (String cell : column.cells()) {
+              nodes.writeInt(stringId(cell));
+            }
+            return offset;
+          }
+        case PARENT:
+          {
+            int rowsOffset = writeRows(column.childRows());
+            int offset = nodes.size();
+            nodes.writeInt(TYPE_PARENT);
+            nodes.writeInt(rowsOffset);
+            return offset;
+          }
+        default:
+          throw new IllegalStateException("Unknown TableColumn type: " + column.type());
+      }
+    }
+  }
+}
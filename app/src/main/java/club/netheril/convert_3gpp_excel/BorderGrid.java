@@ -0,0 +1,296 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+// This class is a precomputed index of all cell borders within a rect of an Excel sheet.
+//
+// Horizontal edges (i.e., "top borders") are stored for rows [beginRow, endRow] and columns
+// [beginColumn, endColumn), vertical edges (i.e., "left borders") are stored for rows
+// [beginRow, endRow) and columns [beginColumn, endColumn]. Note that the end row and the end
+// column are included, as the bottom and right borders of the rect are the top border of the
+// row after it and the left border of the column after it.
+//
+// Each line of edges is stored as a packed bitset together with the prefix counts of set bits
+// per 64-bit word, so that "does every cell in a range have a border" is an O(1) query.
+//
+// Edges are also stored transposed, i.e., top borders per column and left borders per row, so
+// that the next edge below (or on the right of) a cell is found by skipping whole words of
+// bits, and splitting a rect costs the number of its edges instead of the number of its cells.
+final class BorderGrid {
+  private final ExcelRect rect;
+
+  // One bit line per row in [beginRow, endRow], bit i is set if column (beginColumn + i) has a
+  // top border at that row.
+  private final BitLines topBorders;
+
+  // One bit line per column in [beginColumn, endColumn], bit i is set if row (beginRow + i) has
+  // a left border at that column.
+  private final BitLines leftBorders;
+
+  // The transposed topBorders, one bit line per column in [beginColumn, endColumn), bit i is set
+  // if row (beginRow + i) has a top border at that column.
+  private final BitLines topBordersByColumn;
+
+  // The transposed leftBorders, one bit line per row in [beginRow, endRow), bit i is set if
+  // column (beginColumn + i) has a left border at that row.
+  private final BitLines leftBordersByRow;
+
+  private BorderGrid(
+      ExcelRect rect,
+      BitLines topBorders,
+      BitLines leftBorders,
+      BitLines topBordersByColumn,
+      BitLines leftBordersByRow) {
+    this.rect = rect;
+    this.topBorders = topBorders;
+    this.leftBorders = leftBorders;
+    this.topBordersByColumn = topBordersByColumn;
+    this.leftBordersByRow = leftBordersByRow;
+  }
+
+  // The border mask of individual cells, see SheetParserUtils.TOP_BORDER etc. A cell which
+  // doesn't exist has no border.
+  @FunctionalInterface
+  interface CellBorders {
+    int borderMask(int row, int column);
+  }
+
+  // Scans the given sheet once and builds the border grid of the given rect.
+  public static BorderGrid of(XSSFSheet sheet, ExcelRect rect) {
+    checkNotNull(sheet);
+    checkNotNull(rect);
+    checkArgument(
+        rect.endRow() <= sheet.getLastRowNum() + 1,
+        "Invalid rect %s, it is beyond the last row of the sheet",
+        rect);
+    StyleBorderCache styles = StyleBorderCache.of(sheet.getWorkbook().getStylesSource());
+    return of(
+        rect,
+        (row, column) -> {
+          XSSFRow sheetRow = sheet.getRow(row);
+          XSSFCell cell = sheetRow == null ? null : sheetRow.getCell(column);
+          return cell == null ? 0 : styles.cellBorderMask(cell);
+        });
+  }
+
+  // Builds the border grid of the given rect from border masks of individual cells. Each cell in
+  // rows [beginRow - 1, endRow] and columns [beginColumn - 1, endColumn] is looked up only once.
+  static BorderGrid of(ExcelRect rect, CellBorders cellBorders) {
+    checkNotNull(rect);
+    checkNotNull(cellBorders);
+
+    int rowCount = rect.rowCount();
+    int columnCount = rect.columnCount();
+    BitLines topBorders = new BitLines(rowCount + 1, columnCount);
+    BitLines leftBorders = new BitLines(columnCount + 1, rowCount);
+    BitLines topBordersByColumn = new BitLines(columnCount, rowCount + 1);
+    BitLines leftBordersByRow = new BitLines(rowCount, columnCount + 1);
+
+    // Border masks of the previous row and the current row, indexed by
+    // (column - beginColumn + 1), i.e., the column on the left of the rect is included.
+    int[] prevMasks = new int[columnCount + 2];
+    int[] masks = new int[columnCount + 2];
+    if (rect.beginRow() > 0) {
+      fillBorderMasks(cellBorders, rect.beginRow() - 1, rect, prevMasks);
+    }
+    for (int row = rect.beginRow(); row <= rect.endRow(); row++) {
+      fillBorderMasks(cellBorders, row, rect, masks);
+      int rowOffset = row - rect.beginRow();
+
+      // By definition, all cells in the first row has a top border.
+      for (int i = 0; i < columnCount; i++) {
+        if (row == 0
+            || (masks[i + 1] & SheetParserUtils.TOP_BORDER) != 0
+            || (prevMasks[i + 1] & SheetParserUtils.BOTTOM_BORDER) != 0) {
+          topBorders.set(rowOffset, i);
+          topBordersByColumn.set(i, rowOffset);
+        }
+      }
+
+      // By definition, all cells in the first column has a left border.
+      if (row < rect.endRow()) {
+        for (int i = 0; i <= columnCount; i++) {
+          if (rect.beginColumn() + i == 0
+              || (masks[i + 1] & SheetParserUtils.LEFT_BORDER) != 0
+              || (masks[i] & SheetParserUtils.RIGHT_BORDER) != 0) {
+            leftBorders.set(i, rowOffset);
+            leftBordersByRow.set(rowOffset, i);
+          }
+        }
+      }
+
+      int[] swap = prevMasks;
+      prevMasks = masks;
+      masks = swap;
+    }
+    topBorders.buildRanks();
+    leftBorders.buildRanks();
+    return new BorderGrid(rect, topBorders, leftBorders, topBordersByColumn, leftBordersByRow);
+  }
+
+  private static void fillBorderMasks(
+      CellBorders cellBorders, int row, ExcelRect rect, int[] masks) {
+    for (int column = rect.beginColumn() - 1; column <= rect.endColumn(); column++) {
+      masks[column - rect.beginColumn() + 1] =
+          column < 0 ? 0 : cellBorders.borderMask(row, column);
+    }
+  }
+
+  public ExcelRect rect() {
+    return rect;
+  }
+
+  // Whether the cell at the given row and column has a top border.
+  public boolean hasTopBorder(int row, int column) {
+    return hasTopBorder(row, column, column + 1);
+  }
+
+  // Whether all cells at the given row and within columns [beginColumn, endColumn) have a top
+  // border.
+  public boolean hasTopBorder(int row, int beginColumn, int endColumn) {
+    return countTopBorders(row, beginColumn, endColumn) == endColumn - beginColumn;
+  }
+
+  // Whether any cell at the given row and within columns [beginColumn, endColumn) has a top
+  // border.
+  public boolean hasAnyTopBorder(int row, int beginColumn, int endColumn) {
+    return countTopBorders(row, beginColumn, endColumn) > 0;
+  }
+
+  // Whether the cell at the given row and column has a left border.
+  public boolean hasLeftBorder(int row, int column) {
+    return hasLeftBorder(row, row + 1, column);
+  }
+
+  // Whether all cells within rows [beginRow, endRow) and at the given column have a left border.
+  public boolean hasLeftBorder(int beginRow, int endRow, int column) {
+    return countLeftBorders(beginRow, endRow, column) == endRow - beginRow;
+  }
+
+  // The first row in (row, endRow] at which the given column has a top border, or (endRow + 1) if
+  // there is none.
+  public int nextTopBorderRow(int row, int column) {
+    if (row < rect.beginRow()
+        || row > rect.endRow()
+        || column < rect.beginColumn()
+        || column >= rect.endColumn()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid next top border query at row %d and column %d in border grid of %s",
+              row, column, rect));
+    }
+    return rect.beginRow()
+        + topBordersByColumn.nextSetBit(
+            column - rect.beginColumn(), row - rect.beginRow() + 1);
+  }
+
+  // The first column in (column, endColumn] at which the given row has a left border, or
+  // (endColumn + 1) if there is none.
+  public int nextLeftBorderColumn(int row, int column) {
+    if (row < rect.beginRow()
+        || row >= rect.endRow()
+        || column < rect.beginColumn()
+        || column > rect.endColumn()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid next left border query at row %d and column %d in border grid of %s",
+              row, column, rect));
+    }
+    return rect.beginColumn()
+        + leftBordersByRow.nextSetBit(
+            row - rect.beginRow(), column - rect.beginColumn() + 1);
+  }
+
+  private int countTopBorders(int row, int beginColumn, int endColumn) {
+    // Not using checkArgument() here to avoid formatting the error message on this hot path.
+    if (row < rect.beginRow()
+        || row > rect.endRow()
+        || beginColumn < rect.beginColumn()
+        || beginColumn >= endColumn
+        || endColumn > rect.endColumn()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid top border query at row %d and columns [%d, %d) in border grid of %s",
+              row, beginColumn, endColumn, rect));
+    }
+    return topBorders.count(
+        row - rect.beginRow(), beginColumn - rect.beginColumn(), endColumn - rect.beginColumn());
+  }
+
+  private int countLeftBorders(int beginRow, int endRow, int column) {
+    if (column < rect.beginColumn()
+        || column > rect.endColumn()
+        || beginRow < rect.beginRow()
+        || beginRow >= endRow
+        || endRow > rect.endRow()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid left border query at rows [%d, %d) and column %d in border grid of %s",
+              beginRow, endRow, column, rect));
+    }
+    return leftBorders.count(
+        column - rect.beginColumn(), beginRow - rect.beginRow(), endRow - rect.beginRow());
+  }
+
+  // A fixed number of equally sized bitsets packed into one array, with the number of set bits
+  // before each 64-bit word (only if buildRanks() is called).
+  private static final class BitLines {
+    private final int bitsPerLine;
+    private final int wordsPerLine;
+    private final long[] words;
+    private int[] ranks;
+
+    BitLines(int lineCount, int bitsPerLine) {
+      this.bitsPerLine = bitsPerLine;
+      // One extra word per line, so that the rank of the "end" bit can always be looked up.
+      this.wordsPerLine = bitsPerLine / Long.SIZE + 1;
+      this.words = new long[lineCount * wordsPerLine];
+    }
+
+    void set(int line, int bit) {
+      words[line * wordsPerLine + bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+    }
+
+    void buildRanks() {
+      ranks = new int[words.length];
+      for (int line = 0; line < ranks.length; line += wordsPerLine) {
+        int rank = 0;
+        for (int word = line; word < line + wordsPerLine; word++) {
+          ranks[word] = rank;
+          rank += Long.bitCount(words[word]);
+        }
+      }
+    }
+
+    // The first set bit in [from, bitsPerLine) of the given line, or bitsPerLine if there is none.
+    int nextSetBit(int line, int from) {
+      int lineBegin = line * wordsPerLine;
+      int word = from / Long.SIZE;
+      long bits = words[lineBegin + word] & (-1L << (from % Long.SIZE));
+      while (bits == 0) {
+        if (++word == wordsPerLine) {
+          return bitsPerLine;
+        }
+        bits = words[lineBegin + word];
+      }
+      return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+    }
+
+    // Number of set bits in [begin, end) of the given line.
+    int count(int line, int begin, int end) {
+      return rank(line, end) - rank(line, begin);
+    }
+
+    // Number of set bits in [0, bit) of the given line.
+    private int rank(int line, int bit) {
+      int word = line * wordsPerLine + bit / Long.SIZE;
+      long mask = (1L << (bit % Long.SIZE)) - 1;
+      return ranks[word] + Long.bitCount(words[word] & mask);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package club.netheril.convert_3gpp_excel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.annotation.Nullable;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+// This class memoizes decoded cell strings of a workbook, see SheetParserUtils.safeGetCellString().
+//
+// 3GPP tables repeat the same strings (e.g., "DC_7A_n7A", "5,10,15,20") many times, and Excel
+// stores each distinct text only once in the shared strings table. So the decoded string of a
+// shared string (i.e., after the rich text runs are split and trimmed) is computed once per
+// shared strings table index, and numeric cells are formatted once per value.
+//
+// All returned strings are interned by this cache, so equal cell strings share one String
+// instance, which reduces the retained heap of large TableData trees.
+//
+// This class is not thread safe, a cache is expected to be used by one parse of one workbook.
+final class CellTextCache {
+  private static final int INITIAL_NUMERIC_CAPACITY = 64;
+
+  // Null if the workbook has no shared strings table.
+  @Nullable private final SharedStrings sharedStrings;
+
+  // Decoded strings indexed by the shared strings table index, null if not decoded yet.
+  private String[] sharedStringTexts;
+
+  // Formatted numeric strings keyed by the raw bits of the values, in an open-addressed table
+  // with linear probing, so that a lookup doesn't box the value. A slot is empty if its text is
+  // null, and the table is at most half full.
+  private long[] numericKeys = new long[INITIAL_NUMERIC_CAPACITY];
+  private String[] numericTexts = new String[INITIAL_NUMERIC_CAPACITY];
+  private int numericCount = 0;
+
+  private final HashMap<String, String> internedTexts = new HashMap<>();
+
+  private CellTextCache(@Nullable SharedStrings sharedStrings) {
+    this.sharedStrings = sharedStrings;
+    this.sharedStringTexts =
+        new String[sharedStrings == null ? 0 : Math.max(0, sharedStrings.getUniqueCount())];
+  }
+
+  public static CellTextCache of(@Nullable SharedStrings sharedStrings) {
+    return new CellTextCache(sharedStrings);
+  }
+
+  // Returns the decoded string of the shared string with the given index, used by the cell at the
+  // given row and column (which is only used by error messages).
+  public String sharedString(int index, int row, int column) {
+    if (sharedStrings == null || index < 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid shared string index %d at cell %s", index, ExcelCellIndex.of(row, column)));
+    }
+    if (index >= sharedStringTexts.length) {
+      // The unique count of a shared strings table could be missing or wrong.
+      sharedStringTexts =
+          Arrays.copyOf(sharedStringTexts, Math.max(index + 1, sharedStringTexts.length * 2));
+    }
+    String text = sharedStringTexts[index];
+    if (text == null) {
+      // A string which fails to decode is not cached, the error is raised on each use.
+      text =
+          intern(
+              SheetParserUtils.richTextToString(
+                  (XSSFRichTextString) sharedStrings.getItemAt(index), row, column));
+      sharedStringTexts[index] = text;
+    }
+    return text;
+  }
+
+  // Returns the formatted string of a numeric cell value.
+  public String numeric(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    int mask = numericKeys.length - 1;
+    int slot = numericSlotOf(bits, mask);
+    while (numericTexts[slot] != null) {
+      if (numericKeys[slot] == bits) {
+        return numericTexts[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    String text = intern(SheetParserUtils.numericToString(value));
+    numericKeys[slot] = bits;
+    numericTexts[slot] = text;
+    numericCount++;
+    if (numericCount * 2 > numericKeys.length) {
+      growNumericTexts();
+    }
+    return text;
+  }
+
+  // The home slot of a value in a table of (mask + 1) slots. The bits are spread by a
+  // multiplicative hash, since integral values only differ in the high bits of a double.
+  private static int numericSlotOf(long bits, int mask) {
+    return (int) ((bits * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+  private void growNumericTexts() {
+    long[] oldKeys = numericKeys;
+    String[] oldTexts = numericTexts;
+    numericKeys = new long[oldKeys.length * 2];
+    numericTexts = new String[oldTexts.length * 2];
+    int mask = numericKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldTexts[i] != null) {
+        int slot = numericSlotOf(oldKeys[i], mask);
+        while (numericTexts[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        numericKeys[slot] = oldKeys[i];
+        numericTexts[slot] = oldTexts[i];
+      }
+    }
+  }
+
+  // Returns the canonical instance of the given string.
+  public String intern(String text) {
+    String interned = internedTexts.putIfAbsent(text, text);
+    return interned == null ? text : interned;
+  }
+}
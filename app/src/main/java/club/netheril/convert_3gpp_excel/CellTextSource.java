@@ -0,0 +1,9 @@
+package club.netheril.convert_3gpp_excel;
+
+// A source of cell strings of an Excel sheet, e.g., a loaded XSSFSheet or a snapshot of it.
+@FunctionalInterface
+interface CellTextSource {
+  // Returns the string of the cell at the given zero-based row and column, an empty string is
+  // returned if the cell doesn't exist or is blank.
+  String cellString(int row, int column);
+}
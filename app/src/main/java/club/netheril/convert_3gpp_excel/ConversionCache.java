@@ -0,0 +1,270 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+// This class is a persistent cache of converted workbooks in a directory, so that unchanged
+// workbooks are not converted again, e.g., by the next nightly run over the same corpus.
+//
+// An entry is keyed by the SHA-256 of the workbook bytes, the parser version and the binary table
+// format version, and it stores the parsed tables of the workbook in BinaryTableFormat, one after
+// another. So a renamed or copied workbook still hits the cache, while a changed workbook or a new
+// parser never reads a stale entry.
+//
+// The directory may be shared by multiple threads and processes:
+// - An entry is written to a temporary file first and then atomically renamed, so a reader either
+//   sees a complete entry or no entry. Racing writers of the same key write the same content.
+// - An entry which fails to read (e.g., truncated by a crash of a file system without atomic
+//   rename) is treated as a miss and removed.
+// - The total size of entries is bounded by evicting the least recently used entries, where the
+//   last modified time of an entry is its last use. An entry removed by another process while it
+//   is being read is simply a miss.
+final class ConversionCache {
+  // Bump this whenever a change of parsers may change the result of the same workbook, so that
+  // entries written by older parsers are never read.
+  static final int PARSER_VERSION = 1;
+
+  static final String ENTRY_SUFFIX = ".3gpt";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  // Temporary files older than this are left by crashed writers.
+  private static final Duration STALE_TEMP_FILE_AGE = Duration.ofHours(1);
+
+  private final Path directory;
+  private final long maxBytes;
+
+  // Total size of entries when the directory was scanned last time, plus the size of entries
+  // written by this instance since then. Entries written by other processes are only counted by
+  // the next scan.
+  private long estimatedBytes;
+
+  private ConversionCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  // Opens (or creates) the cache in the given directory, the total size of entries is bounded by
+  // maxBytes.
+  public static ConversionCache open(Path directory, long maxBytes) throws IOException {
+    checkNotNull(directory);
+    checkArgument(maxBytes > 0, "Invalid max size %s of conversion cache", maxBytes);
+    Files.createDirectories(directory);
+    ConversionCache cache = new ConversionCache(directory, maxBytes);
+    cache.evict();
+    return cache;
+  }
+
+  // Returns the cached tables of the given workbook, or converts the workbook by the given
+  // converter and caches the result. Failures of the cache itself (e.g., a full disk) don't fail
+  // the conversion, the table is just not cached.
+  //
+  // The workbook is read only once, and the converter parses the same bytes which are hashed, so
+  // that a workbook saved in the meantime (e.g., by --watch) never stores the tables of its new
+  // content under the key of its old content.
+  public ImmutableList<ParsedTable> getOrConvert(
+      Path workbook, Function<WorkbookSource, ? extends List<ParsedTable>> converter)
+      throws IOException {
+    checkNotNull(workbook);
+    checkNotNull(converter);
+    byte[] bytes = Files.readAllBytes(workbook);
+    String key = keyOf(bytes);
+    ImmutableList<ParsedTable> tables = get(key);
+    if (tables != null) {
+      return tables;
+    }
+    tables =
+        ImmutableList.copyOf(converter.apply(WorkbookSource.of(bytes, workbook.toString())));
+    try {
+      put(key, tables);
+    } catch (IOException | UncheckedIOException e) {
+      // Not cached, it will be converted again next time.
+    }
+    return tables;
+  }
+
+  // The key of a workbook, i.e., the hex SHA-256 of its bytes and the versions of the parser and
+  // the binary format.
+  static String keyOf(Path workbook) throws IOException {
+    return keyOf(Files.readAllBytes(checkNotNull(workbook)));
+  }
+
+  // Same as keyOf(workbook), but of the given bytes of a workbook.
+  static String keyOf(byte[] workbook) {
+    checkNotNull(workbook);
+    return String.format(
+        "%s-p%d-f%d",
+        Hashing.sha256().hashBytes(workbook),
+        PARSER_VERSION,
+        BinaryTableFormat.VERSION);
+  }
+
+  // Returns the cached tables of the given key, or null if they are not cached.
+  @Nullable
+  ImmutableList<ParsedTable> get(String key) {
+    Path entry = entryOf(key);
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(entry);
+    } catch (IOException e) {
+      // E.g., NoSuchFileException if it is not cached or it is evicted by another process.
+      return null;
+    }
+    ImmutableList<ParsedTable> tables;
+    try {
+      tables = decode(ByteBuffer.wrap(bytes));
+    } catch (RuntimeException e) {
+      // A corrupted entry, e.g., an IllegalArgumentException of a truncated buffer.
+      deleteQuietly(entry);
+      return null;
+    }
+    try {
+      // Marks the entry as recently used.
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // Evicted by another process after it is read, the tables are still valid.
+    }
+    return tables;
+  }
+
+  // Decodes the tables of an entry, which are binary tables one after another.
+  private static ImmutableList<ParsedTable> decode(ByteBuffer entry) {
+    ImmutableList.Builder<ParsedTable> tables = ImmutableList.builder();
+    while (entry.hasRemaining()) {
+      BinaryTable table = BinaryTable.of(entry);
+      tables.add(ParsedTable.of(table.metadata(), table.toTableData()));
+      entry.position(entry.position() + table.size());
+    }
+    ImmutableList<ParsedTable> result = tables.build();
+    checkArgument(!result.isEmpty(), "Empty conversion cache entry");
+    return result;
+  }
+
+  // Caches the tables with the given key.
+  void put(String key, List<ParsedTable> tables) throws IOException {
+    checkArgument(!tables.isEmpty(), "No tables to cache");
+    ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    for (ParsedTable table : tables) {
+      entry.writeBytes(BinaryTableFormat.toBytes(table.metadata(), table.data()));
+    }
+    byte[] bytes = entry.toByteArray();
+    Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+    try {
+      Files.write(temp, bytes);
+      try {
+        Files.move(
+            temp,
+            entryOf(key),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, entryOf(key), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      deleteQuietly(temp);
+    }
+    boolean needsEviction;
+    synchronized (this) {
+      estimatedBytes += bytes.length;
+      needsEviction = estimatedBytes > maxBytes;
+    }
+    if (needsEviction) {
+      evict();
+    }
+  }
+
+  // Scans the directory and removes the least recently used entries until the total size of
+  // entries is at most maxBytes.
+  synchronized void evict() throws IOException {
+    ArrayList<EntryFile> entries = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(ENTRY_SUFFIX) && !name.endsWith(TEMP_SUFFIX)) {
+          continue;
+        }
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+          // Removed by another process.
+          continue;
+        }
+        if (name.endsWith(TEMP_SUFFIX)) {
+          if (now - attributes.lastModifiedTime().toMillis() > STALE_TEMP_FILE_AGE.toMillis()) {
+            deleteQuietly(file);
+          }
+          continue;
+        }
+        entries.add(new EntryFile(file, attributes.size(), attributes.lastModifiedTime()));
+      }
+    }
+    // The most recently used entries are kept.
+    entries.sort(Comparator.comparing((EntryFile entry) -> entry.lastUsed).reversed());
+    long keptBytes = 0;
+    for (EntryFile entry : entries) {
+      if (keptBytes + entry.size <= maxBytes) {
+        keptBytes += entry.size;
+      } else {
+        deleteQuietly(entry.file);
+      }
+    }
+    estimatedBytes = keptBytes;
+  }
+
+  private Path entryOf(String key) {
+    return directory.resolve(key + ENTRY_SUFFIX);
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // E.g., the file is being used by another process on Windows, it is removed later.
+    }
+  }
+
+  private static final class EntryFile {
+    final Path file;
+    final long size;
+    final FileTime lastUsed;
+
+    EntryFile(Path file, long size, FileTime lastUsed) {
+      this.file = file;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  // Lists all entries in the cache, for tests.
+  ImmutableList<Path> entries() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+          .sorted()
+          .collect(toImmutableList());
+    }
+  }
+}
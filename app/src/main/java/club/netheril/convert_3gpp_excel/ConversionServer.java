@@ -0,0 +1,274 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// This class is a long-running local conversion server, so that a client converting many
+// workbooks pays for JVM startup and loading of POI classes only once, see "--serve" of App.
+//
+// "POST /convert" with the bytes of an Excel file as the request body responds the table data in
+// JSON (see TableDataWriter.Format.JSON). A workbook of more than one table is responded as one
+// JSON document per table and line, whose "file" field is "request body#<table serial number>"
+// (see App.tableSource()), with the content type of NDJSON. Errors are responded in plain text:
+// - 400 if the workbook is not a valid 3GPP spec table.
+// - 413 if the request body is larger than MAX_REQUEST_BYTES.
+// - 503 if all workers are busy and the queue is full, the client should retry later.
+//
+// Requests are accepted by the single dispatcher thread of the HTTP server, which only admits
+// them and hands them to a bounded pool of workers. A worker reads the request body, converts it
+// and writes the response. At most (workers + queueCapacity) requests are admitted at the same
+// time, others are rejected right away by the dispatcher, so that an overloaded server sheds load
+// instead of queueing without bound.
+//
+// Results are cached in memory by the SHA-256 of the workbook bytes, and the cache is bounded by
+// the total size of cached JSON.
+final class ConversionServer implements AutoCloseable {
+  static final String CONVERT_PATH = "/convert";
+
+  static final int MAX_REQUEST_BYTES = 64 << 20;
+
+  // Name of the workbook of a request in messages and outputs.
+  private static final String REQUEST_BODY_NAME = "request body";
+
+  private final HttpServer server;
+  private final ThreadPoolExecutor workers;
+  // Permits of requests which are being converted or queued.
+  private final Semaphore admission;
+  private final int maxAdmitted;
+  private final Function<byte[], ? extends List<ParsedTable>> converter;
+  // Responded content type and body by the SHA-256 of the workbook bytes.
+  private final Cache<HashCode, Response> results;
+
+  private ConversionServer(
+      HttpServer server,
+      int workerCount,
+      int queueCapacity,
+      long cacheMaxBytes,
+      Function<byte[], ? extends List<ParsedTable>> converter) {
+    this.server = server;
+    // The queue is bounded by the admission permits instead of its capacity, since a worker
+    // releases its permit slightly before it takes the next request from the queue.
+    this.workers =
+        new ThreadPoolExecutor(
+            workerCount,
+            workerCount,
+            0,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("conversion-worker-%d").build());
+    this.maxAdmitted = workerCount + queueCapacity;
+    this.admission = new Semaphore(maxAdmitted);
+    this.converter = converter;
+    this.results =
+        CacheBuilder.newBuilder()
+            .maximumWeight(cacheMaxBytes)
+            .weigher((HashCode key, Response response) -> response.body.length)
+            .build();
+  }
+
+  // Starts a server which converts workbooks by MetadataSheetParser and TableSheetParser.
+  public static ConversionServer start(
+      InetSocketAddress address, int workerCount, int queueCapacity, long cacheMaxBytes)
+      throws IOException {
+    return start(
+        address, workerCount, queueCapacity, cacheMaxBytes, ConversionServer::convertWorkbook);
+  }
+
+  // Starts a server which converts workbooks by the given converter, which throws an
+  // IllegalArgumentException for an invalid workbook.
+  static ConversionServer start(
+      InetSocketAddress address,
+      int workerCount,
+      int queueCapacity,
+      long cacheMaxBytes,
+      Function<byte[], ? extends List<ParsedTable>> converter)
+      throws IOException {
+    checkNotNull(address);
+    checkArgument(workerCount > 0, "Invalid worker count %s", workerCount);
+    checkArgument(queueCapacity >= 0, "Invalid queue capacity %s", queueCapacity);
+    checkArgument(cacheMaxBytes >= 0, "Invalid max size %s of result cache", cacheMaxBytes);
+    checkNotNull(converter);
+    HttpServer httpServer = HttpServer.create(address, /* backlog= */ 0);
+    ConversionServer server =
+        new ConversionServer(httpServer, workerCount, queueCapacity, cacheMaxBytes, converter);
+    httpServer.createContext(CONVERT_PATH, server::admit);
+    // Without an executor, handlers run on the dispatcher thread, which only admits requests.
+    httpServer.setExecutor(null);
+    httpServer.start();
+    return server;
+  }
+
+  // Converts all tables in the bytes of an Excel file, which are read in place without being
+  // copied.
+  static ImmutableList<ParsedTable> convertWorkbook(byte[] workbookBytes) {
+    try {
+      return App.parseExcelTables(WorkbookSource.of(workbookBytes, REQUEST_BODY_NAME), null);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to read Excel workbook", e);
+    }
+  }
+
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  // The number of requests which are being converted or queued, for tests.
+  int admittedCount() {
+    return maxAdmitted - admission.availablePermits();
+  }
+
+  // Stops accepting requests, requests being converted or queued are still responded.
+  @Override
+  public void close() {
+    server.stop(/* delay= */ 0);
+    workers.shutdown();
+  }
+
+  // Runs on the dispatcher thread.
+  private void admit(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      exchange.getResponseHeaders().set("Allow", "POST");
+      respondError(exchange, 405, "Only POST is supported");
+      return;
+    }
+    if (!admission.tryAcquire()) {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      respondError(exchange, 503, "Server is busy, try again later");
+      return;
+    }
+    try {
+      workers.execute(
+          () -> {
+            try {
+              convert(exchange);
+            } finally {
+              admission.release();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // The server is closed.
+      admission.release();
+      respondError(exchange, 503, "Server is shutting down");
+    }
+  }
+
+  // Runs on a worker thread.
+  private void convert(HttpExchange exchange) {
+    try {
+      byte[] workbookBytes;
+      try (InputStream in = exchange.getRequestBody()) {
+        workbookBytes = ByteStreams.toByteArray(ByteStreams.limit(in, MAX_REQUEST_BYTES + 1L));
+      }
+      if (workbookBytes.length > MAX_REQUEST_BYTES) {
+        respondError(
+            exchange, 413, String.format("Workbook is larger than %d bytes", MAX_REQUEST_BYTES));
+        return;
+      }
+      HashCode key = Hashing.sha256().hashBytes(workbookBytes);
+      Response response = results.getIfPresent(key);
+      if (response == null) {
+        List<ParsedTable> tables;
+        try {
+          tables = converter.apply(workbookBytes);
+        } catch (IllegalArgumentException e) {
+          respondError(exchange, 400, errorMessage(e));
+          return;
+        }
+        response = toResponse(tables);
+        // Racing requests of the same workbook put the same result.
+        results.put(key, response);
+      }
+      respond(exchange, 200, response.contentType, response.body);
+    } catch (IOException e) {
+      // The client is gone, nothing to respond.
+      exchange.close();
+    } catch (RuntimeException e) {
+      try {
+        respondError(exchange, 500, errorMessage(e));
+      } catch (IOException ignored) {
+        exchange.close();
+      }
+    }
+  }
+
+  // Renders the tables in JSON, or one JSON document per line if there are more than one table.
+  private static Response toResponse(List<ParsedTable> tables) throws IOException {
+    StringBuilder out = new StringBuilder();
+    if (tables.size() == 1) {
+      TableDataWriter.write(tables.get(0).data(), TableDataWriter.Format.JSON, out);
+      return new Response(
+          "application/json; charset=utf-8", out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    for (ParsedTable table : tables) {
+      TableDataWriter.write(
+          table.data(),
+          TableDataWriter.Format.JSON,
+          App.tableSource(REQUEST_BODY_NAME, table, tables.size()),
+          out);
+      out.append('\n');
+    }
+    return new Response(
+        "application/x-ndjson; charset=utf-8", out.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  // A cached response of a workbook.
+  private static final class Response {
+    final String contentType;
+    final byte[] body;
+
+    Response(String contentType, byte[] body) {
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+
+  // Messages of the error and its causes, e.g., an IllegalArgumentException of App wraps the one
+  // of a parser.
+  private static String errorMessage(Throwable error) {
+    StringBuilder message = new StringBuilder(String.valueOf(error.getMessage()));
+    for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+      message.append("\nCaused by: ").append(cause.getMessage());
+    }
+    return message.toString();
+  }
+
+  private static void respondError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    respond(
+        exchange,
+        status,
+        "text/plain; charset=utf-8",
+        (message + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -0,0 +1,487 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+// This class is a persistent store of many parsed tables in a single file, e.g., all tables of a
+// few releases of the specs, keyed by spec name, spec version and table serial number (see Key).
+// Looking up a table maps only the key index and the bytes of that table, instead of reopening the
+// source workbook through POI.
+//
+// All integers are big-endian, and the file is a header followed by frames:
+//
+//   Header: magic, version, the 64-bit file offset of the current index frame
+//   Table:  a table in BinaryTableFormat, whose header begins with its magic, version and total
+//           size
+//   Index:  magic, version, total size, entry count, then per entry the end of its key in the key
+//           data, the 64-bit file offset and the size of its table frame, then the key data
+//
+// Index entries are sorted by their keys, which are UTF-8 strings of the spec name, spec version
+// and table serial number separated by '\0', compared as unsigned bytes. So a lookup is a binary
+// search over the mapped index, which only decodes the key it returns.
+//
+// Frames are append only. A writer appends table frames, and when it is closed, an index frame of
+// all tables, and only then (after both are on disk) it points the header to the new index. So a
+// table written again (e.g., by converting the same workbook again) supersedes the old one, whose
+// frame is left unreferenced, and a reader always sees a complete index, even when it is opened
+// while a writer appends. A writer crashed before closing leaves frames after the current index,
+// which are recovered by the next writer, see Writer.recoverTail().
+//
+// Space is never reclaimed: superseded table frames and old index frames stay in the file, and
+// every writer which puts a table appends a new index of all tables. So a store rewritten by
+// repeated runs over the same corpus (e.g., "--batch --store" every night) grows with each run,
+// and it should be recreated from scratch (e.g., into a new file) once it has grown too much.
+//
+// A store is immutable and thread safe, tables are read lazily, see BinaryTable.
+final class CorpusStore implements Closeable {
+  static final int MAGIC = 0x33475053; // "3GPS"
+  static final int VERSION = 1;
+  static final int INDEX_MAGIC = 0x3347504b; // "3GPK"
+  static final int INDEX_VERSION = 1;
+
+  static final int INDEX_OFFSET_OFFSET = 2 * Integer.BYTES;
+  static final int HEADER_SIZE = INDEX_OFFSET_OFFSET + Long.BYTES;
+  // Magic, version and total size, which are also the first fields of a BinaryTableFormat table.
+  static final int FRAME_HEADER_SIZE = 3 * Integer.BYTES;
+  static final int FRAME_SIZE_OFFSET = 2 * Integer.BYTES;
+  static final int INDEX_HEADER_SIZE = FRAME_HEADER_SIZE + Integer.BYTES;
+  static final int INDEX_ENTRY_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+  private static final char KEY_SEPARATOR = '\0';
+
+  private final Path file;
+  private final FileChannel channel;
+  private final ByteBuffer index;
+  private final int entryCount;
+  private final int keyDataOffset;
+  // File offset of the index frame, table frames are all before it.
+  private final long indexOffset;
+
+  private CorpusStore(
+      Path file, FileChannel channel, ByteBuffer index, int entryCount, long indexOffset) {
+    this.file = file;
+    this.channel = channel;
+    this.index = index;
+    this.entryCount = entryCount;
+    this.keyDataOffset = INDEX_HEADER_SIZE + entryCount * INDEX_ENTRY_SIZE;
+    this.indexOffset = indexOffset;
+  }
+
+  // The key of a table in the store.
+  @AutoValue
+  abstract static class Key {
+    abstract String specName();
+
+    abstract String specVersion();
+
+    abstract String tableSerialNumber();
+
+    static Key of(String specName, String specVersion, String tableSerialNumber) {
+      for (String part : new String[] {specName, specVersion, tableSerialNumber}) {
+        checkArgument(
+            part != null && part.indexOf(KEY_SEPARATOR) < 0,
+            "Invalid part '%s' of a corpus store key",
+            part);
+      }
+      return new AutoValue_CorpusStore_Key(specName, specVersion, tableSerialNumber);
+    }
+
+    static Key of(TableMetadata metadata) {
+      return of(metadata.specName(), metadata.specVersion(), metadata.tableSerialNumber());
+    }
+
+    // Parses a key written as "<spec name>/<spec version>/<table serial number>", e.g.,
+    // "38.101-1/h40/5.5A.1-1", see toString().
+    static Key parse(String text) {
+      List<String> parts = Splitter.on('/').limit(3).splitToList(checkNotNull(text));
+      checkArgument(
+          parts.size() == 3,
+          "Invalid table key '%s', expected <spec name>/<spec version>/<table serial number>",
+          text);
+      return of(parts.get(0), parts.get(1), parts.get(2));
+    }
+
+    byte[] toBytes() {
+      return String.join(
+              String.valueOf(KEY_SEPARATOR), specName(), specVersion(), tableSerialNumber())
+          .getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Key fromBytes(byte[] bytes) {
+      List<String> parts =
+          Splitter.on(KEY_SEPARATOR).splitToList(new String(bytes, StandardCharsets.UTF_8));
+      checkArgument(parts.size() == 3, "Invalid corpus store, a key is corrupted");
+      return of(parts.get(0), parts.get(1), parts.get(2));
+    }
+
+    @Override
+    public final String toString() {
+      return String.join("/", specName(), specVersion(), tableSerialNumber());
+    }
+  }
+
+  // Opens the store in the given file for reading. Only the index is mapped, the store must be
+  // closed to release the file, but tables returned by get() stay valid after that.
+  public static CorpusStore open(Path file) throws IOException {
+    checkNotNull(file);
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return open(file, channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static CorpusStore open(Path file, FileChannel channel) throws IOException {
+    long indexOffset = readHeader(file, channel);
+    long size = channel.size();
+    checkValid(indexOffset >= HEADER_SIZE && size - indexOffset >= INDEX_HEADER_SIZE, file);
+    ByteBuffer indexHeader = readFully(channel, indexOffset, INDEX_HEADER_SIZE);
+    checkValid(indexHeader.getInt(0) == INDEX_MAGIC, file);
+    checkArgument(
+        indexHeader.getInt(Integer.BYTES) == INDEX_VERSION,
+        "Unsupported corpus store index version %s, expected %s",
+        indexHeader.getInt(Integer.BYTES),
+        INDEX_VERSION);
+    int indexSize = indexHeader.getInt(FRAME_SIZE_OFFSET);
+    int entryCount = indexHeader.getInt(FRAME_HEADER_SIZE);
+    checkValid(
+        indexSize >= INDEX_HEADER_SIZE
+            && indexSize <= size - indexOffset
+            && entryCount >= 0
+            && entryCount <= (indexSize - INDEX_HEADER_SIZE) / INDEX_ENTRY_SIZE,
+        file);
+    MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexSize);
+    CorpusStore store = new CorpusStore(file, channel, index, entryCount, indexOffset);
+    // Key ends are validated once, so that lookups don't check them.
+    int keyEnd = 0;
+    for (int entry = 0; entry < entryCount; entry++) {
+      int nextKeyEnd = store.keyEnd(entry);
+      checkValid(nextKeyEnd >= keyEnd && nextKeyEnd <= indexSize - store.keyDataOffset, file);
+      keyEnd = nextKeyEnd;
+    }
+    return store;
+  }
+
+  // Validates the header of the store, and returns the offset of the current index frame.
+  private static long readHeader(Path file, FileChannel channel) throws IOException {
+    ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+    checkValid(header.limit() == HEADER_SIZE && header.getInt(0) == MAGIC, file);
+    checkArgument(
+        header.getInt(Integer.BYTES) == VERSION,
+        "Unsupported corpus store version %s, expected %s",
+        header.getInt(Integer.BYTES),
+        VERSION);
+    return header.getLong(INDEX_OFFSET_OFFSET);
+  }
+
+  // Number of tables in the store.
+  public int size() {
+    return entryCount;
+  }
+
+  // Keys of all tables in the store, sorted by their bytes.
+  public ImmutableList<Key> keys() {
+    ImmutableList.Builder<Key> keys = ImmutableList.builderWithExpectedSize(entryCount);
+    for (int entry = 0; entry < entryCount; entry++) {
+      keys.add(Key.fromBytes(keyBytes(entry)));
+    }
+    return keys.build();
+  }
+
+  // The table of the given key, or null if it is not in the store. Only the frame of the table is
+  // mapped, and it is read lazily.
+  @Nullable
+  public BinaryTable get(Key key) throws IOException {
+    int entry = find(checkNotNull(key).toBytes());
+    if (entry < 0) {
+      return null;
+    }
+    Frame frame = frame(entry);
+    // Tables are always written before the index which refers to them.
+    checkValid(
+        frame.offset >= HEADER_SIZE
+            && frame.size >= FRAME_HEADER_SIZE
+            && frame.offset + frame.size <= indexOffset,
+        file);
+    return BinaryTable.of(channel.map(FileChannel.MapMode.READ_ONLY, frame.offset, frame.size));
+  }
+
+  @Nullable
+  public BinaryTable get(String specName, String specVersion, String tableSerialNumber)
+      throws IOException {
+    return get(Key.of(specName, specVersion, tableSerialNumber));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  // Index of the entry of the given key, or -1 if it is not found.
+  private int find(byte[] key) {
+    int low = 0;
+    int high = entryCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compareKey(middle, key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  // Compares the key of the given entry with the given key as unsigned bytes, without copying.
+  private int compareKey(int entry, byte[] key) {
+    int begin = keyBegin(entry);
+    int length = keyEnd(entry) - begin;
+    int offset = keyDataOffset + begin;
+    for (int i = 0; i < Math.min(length, key.length); i++) {
+      int comparison = UnsignedBytes.compare(index.get(offset + i), key[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(length, key.length);
+  }
+
+  private byte[] keyBytes(int entry) {
+    int begin = keyBegin(entry);
+    byte[] key = new byte[keyEnd(entry) - begin];
+    index.get(keyDataOffset + begin, key);
+    return key;
+  }
+
+  private int keyBegin(int entry) {
+    return entry == 0 ? 0 : keyEnd(entry - 1);
+  }
+
+  private int keyEnd(int entry) {
+    return index.getInt(INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE);
+  }
+
+  private Frame frame(int entry) {
+    int entryOffset = INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE + Integer.BYTES;
+    return new Frame(index.getLong(entryOffset), index.getInt(entryOffset + Long.BYTES));
+  }
+
+  private static void checkValid(boolean valid, Path file) {
+    if (!valid) {
+      throw new IllegalArgumentException(
+          String.format("Invalid corpus store '%s', it is truncated or corrupted", file));
+    }
+  }
+
+  // Reads up to size bytes at the given position, fewer only at the end of the file.
+  private static ByteBuffer readFully(FileChannel channel, long position, int size)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+    return buffer.flip();
+  }
+
+  // Creates the store in the given file, or opens it to append tables. Only one writer may have
+  // the file open at a time, and the file is locked until the writer is closed.
+  public static Writer append(Path file) throws IOException {
+    checkNotNull(file);
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      FileLock lock;
+      try {
+        lock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        lock = null;
+      }
+      if (lock == null) {
+        throw new IOException(
+            String.format("Corpus store '%s' is being written by another writer", file));
+      }
+      return new Writer(file, channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // Appends tables to a store. Putting tables is thread safe, e.g., by workers of BatchConverter.
+  // The tables are only visible to readers opened after the writer is closed, which writes the
+  // index.
+  static final class Writer implements Closeable {
+    private final Path file;
+    private final FileChannel channel;
+    // Frames of all tables by their keys, sorted the same as the index.
+    private final TreeMap<byte[], Frame> frames =
+        new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+    private long size;
+    // Whether any table is put or recovered, otherwise the current index is still complete.
+    private boolean changed = false;
+    private boolean closed = false;
+
+    private Writer(Path file, FileChannel channel) throws IOException {
+      this.file = file;
+      this.channel = channel;
+      this.size = channel.size();
+      if (size == 0) {
+        // A new store points to an empty index, so that it can be opened before anything is put.
+        writeFully(
+            ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(HEADER_SIZE)
+                .flip());
+        writeFully(ByteBuffer.wrap(indexBytes()));
+        channel.force(true);
+        return;
+      }
+      CorpusStore store = CorpusStore.open(file, channel);
+      for (int entry = 0; entry < store.entryCount; entry++) {
+        frames.put(store.keyBytes(entry), store.frame(entry));
+      }
+      recoverTail(store.indexOffset + store.index.limit());
+    }
+
+    // Adds complete table frames after the given offset, i.e., after the current index, which are
+    // left by a writer crashed before closing, and truncates the file after the last complete
+    // frame. Index frames which are not pointed to by the header are skipped.
+    private void recoverTail(long offset) throws IOException {
+      while (offset + FRAME_HEADER_SIZE <= size) {
+        ByteBuffer frameHeader = readFully(channel, offset, FRAME_HEADER_SIZE);
+        int magic = frameHeader.getInt(0);
+        int frameSize = frameHeader.getInt(FRAME_SIZE_OFFSET);
+        if ((magic != BinaryTableFormat.MAGIC && magic != INDEX_MAGIC)
+            || frameSize < FRAME_HEADER_SIZE
+            || frameSize > size - offset) {
+          break;
+        }
+        if (magic == BinaryTableFormat.MAGIC) {
+          try {
+            TableMetadata metadata =
+                BinaryTable.of(channel.map(FileChannel.MapMode.READ_ONLY, offset, frameSize))
+                    .metadata();
+            frames.put(Key.of(metadata).toBytes(), new Frame(offset, frameSize));
+            changed = true;
+          } catch (IllegalArgumentException e) {
+            // A complete frame which doesn't read is skipped, the frames after it are still
+            // delimited by its size.
+          }
+        }
+        offset += frameSize;
+      }
+      if (offset < size) {
+        channel.truncate(offset);
+        size = offset;
+      }
+    }
+
+    public void put(ParsedTable table) throws IOException {
+      put(table.metadata(), table.data());
+    }
+
+    // Appends the given table, which supersedes any table of the same key.
+    public void put(TableMetadata metadata, TableData data) throws IOException {
+      byte[] key = Key.of(metadata).toBytes();
+      // Serialized outside of the lock, so that workers only wait for each other's writes.
+      byte[] table = BinaryTableFormat.toBytes(metadata, data);
+      synchronized (this) {
+        checkState(!closed, "Corpus store '%s' is already closed", file);
+        long offset = size;
+        writeFully(ByteBuffer.wrap(table));
+        frames.put(key, new Frame(offset, table.length));
+        changed = true;
+      }
+    }
+
+    // Writes the index (unless nothing is put), points the header to it and closes the file.
+    @Override
+    public synchronized void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (!changed) {
+          return;
+        }
+        long indexOffset = size;
+        writeFully(ByteBuffer.wrap(indexBytes()));
+        // The index is on disk before the header points to it.
+        channel.force(true);
+        ByteBuffer pointer = ByteBuffer.allocate(Long.BYTES).putLong(indexOffset).flip();
+        while (pointer.hasRemaining()) {
+          channel.write(pointer, INDEX_OFFSET_OFFSET + pointer.position());
+        }
+        channel.force(true);
+      } finally {
+        channel.close();
+      }
+    }
+
+    private byte[] indexBytes() {
+      int keyDataSize = 0;
+      for (byte[] key : frames.keySet()) {
+        keyDataSize += key.length;
+      }
+      int totalSize = INDEX_HEADER_SIZE + frames.size() * INDEX_ENTRY_SIZE + keyDataSize;
+      ByteBuffer index = ByteBuffer.allocate(totalSize);
+      index.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(totalSize).putInt(frames.size());
+      int keyEnd = 0;
+      for (Map.Entry<byte[], Frame> entry : frames.entrySet()) {
+        keyEnd += entry.getKey().length;
+        index.putInt(keyEnd).putLong(entry.getValue().offset).putInt(entry.getValue().size);
+      }
+      for (byte[] key : frames.keySet()) {
+        index.put(key);
+      }
+      return index.array();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+      while (bytes.hasRemaining()) {
+        size += channel.write(bytes, size);
+      }
+    }
+  }
+
+  // Where a table frame is in the file.
+  private static final class Frame {
+    final long offset;
+    final int size;
+
+    Frame(long offset, int size) {
+      this.offset = offset;
+      this.size = size;
+    }
+  }
+}
@@ -8,16 +8,12 @@ import com.google.auto.value.extension.toprettystring.ToPrettyString;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 // This class represents a cell index in Excel sheet.
 @AutoValue
 abstract class ExcelCellIndex {
 
-  private static final Pattern EXCEL_CELL_NAME_PATTERN = Pattern.compile("^([A-Z]+)([0-9]+)$");
-
   // Zero-based row index.
   abstract int row();
 
@@ -32,11 +28,66 @@ abstract class ExcelCellIndex {
   public static ExcelCellIndex of(String excelCellName) {
     // Parse a cell name used by Excel to the 0-based row/column index pair.
     // For example: A1 -> (0, 0), C12 -> (2, 11), AA70 -> (26, 69)
+    return ofPacked(parsePacked(excelCellName));
+  }
+
+  // Cell indexes can also be packed into a long (row in the high 32 bits and column in the low 32
+  // bits), so that hot loops can pass, store and compare cell coordinates without allocating an
+  // ExcelCellIndex for each cell. Packed indexes sort in row-major order.
+  static long pack(int row, int column) {
+    return ((long) row << 32) | (column & 0xFFFFFFFFL);
+  }
+
+  static int packedRow(long packed) {
+    return (int) (packed >>> 32);
+  }
+
+  static int packedColumn(long packed) {
+    return (int) packed;
+  }
+
+  long packed() {
+    return pack(row(), column());
+  }
+
+  static ExcelCellIndex ofPacked(long packed) {
+    return ExcelCellIndex.of(packedRow(packed), packedColumn(packed));
+  }
+
+  // Parses an Excel cell name, e.g., "AB12", to a packed cell index without allocation.
+  static long parsePacked(CharSequence excelCellName) {
     checkNotNull(excelCellName);
-    Matcher m = EXCEL_CELL_NAME_PATTERN.matcher(excelCellName);
-    checkArgument(m.matches(), String.format("Unrecognizable Excel cell name '%s'", excelCellName));
-    return ExcelCellIndex.of(
-        Integer.valueOf(m.group(2), 10).intValue() - 1, columnNameToIndex(m.group(1)));
+    // Both indexes are capped at (Integer.MAX_VALUE + 1) while parsing, to avoid overflow.
+    long overflow = Integer.MAX_VALUE + 1L;
+    int length = excelCellName.length();
+    int i = 0;
+    long column = 0;
+    for (; i < length && isColumnLetter(excelCellName.charAt(i)); i++) {
+      column = Math.min(overflow, column * 26 + (excelCellName.charAt(i) - 'A' + 1));
+    }
+    int digitsBegin = i;
+    long row = 0;
+    for (; i < length && isRowDigit(excelCellName.charAt(i)); i++) {
+      row = Math.min(overflow, row * 10 + (excelCellName.charAt(i) - '0'));
+    }
+    if (digitsBegin == 0
+        || i == digitsBegin
+        || i != length
+        || column == overflow
+        || row == overflow
+        || row == 0) {
+      throw new IllegalArgumentException(
+          String.format("Unrecognizable Excel cell name '%s'", excelCellName));
+    }
+    return pack((int) row - 1, (int) column - 1);
+  }
+
+  private static boolean isColumnLetter(char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isRowDigit(char c) {
+    return c >= '0' && c <= '9';
   }
 
   @Override
@@ -44,15 +95,6 @@ abstract class ExcelCellIndex {
     return String.format("%s%d", columnIndexToName(column() + 1), row() + 1);
   }
 
-  private static int columnNameToIndex(String name) {
-    int column = 0;
-    while (!name.isEmpty()) {
-      column = column * 26 + (name.charAt(0) - 'A' + 1);
-      name = name.substring(1);
-    }
-    return column - 1;
-  }
-
   // Please note that the column index here is 1-based.
   private static String columnIndexToName(int index) {
     if (index <= 26) {
@@ -94,15 +136,44 @@ abstract class ExcelRect {
     return bottomRight().column() + 1;
   }
 
+  public int rowCount() {
+    return endRow() - beginRow();
+  }
+
+  public int columnCount() {
+    return endColumn() - beginColumn();
+  }
+
+  public int cellCount() {
+    return rowCount() * columnCount();
+  }
+
+  // Whether the cell at the given row and column is in this rect.
+  public boolean contains(int row, int column) {
+    return row >= beginRow() && row < endRow() && column >= beginColumn() && column < endColumn();
+  }
+
+  // Whether the given rect is entirely in this rect.
+  public boolean contains(ExcelRect other) {
+    return other.beginRow() >= beginRow()
+        && other.endRow() <= endRow()
+        && other.beginColumn() >= beginColumn()
+        && other.endColumn() <= endColumn();
+  }
+
+  // The row-major offset of the cell at the given row and column, which must be in this rect.
+  public int offsetOf(int row, int column) {
+    return (row - beginRow()) * columnCount() + (column - beginColumn());
+  }
+
   public static ExcelRect of(ExcelCellIndex topLeft, ExcelCellIndex bottomRight) {
     checkNotNull(topLeft);
     checkNotNull(bottomRight);
     checkArgument(
         topLeft.row() <= bottomRight.row() && topLeft.column() <= bottomRight.column(),
-        String.format(
-            "Invalid Excel rect: top left cell %s is not above or to the left of bottom right cell"
-                + " %s",
-            topLeft, bottomRight));
+        "Invalid Excel rect: top left cell %s is not above or to the left of bottom right cell %s",
+        topLeft,
+        bottomRight);
     return new AutoValue_ExcelRect(topLeft, bottomRight);
   }
 
@@ -133,8 +204,10 @@ abstract class TableMetadata {
 
   abstract ExcelRect tableDataRect(); // The rect in Excel file which contains all table data.
 
+  abstract String tableSheetName(); // The sheet which contains the table data, e.g., "Table".
+
   static Builder builder() {
-    return new AutoValue_TableMetadata.Builder();
+    return new AutoValue_TableMetadata.Builder().setTableSheetName(TableSheetParser.SHEET_NAME);
   }
 
   @AutoValue.Builder
@@ -149,6 +222,8 @@ abstract class TableMetadata {
 
     abstract Builder setTableDataRect(ExcelRect tableDataRect);
 
+    abstract Builder setTableSheetName(String tableSheetName);
+
     abstract TableMetadata build();
   }
 }
@@ -247,3 +322,15 @@ abstract class TableData {
   @Override
   public abstract String toString();
 }
+
+// A table parsed from an Excel file, i.e., the metadata and the data of the table.
+@AutoValue
+abstract class ParsedTable {
+  abstract TableMetadata metadata();
+
+  abstract TableData data();
+
+  public static ParsedTable of(TableMetadata metadata, TableData data) {
+    return new AutoValue_ParsedTable(metadata, data);
+  }
+}
@@ -0,0 +1,144 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+// A lazy view of parsed table data, see TableSheetParser.parseLazy().
+//
+// The structure of the table (logical rows, columns and the rects they cover in the sheet) is
+// parsed eagerly, but cell strings of a leaf column are only read from the retained cell source
+// when they are accessed for the first time, and then cached. So queries on the structure or on a
+// few columns don't pay for reading and copying all cell strings. toTableData() materializes the
+// same TableData as TableSheetParser.parse().
+//
+// Whether an unread leaf column is empty depends on its cell strings, so type() of such a column
+// reads its cells. An error of reading a cell (e.g., a formula cell) is raised on access instead
+// of by the parse.
+//
+// A lazy table is safe to be read by multiple threads if its cell source is, e.g., a
+// SheetSnapshot. Concurrent reading of the same column is benign.
+final class LazyTable {
+  private final ImmutableList<Row> rows;
+
+  private LazyTable(ImmutableList<Row> rows) {
+    this.rows = rows;
+  }
+
+  static LazyTable of(List<Row> rows) {
+    checkArgument(rows != null && !rows.isEmpty());
+    return new LazyTable(ImmutableList.copyOf(rows));
+  }
+
+  public ImmutableList<Row> rows() {
+    return rows;
+  }
+
+  public TableData toTableData() {
+    return TableData.of(rows.stream().map(Row::toTableRow).collect(toImmutableList()));
+  }
+
+  static final class Row {
+    private final ImmutableList<Column> columns;
+
+    private Row(ImmutableList<Column> columns) {
+      this.columns = columns;
+    }
+
+    static Row of(List<Column> columns) {
+      checkArgument(columns != null && !columns.isEmpty());
+      return new Row(ImmutableList.copyOf(columns));
+    }
+
+    public ImmutableList<Column> columns() {
+      return columns;
+    }
+
+    public TableRow toTableRow() {
+      return TableRow.of(columns.stream().map(Column::toTableColumn).collect(toImmutableList()));
+    }
+  }
+
+  static final class Column {
+    // Null for a parent column.
+    @Nullable private final CellTextSource cells;
+
+    private final ExcelRect rect;
+
+    // Null for a leaf column.
+    @Nullable private final ImmutableList<Row> childRows;
+
+    // Non-empty strings of the cells of a leaf column, null if not read yet.
+    @Nullable private volatile ImmutableList<String> cellStrings;
+
+    private Column(
+        @Nullable CellTextSource cells, ExcelRect rect, @Nullable ImmutableList<Row> childRows) {
+      this.cells = cells;
+      this.rect = rect;
+      this.childRows = childRows;
+    }
+
+    static Column leaf(CellTextSource cells, ExcelRect rect) {
+      return new Column(checkNotNull(cells), checkNotNull(rect), null);
+    }
+
+    static Column parent(ExcelRect rect, List<Row> childRows) {
+      checkArgument(childRows != null && !childRows.isEmpty());
+      return new Column(null, checkNotNull(rect), ImmutableList.copyOf(childRows));
+    }
+
+    // The rect of the column in the sheet.
+    public ExcelRect rect() {
+      return rect;
+    }
+
+    // Whether this column has child rows, it doesn't read any cell.
+    public boolean isParent() {
+      return childRows != null;
+    }
+
+    // Same as TableColumn.type(), cells of a leaf column are read if they are not read yet.
+    public TableColumn.Type type() {
+      if (isParent()) {
+        return TableColumn.Type.PARENT;
+      }
+      return cellStrings().isEmpty() ? TableColumn.Type.EMPTY : TableColumn.Type.LEAF;
+    }
+
+    // Same as TableColumn.cells(), i.e., null unless it is a non-empty leaf column.
+    @Nullable
+    public ImmutableList<String> cells() {
+      if (isParent() || cellStrings().isEmpty()) {
+        return null;
+      }
+      return cellStrings();
+    }
+
+    // Same as TableColumn.childRows(), i.e., null unless it is a parent column.
+    @Nullable
+    public ImmutableList<Row> childRows() {
+      return childRows;
+    }
+
+    public TableColumn toTableColumn() {
+      if (isParent()) {
+        return TableColumn.parent(
+            childRows.stream().map(Row::toTableRow).collect(toImmutableList()));
+      }
+      return TableColumn.leaf(cellStrings());
+    }
+
+    private ImmutableList<String> cellStrings() {
+      ImmutableList<String> strings = cellStrings;
+      if (strings == null) {
+        strings = TableSheetParser.readLeafCells(cells, rect);
+        cellStrings = strings;
+      }
+      return strings;
+    }
+  }
+}
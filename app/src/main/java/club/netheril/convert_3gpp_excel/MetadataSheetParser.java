@@ -3,11 +3,13 @@ package club.netheril.convert_3gpp_excel;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.collect.ImmutableList;
+import java.util.HashSet;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 final class MetadataSheetParser {
-  private static final String SHEET_NAME = "Metadata";
+  static final String SHEET_NAME = "Metadata";
 
   private static final String KEY_SPEC_NAME = "Spec";
   private static final String KEY_SPEC_VERSION = "Version";
@@ -15,20 +17,84 @@ final class MetadataSheetParser {
   private static final String KEY_TITLE = "Title";
   private static final String KEY_TOP_LEFT = "Top left";
   private static final String KEY_TOP_BOTTOM_RIGHT = "Bottom right";
+  private static final String KEY_SHEET = "Sheet";
 
   public static TableMetadata parse(XSSFWorkbook workbook) {
     XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
     checkNotNull(sheet, "Unable to find metadata sheet in the Excel file");
+    return parse(
+        (row, column) -> SheetParserUtils.safeGetCellString(sheet, row, column),
+        sheet.getLastRowNum());
+  }
+
+  // Parses metadata of all tables in the workbook, see parseAll(cells, lastRowNum).
+  public static ImmutableList<TableMetadata> parseAll(XSSFWorkbook workbook) {
+    XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
+    checkNotNull(sheet, "Unable to find metadata sheet in the Excel file");
+    return parseAll(
+        (row, column) -> SheetParserUtils.safeGetCellString(sheet, row, column),
+        sheet.getLastRowNum());
+  }
 
-    TableMetadata.Builder builder = TableMetadata.builder();
-    ExcelCellIndex topLeft = null;
-    ExcelCellIndex bottomRight = null;
-    for (int i = 0; i <= sheet.getLastRowNum(); i++) {
-      String key = SheetParserUtils.safeGetCellString(sheet, ExcelCellIndex.of(i, 0));
-      String value = SheetParserUtils.safeGetCellString(sheet, ExcelCellIndex.of(i, 1));
+  // Parses the metadata from cells of the metadata sheet, in which rows [0, lastRowNum] are
+  // key-value pairs. The metadata sheet must describe exactly one table.
+  static TableMetadata parse(CellTextSource cells, int lastRowNum) {
+    ImmutableList<TableMetadata> metadata = parseAll(cells, lastRowNum);
+    checkArgument(
+        metadata.size() == 1,
+        "Expected one table in metadata sheet, but found %s tables",
+        metadata.size());
+    return metadata.get(0);
+  }
+
+  // Parses the metadata of one or more tables from cells of the metadata sheet, in which rows
+  // [0, lastRowNum] are key-value pairs. Each table is a block of keys, and a key which already
+  // appears in the current block starts the block of the next table. E.g.,
+  //
+  //   Spec          38.101-3
+  //   Version       h50
+  //   Number        5.3B.1.3-1
+  //   Title
+  //   Top left      A6
+  //   Bottom right  G20
+  //   Spec          38.101-3
+  //   ...
+  //   Sheet         Table 2
+  //   Top left      B3
+  //   Bottom right  F40
+  //
+  // The optional "Sheet" key names the sheet of the table data, which is "Table" by default.
+  static ImmutableList<TableMetadata> parseAll(CellTextSource cells, int lastRowNum) {
+    ImmutableList.Builder<TableMetadata> metadata = ImmutableList.builder();
+    BlockParser block = new BlockParser();
+    for (int i = 0; i <= lastRowNum; i++) {
+      String key = cells.cellString(i, 0);
+      String value = cells.cellString(i, 1);
       if (key.isEmpty() && value.isEmpty()) {
         continue;
       }
+      if (block.hasKey(key)) {
+        metadata.add(block.build());
+        block = new BlockParser();
+      }
+      block.add(key, value);
+    }
+    metadata.add(block.build());
+    return metadata.build();
+  }
+
+  // Parses the key-value pairs of one table.
+  private static final class BlockParser {
+    private final TableMetadata.Builder builder = TableMetadata.builder();
+    private final HashSet<String> keys = new HashSet<>();
+    private ExcelCellIndex topLeft = null;
+    private ExcelCellIndex bottomRight = null;
+
+    boolean hasKey(String key) {
+      return keys.contains(key);
+    }
+
+    void add(String key, String value) {
       if (key.equals(KEY_SPEC_NAME)) {
         builder.setSpecName(value);
       } else if (key.equals(KEY_SPEC_VERSION)) {
@@ -37,6 +103,8 @@ final class MetadataSheetParser {
         builder.setTableSerialNumber(value);
       } else if (key.equals(KEY_TITLE)) {
         builder.setTableTitle(value);
+      } else if (key.equals(KEY_SHEET)) {
+        builder.setTableSheetName(value);
       } else if (key.equals(KEY_TOP_LEFT)) {
         topLeft = ExcelCellIndex.of(value);
       } else if (key.equals(KEY_TOP_BOTTOM_RIGHT)) {
@@ -45,11 +113,14 @@ final class MetadataSheetParser {
         throw new IllegalArgumentException(
             String.format("Unrecognizable key column '%s' in metadata sheet", key));
       }
+      keys.add(key);
     }
-    checkArgument(
-        topLeft != null && bottomRight != null,
-        "Missing top left and/or bottom right cell of the table data rect");
 
-    return builder.setTableDataRect(ExcelRect.of(topLeft, bottomRight)).build();
+    TableMetadata build() {
+      checkArgument(
+          topLeft != null && bottomRight != null,
+          "Missing top left and/or bottom right cell of the table data rect");
+      return builder.setTableDataRect(ExcelRect.of(topLeft, bottomRight)).build();
+    }
   }
 }
@@ -0,0 +1,354 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Process-wide statistics of parsing, i.e., time spent in each phase, latencies of files and
+// counters of the table parser, which are reported by "--stats". The same data is also emitted
+// as JFR events (see the event classes below), e.g., by "java -XX:StartFlightRecording ...".
+//
+// Statistics are always collected. They are updated once per phase, table or file rather than
+// once per probe: the table parser counts probes in plain fields of its own and records them at
+// the end. So the overhead is a few LongAdder updates and System.nanoTime() calls per file, and
+// a JFR event costs nothing unless a recording enables it. File latencies are counted in a
+// fixed-size histogram, so a long-running process (e.g., "--serve" or "--watch") takes the same
+// memory for them no matter how many files it converts.
+final class ParserStats {
+  enum Phase {
+    // Loading a workbook into memory, i.e., unzipping and parsing its XML.
+    LOAD,
+    // Parsing the metadata sheet.
+    METADATA,
+    // Building the border grid of the table data rect from a loaded sheet.
+    BORDERS,
+    // Streaming the table sheet into a SheetSnapshot, including borders and cell strings.
+    SNAPSHOT,
+    // Parsing logical rows and columns, including reading cell strings from a loaded sheet.
+    TABLE,
+  }
+
+  private static final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+  private static final LongAdder[] phaseCounts = newAdders(Phase.values().length);
+
+  private static final LongAdder tables = new LongAdder();
+  private static final LongAdder cellProbes = new LongAdder();
+  private static final LongAdder borderChecks = new LongAdder();
+  private static final LongAdder rectValidations = new LongAdder();
+  private static final LongAccumulator maxRecursionDepth = new LongAccumulator(Math::max, 0);
+
+  private static final LongAdder failedFiles = new LongAdder();
+  private static final Histogram fileNanos = new Histogram();
+
+  private static LongAdder[] newAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  // Measures one phase, e.g.,
+  //
+  //   ParserStats.Timer timer = ParserStats.start(Phase.LOAD, fileName);
+  //   ... load the workbook ...
+  //   timer.stop();
+  //
+  // A timer which is not stopped (e.g., the phase fails) is not recorded.
+  static final class Timer {
+    private final Phase phase;
+    @Nullable private final String file;
+    private final PhaseEvent event = new PhaseEvent();
+    private final long startNanos;
+
+    private Timer(Phase phase, @Nullable String file) {
+      this.phase = phase;
+      this.file = file;
+      event.begin();
+      this.startNanos = System.nanoTime();
+    }
+
+    void stop() {
+      long elapsedNanos = System.nanoTime() - startNanos;
+      phaseNanos[phase.ordinal()].add(elapsedNanos);
+      phaseCounts[phase.ordinal()].increment();
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = phase.name();
+        event.file = file;
+        event.commit();
+      }
+    }
+  }
+
+  static Timer start(Phase phase, @Nullable String file) {
+    return new Timer(checkNotNull(phase), file);
+  }
+
+  // Records counters of parsing one table, see TableSheetParser.
+  static void recordTable(
+      ExcelRect rect,
+      long cellProbeCount,
+      long borderCheckCount,
+      long rectValidationCount,
+      int recursionDepth) {
+    tables.increment();
+    cellProbes.add(cellProbeCount);
+    borderChecks.add(borderCheckCount);
+    rectValidations.add(rectValidationCount);
+    maxRecursionDepth.accumulate(recursionDepth);
+
+    TableEvent event = new TableEvent();
+    if (event.shouldCommit()) {
+      event.rect = rect.toString();
+      event.cellProbes = cellProbeCount;
+      event.borderChecks = borderCheckCount;
+      event.rectValidations = rectValidationCount;
+      event.recursionDepth = recursionDepth;
+      event.commit();
+    }
+  }
+
+  // Records the end-to-end latency of converting one file.
+  static void recordFile(String file, long elapsedNanos, boolean succeeded) {
+    fileNanos.record(elapsedNanos);
+    if (!succeeded) {
+      failedFiles.increment();
+    }
+
+    FileEvent event = new FileEvent();
+    if (event.shouldCommit()) {
+      event.file = file;
+      event.succeeded = succeeded;
+      event.elapsed = elapsedNanos;
+      event.commit();
+    }
+  }
+
+  // A human readable report of all statistics so far.
+  static String report() {
+    Histogram.Snapshot latencies = fileNanos.snapshot();
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format("Parser stats: %d files, %d failed", latencies.count(), failedFiles.sum()));
+    if (latencies.count() > 0) {
+      report.append(
+          String.format(
+              "\n  file latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+              latencies.percentile(50) / 1e6,
+              latencies.percentile(90) / 1e6,
+              latencies.percentile(99) / 1e6,
+              latencies.max() / 1e6));
+    }
+    for (Phase phase : Phase.values()) {
+      long count = phaseCounts[phase.ordinal()].sum();
+      if (count > 0) {
+        report.append(
+            String.format(
+                "\n  %s: %d times, %.3f ms in total",
+                phase.name().toLowerCase(),
+                count,
+                phaseNanos[phase.ordinal()].sum() / 1e6));
+      }
+    }
+    report.append(
+        String.format(
+            "\n  tables: %d, cell probes: %d, border checks: %d, rect validations: %d,"
+                + " max recursion depth: %d",
+            tables.sum(),
+            cellProbes.sum(),
+            borderChecks.sum(),
+            rectValidations.sum(),
+            maxRecursionDepth.get()));
+    return report.toString();
+  }
+
+  // A histogram of non-negative values in log-scale buckets: each power of two is split into
+  // SUB_BUCKETS buckets of the same width, so a percentile is the upper bound of its bucket,
+  // which is at most 1 / SUB_BUCKETS (6.25%) above the actual value. Values below SUB_BUCKETS
+  // have exact buckets. It takes a fixed 960 counters for all long values, and is updated
+  // without locks.
+  static final class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Exact buckets, then SUB_BUCKETS buckets for each power of two from SUB_BUCKETS to 2^62.
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // A negative value (e.g., of a clock going backwards) is recorded as 0.
+    void record(long value) {
+      long clamped = Math.max(0, value);
+      counts.incrementAndGet(bucketOf(clamped));
+      max.accumulate(clamped);
+    }
+
+    void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        counts.set(i, 0);
+      }
+      max.reset();
+    }
+
+    Snapshot snapshot() {
+      long[] snapshot = new long[BUCKET_COUNT];
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        snapshot[i] = counts.get(i);
+      }
+      return new Snapshot(snapshot, max.get());
+    }
+
+    static int bucketOf(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+      int shift = exponent - SUB_BUCKET_BITS;
+      // The leading bit of (value >>> shift) is bit SUB_BUCKET_BITS, i.e., SUB_BUCKETS is added.
+      return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The largest value in the given bucket.
+    static long upperBoundOf(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long lowerBound = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+      return lowerBound + ((1L << shift) - 1);
+    }
+
+    // Counts of a histogram at one time.
+    static final class Snapshot {
+      private final long[] counts;
+      private final long count;
+      private final long max;
+
+      private Snapshot(long[] counts, long max) {
+        this.counts = counts;
+        long count = 0;
+        for (long bucketCount : counts) {
+          count += bucketCount;
+        }
+        this.count = count;
+        this.max = max;
+      }
+
+      long count() {
+        return count;
+      }
+
+      long max() {
+        return max;
+      }
+
+      // The nearest-rank percentile, i.e., the upper bound of the bucket of the value at that
+      // rank, but not above the max value.
+      long percentile(int percent) {
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+          seen += counts[i];
+          if (seen >= rank) {
+            return Math.min(upperBoundOf(i), max);
+          }
+        }
+        return max;
+      }
+    }
+  }
+
+  // Clears all statistics, for tests.
+  static void reset() {
+    for (int i = 0; i < phaseNanos.length; i++) {
+      phaseNanos[i].reset();
+      phaseCounts[i].reset();
+    }
+    tables.reset();
+    cellProbes.reset();
+    borderChecks.reset();
+    rectValidations.reset();
+    maxRecursionDepth.reset();
+    failedFiles.reset();
+    fileNanos.reset();
+  }
+
+  static long phaseCount(Phase phase) {
+    return phaseCounts[phase.ordinal()].sum();
+  }
+
+  static long tableCount() {
+    return tables.sum();
+  }
+
+  static long cellProbeCount() {
+    return cellProbes.sum();
+  }
+
+  static long borderCheckCount() {
+    return borderChecks.sum();
+  }
+
+  static long rectValidationCount() {
+    return rectValidations.sum();
+  }
+
+  static long maxRecursionDepth() {
+    return maxRecursionDepth.get();
+  }
+
+  @Name("club.netheril.convert_3gpp_excel.Phase")
+  @Label("Parse Phase")
+  @Category("3GPP Excel")
+  static final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+  }
+
+  @Name("club.netheril.convert_3gpp_excel.Table")
+  @Label("Table Parse")
+  @Category("3GPP Excel")
+  static final class TableEvent extends Event {
+    @Label("Table Data Rect")
+    String rect;
+
+    @Label("Cell Probes")
+    long cellProbes;
+
+    @Label("Border Checks")
+    long borderChecks;
+
+    @Label("Rect Validations")
+    long rectValidations;
+
+    @Label("Recursion Depth")
+    int recursionDepth;
+  }
+
+  @Name("club.netheril.convert_3gpp_excel.File")
+  @Label("File Conversion")
+  @Category("3GPP Excel")
+  static final class FileEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+  }
+}
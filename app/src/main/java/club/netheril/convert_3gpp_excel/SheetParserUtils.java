@@ -3,13 +3,15 @@ package club.netheril.convert_3gpp_excel;
 import static com.google.common.base.Preconditions.*;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.lang.ref.SoftReference;
+import java.util.BitSet;
+import java.util.WeakHashMap;
+import javax.annotation.Nullable;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
@@ -17,62 +19,73 @@ import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 
 final class SheetParserUtils {
 
   private static final int MAX_COLUMN_IDX = 1000;
 
+  // Caches of stylesOf() by the styles of a workbook. A cache refers to its styles, so it is held
+  // softly, otherwise the weak key would always be reachable from the map. Once a workbook is no
+  // longer used, the garbage collector clears its cache and then drops the entry.
+  private static final WeakHashMap<StylesTable, SoftReference<StyleBorderCache>>
+      styleBorderCaches = new WeakHashMap<>();
+
+  // Bits of a cell border mask, a bit is set if the cell has a visible border at that side.
+  static final int TOP_BORDER = 1;
+  static final int BOTTOM_BORDER = 1 << 1;
+  static final int LEFT_BORDER = 1 << 2;
+  static final int RIGHT_BORDER = 1 << 3;
+
+  // Buffers of rich text strings are kept by threads up to this size, a larger one is dropped
+  // after use.
+  private static final int MAX_RETAINED_TEXT_BUFFER_CHARS = 1 << 12;
+
+  private static final ThreadLocal<StringBuilder> textBuffers =
+      ThreadLocal.withInitial(StringBuilder::new);
+
   public static String safeGetCellString(XSSFSheet sheet, ExcelCellIndex cellIndex) {
-    Optional<XSSFCell> cell = safeGetCell(sheet, cellIndex);
-    if (!cell.isPresent()) {
+    return safeGetCellString(sheet, cellIndex.row(), cellIndex.column());
+  }
+
+  // Same as above, but takes the zero-based row and column index, so that no ExcelCellIndex is
+  // allocated unless the cell is not supported.
+  public static String safeGetCellString(XSSFSheet sheet, int row, int column) {
+    return cellString(safeGetCell(sheet, row, column), row, column, null);
+  }
+
+  // Same as above, but decoded strings are memoized by (and interned in) the given cache of the
+  // workbook of the sheet.
+  static String safeGetCellString(XSSFSheet sheet, int row, int column, CellTextCache texts) {
+    return cellString(safeGetCell(sheet, row, column), row, column, checkNotNull(texts));
+  }
+
+  private static String cellString(
+      @Nullable XSSFCell cell, int row, int column, @Nullable CellTextCache texts) {
+    if (cell == null) {
       return "";
     }
 
-    switch (cell.get().getCellType()) {
+    switch (cell.getCellType()) {
       case CellType.BLANK:
         return "";
       case CellType.BOOLEAN:
-        return cell.get().getBooleanCellValue() ? "true" : "false";
+        return cell.getBooleanCellValue() ? "true" : "false";
       case CellType.NUMERIC:
-        double value = cell.get().getNumericCellValue();
-        return value % 1 == 0 ? String.format("%d", (long) value) : String.valueOf(value);
+        return texts == null
+            ? numericToString(cell.getNumericCellValue())
+            : texts.numeric(cell.getNumericCellValue());
       case CellType.STRING:
-        XSSFRichTextString richTextString = cell.get().getRichStringCellValue();
-        // Regular text cell, no special format applied on this cell.
-        if (richTextString.numFormattingRuns() == 0 || richTextString.numFormattingRuns() == 1) {
-          return richTextString.toString().trim();
-        }
-        // Rich format text, we handle each rich format text run and join them together.
-        StringBuilder runBuilder = new StringBuilder();
-        ImmutableList.Builder<String> formattingRuns = new ImmutableList.Builder<>();
-        for (int i = 0; i < richTextString.numFormattingRuns(); i++) {
-          XSSFFont font = richTextString.getFontOfFormattingRun(i);
-          if (font == null || font.getTypeOffset() == Font.SS_NONE) {
-            // Regular text, merged together if they are not separated by superscriptions or
-            // subscriptions.
-            runBuilder.append(
-                richTextString
-                    .toString()
-                    .substring(
-                        richTextString.getIndexOfFormattingRun(i),
-                        richTextString.getIndexOfFormattingRun(i)
-                            + richTextString.getLengthOfFormattingRun(i))
-                    .trim());
-          } else {
-            // This must be a superscription or a subscription, treat it as a separator.
-            checkArgument(
-                font.getTypeOffset() == Font.SS_SUPER || font.getTypeOffset() == Font.SS_SUB,
-                String.format("Unsupported rich text format at cell %s", cellIndex.toString()));
-            if (runBuilder.length() != 0) {
-              formattingRuns.add(runBuilder.toString());
-              runBuilder = new StringBuilder();
-            }
-          }
+        if (texts == null) {
+          return richTextToString(cell.getRichStringCellValue(), row, column);
         }
-        if (runBuilder.length() != 0) {
-          formattingRuns.add(runBuilder.toString());
+        // Shared strings are decoded once per index, and without creating a rich text string.
+        CTCell ctCell = cell.getCTCell();
+        if (ctCell.getT() == STCellType.S && ctCell.isSetV()) {
+          return texts.sharedString(Integer.parseInt(ctCell.getV()), row, column);
         }
-        return Joiner.on(",").join(formattingRuns.build());
+        return texts.intern(richTextToString(cell.getRichStringCellValue(), row, column));
 
       default:
         break;
@@ -80,109 +93,273 @@ final class SheetParserUtils {
     throw new IllegalArgumentException(
         String.format(
             "Unsupported cell type %s at %s with text %s.",
-            cell.get().getCellType(), cellIndex.toString(), cell.get().toString()));
+            cell.getCellType(), ExcelCellIndex.of(row, column), cell.toString()));
   }
 
-  private static void checkSheetArgument(XSSFSheet sheet, ExcelCellIndex cellIndex) {
-    checkArgument(
-        sheet != null
-            // We have a "+1" here as we use "the row after the last row" as the end mark.
-            && cellIndex.row() >= 0
-            && cellIndex.row() <= sheet.getLastRowNum() + 1
-            // Apache POI doesn't support get last column number, use a reasonable constant
-            // instead.
-            && cellIndex.column() >= 0
-            && cellIndex.column() <= MAX_COLUMN_IDX,
-        String.format("Invalid cell index %s", cellIndex.toString()));
+  // Formats a numeric cell value, integral values are formatted without the fraction part.
+  static String numericToString(double value) {
+    return value % 1 == 0 ? Long.toString((long) value) : String.valueOf(value);
   }
 
-  private static Optional<XSSFCell> safeGetCell(XSSFSheet sheet, ExcelCellIndex cellIndex) {
-    checkSheetArgument(sheet, cellIndex);
-    Optional<XSSFRow> row = Optional.fromNullable(sheet.getRow(cellIndex.row()));
-    return row.isPresent()
-        ? Optional.fromNullable(row.get().getCell(cellIndex.column()))
-        : Optional.absent();
+  // Formats a (maybe rich) text cell value at the given cell.
+  static String richTextToString(XSSFRichTextString richTextString, int row, int column) {
+    // POI builds the string of a rich text from its runs on every call, so it is built once.
+    String text = richTextString.getString();
+    // Regular text cell, no special format applied on this cell.
+    int runCount = richTextString.numFormattingRuns();
+    if (runCount == 0 || runCount == 1) {
+      return text.trim();
+    }
+    // Rich format text, we handle each rich format text run and join them together: regular runs
+    // are trimmed and merged together if they are not separated by superscriptions or
+    // subscriptions, and non-empty merged runs are joined by ",".
+    //
+    // Trimmed runs are appended to a reusable buffer of the thread by their indexes, so the only
+    // string allocated is the result.
+    StringBuilder result = richTextBuffer();
+    // Whether a non-empty run is appended since the last separator.
+    boolean inMergedRun = false;
+    for (int i = 0; i < runCount; i++) {
+      XSSFFont font = richTextString.getFontOfFormattingRun(i);
+      if (font == null || font.getTypeOffset() == Font.SS_NONE) {
+        int begin = richTextString.getIndexOfFormattingRun(i);
+        int end = begin + richTextString.getLengthOfFormattingRun(i);
+        checkPositionIndexes(begin, end, text.length());
+        // Same as String.trim().
+        while (begin < end && text.charAt(begin) <= ' ') {
+          begin++;
+        }
+        while (end > begin && text.charAt(end - 1) <= ' ') {
+          end--;
+        }
+        if (begin < end) {
+          if (!inMergedRun && result.length() != 0) {
+            result.append(',');
+          }
+          result.append(text, begin, end);
+          inMergedRun = true;
+        }
+      } else {
+        // This must be a superscription or a subscription, treat it as a separator.
+        if (font.getTypeOffset() != Font.SS_SUPER && font.getTypeOffset() != Font.SS_SUB) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Unsupported rich text format at cell %s", ExcelCellIndex.of(row, column)));
+        }
+        inMergedRun = false;
+      }
+    }
+    return result.toString();
+  }
+
+  // Returns the empty buffer of the current thread.
+  private static StringBuilder richTextBuffer() {
+    StringBuilder buffer = textBuffers.get();
+    if (buffer.capacity() > MAX_RETAINED_TEXT_BUFFER_CHARS) {
+      buffer = new StringBuilder();
+      textBuffers.set(buffer);
+    }
+    buffer.setLength(0);
+    return buffer;
+  }
+
+  private static void checkSheetArgument(XSSFSheet sheet, int row, int column) {
+    if (sheet == null
+        // We have a "+1" here as we use "the row after the last row" as the end mark.
+        || row < 0
+        || row > sheet.getLastRowNum() + 1
+        // Apache POI doesn't support get last column number, use a reasonable constant
+        // instead.
+        || column < 0
+        || column > MAX_COLUMN_IDX) {
+      // The cell is named in A1 form like other errors, which is only built on failure.
+      throw new IllegalArgumentException(
+          row >= 0 && column >= 0
+              ? String.format("Invalid cell index %s", ExcelCellIndex.of(row, column))
+              : String.format("Invalid cell index (%d, %d)", row, column));
+    }
+  }
+
+  // Returns the cell at the given row and column, or null if it doesn't exist.
+  @Nullable
+  private static XSSFCell safeGetCell(XSSFSheet sheet, int row, int column) {
+    checkSheetArgument(sheet, row, column);
+    XSSFRow sheetRow = sheet.getRow(row);
+    return sheetRow == null ? null : sheetRow.getCell(column);
   }
 
   // At given row and within given columns, find columns which have top border.
   public static ImmutableSet<Integer> getColumnsWithTopBorder(
       XSSFSheet sheet, int row, ImmutableSet<Integer> allColumns) {
     checkArgument(!allColumns.isEmpty());
+    StyleBorderCache styles = stylesOf(sheet);
     return allColumns.stream()
-        .filter(
-            column -> {
-              checkSheetArgument(sheet, ExcelCellIndex.of(row, column.intValue()));
-              // By definition, all cells in the first row has a top border.
-              if (row == 0) {
-                return true;
-              }
-              Optional<XSSFCell> cell =
-                  safeGetCell(sheet, ExcelCellIndex.of(row, column.intValue()));
-              if (cell.isPresent() && cellHasTopBorder(cell.get())) {
-                return true;
-              }
-              Optional<XSSFCell> prevRowCell =
-                  safeGetCell(sheet, ExcelCellIndex.of(row - 1, column.intValue()));
-              return prevRowCell.isPresent() && cellHasBottomBorder(prevRowCell.get());
-            })
+        .filter(column -> cellHasTopEdge(sheet, styles, row, column.intValue()))
         .collect(toImmutableSet());
   }
 
+  // At given row and within columns [beginColumn, endColumn), find columns which have top
+  // border. Bit i of the result is set if column (beginColumn + i) has a top border.
+  public static BitSet getColumnsWithTopBorder(
+      XSSFSheet sheet, int row, int beginColumn, int endColumn) {
+    checkArgument(beginColumn < endColumn);
+    StyleBorderCache styles = stylesOf(sheet);
+    BitSet columns = new BitSet(endColumn - beginColumn);
+    for (int column = beginColumn; column < endColumn; column++) {
+      if (cellHasTopEdge(sheet, styles, row, column)) {
+        columns.set(column - beginColumn);
+      }
+    }
+    return columns;
+  }
+
   // For all cells in the given sheet at the given row and the given columns have
   // a "top border".
   public static boolean hasTopBorder(XSSFSheet sheet, int row, ImmutableSet<Integer> columns) {
     return getColumnsWithTopBorder(sheet, row, columns).size() == columns.size();
   }
 
+  // Whether all cells at the given row and columns [beginColumn, endColumn) have a "top border".
+  public static boolean hasTopBorder(XSSFSheet sheet, int row, int beginColumn, int endColumn) {
+    checkArgument(beginColumn < endColumn);
+    StyleBorderCache styles = stylesOf(sheet);
+    for (int column = beginColumn; column < endColumn; column++) {
+      if (!cellHasTopEdge(sheet, styles, row, column)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // At given column and within given rows, find rows which have left border.
   public static ImmutableSet<Integer> getRowsWithLeftBorder(
       XSSFSheet sheet, ImmutableSet<Integer> allRows, int column) {
     checkArgument(!allRows.isEmpty());
+    StyleBorderCache styles = stylesOf(sheet);
     return allRows.stream()
-        .filter(
-            row -> {
-              checkSheetArgument(sheet, ExcelCellIndex.of(row.intValue(), column));
-              // By definition, all cells in the first column has a left border.
-              if (column == 0) {
-                return true;
-              }
-              Optional<XSSFCell> cell =
-                  safeGetCell(sheet, ExcelCellIndex.of(row.intValue(), column));
-              if (cell.isPresent() && cellHasLeftBorder(cell.get())) {
-                return true;
-              }
-              Optional<XSSFCell> prevColumnCell =
-                  safeGetCell(sheet, ExcelCellIndex.of(row.intValue(), column - 1));
-              return prevColumnCell.isPresent() && cellHasRightBorder(prevColumnCell.get());
-            })
+        .filter(row -> cellHasLeftEdge(sheet, styles, row.intValue(), column))
         .collect(toImmutableSet());
   }
 
+  // At given column and within rows [beginRow, endRow), find rows which have left border. Bit i
+  // of the result is set if row (beginRow + i) has a left border.
+  public static BitSet getRowsWithLeftBorder(
+      XSSFSheet sheet, int beginRow, int endRow, int column) {
+    checkArgument(beginRow < endRow);
+    StyleBorderCache styles = stylesOf(sheet);
+    BitSet rows = new BitSet(endRow - beginRow);
+    for (int row = beginRow; row < endRow; row++) {
+      if (cellHasLeftEdge(sheet, styles, row, column)) {
+        rows.set(row - beginRow);
+      }
+    }
+    return rows;
+  }
+
   // Whether all cells in sheet at the given rows and column have a "left border".
   public static boolean hasLeftBorder(XSSFSheet sheet, ImmutableSet<Integer> rows, int column) {
     return getRowsWithLeftBorder(sheet, rows, column).size() == rows.size();
   }
 
-  private static boolean cellHasTopBorder(XSSFCell cell) {
-    XSSFCellStyle style = checkNotNull((XSSFCellStyle) cell.getCellStyle());
+  // Whether all cells at rows [beginRow, endRow) and the given column have a "left border".
+  public static boolean hasLeftBorder(XSSFSheet sheet, int beginRow, int endRow, int column) {
+    checkArgument(beginRow < endRow);
+    StyleBorderCache styles = stylesOf(sheet);
+    for (int row = beginRow; row < endRow; row++) {
+      if (!cellHasLeftEdge(sheet, styles, row, column)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Whether the cell at the given row and column has a top border, either by itself or by the
+  // bottom border of the cell above it.
+  private static boolean cellHasTopEdge(
+      XSSFSheet sheet, StyleBorderCache styles, int row, int column) {
+    checkSheetArgument(sheet, row, column);
+    // By definition, all cells in the first row has a top border.
+    if (row == 0) {
+      return true;
+    }
+    XSSFCell cell = safeGetCell(sheet, row, column);
+    if (cell != null && (styles.cellBorderMask(cell) & TOP_BORDER) != 0) {
+      return true;
+    }
+    XSSFCell prevRowCell = safeGetCell(sheet, row - 1, column);
+    return prevRowCell != null && (styles.cellBorderMask(prevRowCell) & BOTTOM_BORDER) != 0;
+  }
+
+  // Whether the cell at the given row and column has a left border, either by itself or by the
+  // right border of the cell on the left of it.
+  private static boolean cellHasLeftEdge(
+      XSSFSheet sheet, StyleBorderCache styles, int row, int column) {
+    checkSheetArgument(sheet, row, column);
+    // By definition, all cells in the first column has a left border.
+    if (column == 0) {
+      return true;
+    }
+    XSSFCell cell = safeGetCell(sheet, row, column);
+    if (cell != null && (styles.cellBorderMask(cell) & LEFT_BORDER) != 0) {
+      return true;
+    }
+    XSSFCell prevColumnCell = safeGetCell(sheet, row, column - 1);
+    return prevColumnCell != null
+        && (styles.cellBorderMask(prevColumnCell) & RIGHT_BORDER) != 0;
+  }
+
+  // Border masks of cell styles in the workbook of the given sheet, which are shared by all
+  // border checks of the workbook, so that a probe of a few cells doesn't build a cache of all
+  // styles of its own. Workbooks are only read by the parser, so masks of their styles don't
+  // change.
+  private static StyleBorderCache stylesOf(XSSFSheet sheet) {
+    checkArgument(sheet != null, "Invalid sheet, it is null");
+    StylesTable styles = sheet.getWorkbook().getStylesSource();
+    synchronized (styleBorderCaches) {
+      SoftReference<StyleBorderCache> cached = styleBorderCaches.get(styles);
+      StyleBorderCache cache = cached == null ? null : cached.get();
+      if (cache == null) {
+        cache = StyleBorderCache.of(styles);
+        styleBorderCaches.put(styles, new SoftReference<>(cache));
+      }
+      return cache;
+    }
+  }
+
+  // Returns the mask of all visible borders of cells using the given style.
+  static int styleBorderMask(XSSFCellStyle style) {
+    int mask = 0;
+    if (styleHasTopBorder(style)) {
+      mask |= TOP_BORDER;
+    }
+    if (styleHasBottomBorder(style)) {
+      mask |= BOTTOM_BORDER;
+    }
+    if (styleHasLeftBorder(style)) {
+      mask |= LEFT_BORDER;
+    }
+    if (styleHasRightBorder(style)) {
+      mask |= RIGHT_BORDER;
+    }
+    return mask;
+  }
+
+  private static boolean styleHasTopBorder(XSSFCellStyle style) {
     return style.getBorderTop() != BorderStyle.NONE
         && isBorderColorVisible(style.getTopBorderXSSFColor());
   }
 
-  private static boolean cellHasBottomBorder(XSSFCell cell) {
-    XSSFCellStyle style = checkNotNull((XSSFCellStyle) cell.getCellStyle());
+  private static boolean styleHasBottomBorder(XSSFCellStyle style) {
     return style.getBorderBottom() != BorderStyle.NONE
         && isBorderColorVisible(style.getBottomBorderXSSFColor());
   }
 
-  private static boolean cellHasLeftBorder(XSSFCell cell) {
-    XSSFCellStyle style = checkNotNull((XSSFCellStyle) cell.getCellStyle());
+  private static boolean styleHasLeftBorder(XSSFCellStyle style) {
     return style.getBorderLeft() != BorderStyle.NONE
         && isBorderColorVisible(style.getLeftBorderXSSFColor());
   }
 
-  private static boolean cellHasRightBorder(XSSFCell cell) {
-    XSSFCellStyle style = checkNotNull((XSSFCellStyle) cell.getCellStyle());
+  private static boolean styleHasRightBorder(XSSFCellStyle style) {
     return style.getBorderRight() != BorderStyle.NONE
         && isBorderColorVisible(style.getRightBorderXSSFColor());
   }
@@ -0,0 +1,198 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.BitSet;
+import java.util.HashMap;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+// An immutable snapshot of a rect in an Excel sheet, i.e., existences and strings of cells in the
+// rect and the border grid of the rect. It holds no reference to Apache POI objects and its
+// memory is proportional to the size of the rect rather than the whole workbook. A snapshot is
+// safe to be read by multiple threads.
+final class SheetSnapshot implements CellTextSource {
+  private final ExcelRect rect;
+  private final BorderGrid borders;
+
+  // Following fields are indexed by the row-major offset of a cell in the rect.
+  private final BitSet existingCells;
+  private final String[] cellStrings;
+
+  // Error messages of cells which are not supported, e.g., formula cells. The error is only
+  // raised when the string of such a cell is requested.
+  private final ImmutableMap<Integer, String> unsupportedCells;
+
+  private SheetSnapshot(
+      ExcelRect rect,
+      BorderGrid borders,
+      BitSet existingCells,
+      String[] cellStrings,
+      ImmutableMap<Integer, String> unsupportedCells) {
+    this.rect = rect;
+    this.borders = borders;
+    this.existingCells = existingCells;
+    this.cellStrings = cellStrings;
+    this.unsupportedCells = unsupportedCells;
+  }
+
+  public ExcelRect rect() {
+    return rect;
+  }
+
+  public BorderGrid borders() {
+    return borders;
+  }
+
+  // Whether the cell at the given row and column exists in the sheet.
+  public boolean hasCell(int row, int column) {
+    return existingCells.get(offsetOf(row, column));
+  }
+
+  @Override
+  public String cellString(int row, int column) {
+    int offset = offsetOf(row, column);
+    if (!unsupportedCells.isEmpty() && unsupportedCells.containsKey(offset)) {
+      throw new IllegalArgumentException(unsupportedCells.get(offset));
+    }
+    String cellString = cellStrings[offset];
+    return cellString == null ? "" : cellString;
+  }
+
+  private int offsetOf(int row, int column) {
+    if (!rect.contains(row, column)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid cell index %s, it is not in snapshot rect %s",
+              ExcelCellIndex.of(row, column), rect));
+    }
+    return rect.offsetOf(row, column);
+  }
+
+  // Takes a snapshot of the given rect in a loaded sheet, so that the rect can be parsed without
+  // touching POI objects, e.g., by multiple threads. Decoded strings are memoized by the given
+  // cache of the workbook.
+  static SheetSnapshot of(XSSFSheet sheet, ExcelRect rect, CellTextCache texts) {
+    return of(sheet, rect, StyleBorderCache.of(sheet.getWorkbook().getStylesSource()), texts);
+  }
+
+  // Same as of(sheet, rect, texts), with the given style cache of the workbook, so that caches
+  // are shared by snapshots of many rects in the same workbook.
+  static SheetSnapshot of(
+      XSSFSheet sheet, ExcelRect rect, StyleBorderCache styles, CellTextCache texts) {
+    checkNotNull(sheet);
+    checkNotNull(styles);
+    checkNotNull(texts);
+    Builder builder = builder(rect);
+    int beginRow = Math.max(0, rect.beginRow() - 1);
+    int endRow = Math.min(sheet.getLastRowNum(), rect.endRow());
+    for (int row = beginRow; row <= endRow; row++) {
+      XSSFRow sheetRow = sheet.getRow(row);
+      if (sheetRow == null) {
+        continue;
+      }
+      for (int column = Math.max(0, rect.beginColumn() - 1);
+          column <= rect.endColumn();
+          column++) {
+        XSSFCell cell = sheetRow.getCell(column);
+        if (cell == null) {
+          continue;
+        }
+        int borderMask = styles.cellBorderMask(cell);
+        if (!builder.isInRect(row, column)) {
+          // Only borders of cells next to the rect are used.
+          builder.addCell(row, column, borderMask, null);
+          continue;
+        }
+        try {
+          builder.addCell(
+              row,
+              column,
+              borderMask,
+              SheetParserUtils.safeGetCellString(sheet, row, column, texts));
+        } catch (IllegalArgumentException e) {
+          // E.g., a formula cell, it is raised only if the cell string is used.
+          builder.addUnsupportedCell(row, column, borderMask, e.getMessage());
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  static Builder builder(ExcelRect rect) {
+    return new Builder(rect);
+  }
+
+  // Builder of a sheet snapshot. Cells can be added in any order, only cells in the snapshot rect
+  // and their direct neighbours (i.e., the row above, the row below, the column on the left and
+  // the column on the right of the rect), whose borders are used to build the border grid, are
+  // retained.
+  static final class Builder {
+    private final ExcelRect rect;
+    private final int columnCount;
+    private final BitSet existingCells;
+    private final String[] cellStrings;
+    private final HashMap<Integer, String> unsupportedCells = new HashMap<>();
+
+    // Border masks of cells in rows [beginRow - 1, endRow] and columns
+    // [beginColumn - 1, endColumn].
+    private final byte[] borderMasks;
+
+    private Builder(ExcelRect rect) {
+      this.rect = checkNotNull(rect);
+      this.columnCount = rect.columnCount();
+      this.existingCells = new BitSet(rect.cellCount());
+      this.cellStrings = new String[rect.cellCount()];
+      this.borderMasks = new byte[(rect.rowCount() + 2) * (columnCount + 2)];
+    }
+
+    // Whether the cell at the given row and column is retained by this builder, i.e., it is worth
+    // decoding the cell.
+    boolean isRetained(int row, int column) {
+      return row >= rect.beginRow() - 1
+          && row <= rect.endRow()
+          && column >= rect.beginColumn() - 1
+          && column <= rect.endColumn();
+    }
+
+    // Whether the string of the cell at the given row and column is retained by this builder.
+    boolean isInRect(int row, int column) {
+      return rect.contains(row, column);
+    }
+
+    void addCell(int row, int column, int borderMask, String cellString) {
+      if (!isRetained(row, column)) {
+        return;
+      }
+      borderMasks[borderMaskOffsetOf(row, column)] = (byte) borderMask;
+      if (isInRect(row, column)) {
+        int offset = rect.offsetOf(row, column);
+        existingCells.set(offset);
+        cellStrings[offset] = cellString == null || cellString.isEmpty() ? null : cellString;
+      }
+    }
+
+    void addUnsupportedCell(int row, int column, int borderMask, String error) {
+      addCell(row, column, borderMask, null);
+      if (isInRect(row, column)) {
+        unsupportedCells.put(rect.offsetOf(row, column), error);
+      }
+    }
+
+    SheetSnapshot build() {
+      BorderGrid borders =
+          BorderGrid.of(
+              rect,
+              (row, column) ->
+                  isRetained(row, column) ? borderMasks[borderMaskOffsetOf(row, column)] : 0);
+      return new SheetSnapshot(
+          rect, borders, existingCells, cellStrings, ImmutableMap.copyOf(unsupportedCells));
+    }
+
+    private int borderMaskOffsetOf(int row, int column) {
+      return (row - rect.beginRow() + 1) * (columnCount + 2) + (column - rect.beginColumn() + 1);
+    }
+  }
+}
@@ -0,0 +1,446 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.OptionalInt;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+// This class parses a 3GPP spec table from an Excel file with the streaming (SAX) event model of
+// Apache POI, instead of loading the whole workbook as an XSSFWorkbook.
+//
+// The metadata sheet is read first, then the XML of the table sheet is streamed once per table, in
+// which only cells in (and next to) the table data rect are kept in a SheetSnapshot. So the heap
+// usage is proportional to the table data rect rather than the whole workbook. The shared strings
+// table and styles are loaded once per workbook and shared by all streamed sheets, see
+// WorkbookParts. The result is the same as MetadataSheetParser.parse() and TableSheetParser.parse()
+// on a loaded XSSFWorkbook.
+final class StreamingWorkbookParser {
+
+  public static TableData parse(File file) throws IOException {
+    return parse(file, null);
+  }
+
+  // Same as parse(file), but if a pool is given, logical rows are parsed in parallel by the pool,
+  // see TableSheetParser.parseParallel().
+  public static TableData parse(File file, @Nullable ForkJoinPool pool) throws IOException {
+    return parseTable(file, pool).data();
+  }
+
+  // Same as parse(file, pool), but the metadata of the table is also returned.
+  public static ParsedTable parseTable(File file, @Nullable ForkJoinPool pool) throws IOException {
+    return parseTable(WorkbookSource.of(file.toPath()), pool);
+  }
+
+  // Same as parseTable(file, pool), but the workbook is read from the given source.
+  public static ParsedTable parseTable(WorkbookSource source, @Nullable ForkJoinPool pool)
+      throws IOException {
+    return parseTables(source, pool, /* single= */ true).get(0);
+  }
+
+  // Parses all tables described by the metadata sheet (see MetadataSheetParser.parseAll()), in
+  // the same order. The table sheet of each table is streamed once for that table.
+  public static ImmutableList<ParsedTable> parseTables(
+      WorkbookSource source, @Nullable ForkJoinPool pool) throws IOException {
+    return parseTables(source, pool, /* single= */ false);
+  }
+
+  // Parses the tables of the workbook, if single is true, the workbook must have only one table.
+  private static ImmutableList<ParsedTable> parseTables(
+      WorkbookSource source, @Nullable ForkJoinPool pool, boolean single) throws IOException {
+    OPCPackage pkg = source.open();
+    try {
+      WorkbookParts workbook = new WorkbookParts(new XSSFReader(pkg));
+      ParserStats.Timer metadataTimer =
+          ParserStats.start(ParserStats.Phase.METADATA, source.name());
+      MetadataCells metadataCells = readMetadataCells(workbook);
+      ImmutableList<TableMetadata> metadata =
+          single
+              ? ImmutableList.of(
+                  MetadataSheetParser.parse(metadataCells, metadataCells.lastRowNum))
+              : MetadataSheetParser.parseAll(metadataCells, metadataCells.lastRowNum);
+      metadataTimer.stop();
+      ImmutableList.Builder<ParsedTable> tables =
+          ImmutableList.builderWithExpectedSize(metadata.size());
+      for (TableMetadata tableMetadata : metadata) {
+        ParserStats.Timer snapshotTimer =
+            ParserStats.start(ParserStats.Phase.SNAPSHOT, source.name());
+        SheetSnapshot snapshot =
+            readSheetSnapshot(
+                workbook, tableMetadata.tableSheetName(), tableMetadata.tableDataRect());
+        snapshotTimer.stop();
+        tables.add(
+            ParsedTable.of(
+                tableMetadata,
+                pool == null
+                    ? TableSheetParser.parse(snapshot)
+                    : TableSheetParser.parseParallel(snapshot, pool)));
+      }
+      return tables.build();
+    } catch (OpenXML4JException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to read Excel file '%s'", source.name()), e);
+    } finally {
+      // The package is opened as read only, revert() closes it without saving.
+      pkg.revert();
+    }
+  }
+
+  static OPCPackage openPackage(File file) {
+    return WorkbookSource.of(checkNotNull(file).toPath()).open();
+  }
+
+  // Reads and parses the metadata sheet, which must describe only one table.
+  static TableMetadata parseMetadata(XSSFReader reader) throws IOException, OpenXML4JException {
+    MetadataCells cells = readMetadataCells(new WorkbookParts(reader));
+    return MetadataSheetParser.parse(cells, cells.lastRowNum);
+  }
+
+  // Parts of a workbook which are shared by all sheets streamed from it. XSSFReader parses the
+  // shared strings table (and styles) again on every call, and the shared strings table of a spec
+  // workbook could be megabytes, so they are loaded once per workbook instead of once per sheet.
+  // Decoded cell strings are shared too. Sheets of a workbook are streamed one at a time, so it
+  // is not thread safe.
+  private static final class WorkbookParts {
+    final XSSFReader reader;
+    final CellTextCache texts;
+    // Loaded by the first table sheet, since the metadata sheet doesn't need borders.
+    @Nullable private StyleBorderCache styles;
+
+    WorkbookParts(XSSFReader reader) throws IOException, OpenXML4JException {
+      this.reader = reader;
+      this.texts = CellTextCache.of(reader.getSharedStringsTable());
+    }
+
+    StyleBorderCache styles() throws IOException, OpenXML4JException {
+      if (styles == null) {
+        styles = StyleBorderCache.of(reader.getStylesTable());
+      }
+      return styles;
+    }
+  }
+
+  // Reads the key and value columns of the metadata sheet.
+  private static MetadataCells readMetadataCells(WorkbookParts workbook)
+      throws IOException, OpenXML4JException {
+    MetadataCells cells = new MetadataCells();
+    OptionalInt lastRowNum =
+        readSheet(
+            workbook,
+            MetadataSheetParser.SHEET_NAME,
+            new CellListener() {
+              @Override
+              public boolean wants(int row, int column) {
+                // Only the key column and the value column are used.
+                return column == 0 || column == 1;
+              }
+
+              @Override
+              public void onCell(
+                  int row, int column, int styleIndex, String cellString, String error) {
+                if (error != null) {
+                  cells.unsupportedCells.put(ExcelCellIndex.of(row, column), error);
+                } else {
+                  cells.cellStrings.put(ExcelCellIndex.of(row, column), cellString);
+                }
+              }
+            });
+    checkArgument(lastRowNum.isPresent(), "Unable to find metadata sheet in the Excel file");
+    cells.lastRowNum = lastRowNum.getAsInt();
+    return cells;
+  }
+
+  // Cells of the metadata sheet, an unsupported cell fails only when it is used.
+  private static final class MetadataCells implements CellTextSource {
+    final HashMap<ExcelCellIndex, String> cellStrings = new HashMap<>();
+    final HashMap<ExcelCellIndex, String> unsupportedCells = new HashMap<>();
+    int lastRowNum = -1;
+
+    @Override
+    public String cellString(int row, int column) {
+      ExcelCellIndex cellIndex = ExcelCellIndex.of(row, column);
+      checkArgument(!unsupportedCells.containsKey(cellIndex), unsupportedCells.get(cellIndex));
+      return cellStrings.getOrDefault(cellIndex, "");
+    }
+  }
+
+  // Streams the table sheet and takes a snapshot of the given rect in it.
+  static SheetSnapshot readSheetSnapshot(XSSFReader reader, ExcelRect rect)
+      throws IOException, OpenXML4JException {
+    return readSheetSnapshot(reader, TableSheetParser.SHEET_NAME, rect);
+  }
+
+  // Streams the sheet with the given name and takes a snapshot of the given rect in it.
+  static SheetSnapshot readSheetSnapshot(XSSFReader reader, String sheetName, ExcelRect rect)
+      throws IOException, OpenXML4JException {
+    return readSheetSnapshot(new WorkbookParts(reader), sheetName, rect);
+  }
+
+  private static SheetSnapshot readSheetSnapshot(
+      WorkbookParts workbook, String sheetName, ExcelRect rect)
+      throws IOException, OpenXML4JException {
+    StyleBorderCache styles = workbook.styles();
+    SheetSnapshot.Builder snapshot = SheetSnapshot.builder(rect);
+    OptionalInt lastRowNum =
+        readSheet(
+            workbook,
+            sheetName,
+            new CellListener() {
+              @Override
+              public boolean wants(int row, int column) {
+                return snapshot.isRetained(row, column);
+              }
+
+              @Override
+              public void onCell(
+                  int row, int column, int styleIndex, String cellString, String error) {
+                int borderMask = styles.borderMask(styleIndex);
+                if (error != null) {
+                  snapshot.addUnsupportedCell(row, column, borderMask, error);
+                } else {
+                  snapshot.addCell(row, column, borderMask, cellString);
+                }
+              }
+            });
+    checkArgument(
+        lastRowNum.isPresent(), String.format("Unable to find sheet '%s'.", sheetName));
+    return snapshot.build();
+  }
+
+  // Receives decoded cells of a sheet.
+  private interface CellListener {
+    // Whether the cell at the given row and column should be decoded, it is called before any
+    // value of the cell is decoded.
+    boolean wants(int row, int column);
+
+    // Called for each wanted cell, either the cell string or the error message of an unsupported
+    // cell is non-null.
+    void onCell(int row, int column, int styleIndex, String cellString, String error);
+  }
+
+  // Streams the sheet with the given name to the listener, and returns the last row number of the
+  // sheet (-1 if the sheet is empty), or empty if the sheet doesn't exist.
+  private static OptionalInt readSheet(
+      WorkbookParts workbook, String sheetName, CellListener listener)
+      throws IOException, OpenXML4JException {
+    XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) workbook.reader.getSheetsData();
+    while (sheets.hasNext()) {
+      try (InputStream sheet = sheets.next()) {
+        if (!sheets.getSheetName().equals(sheetName)) {
+          continue;
+        }
+        SheetHandler handler = new SheetHandler(workbook.texts, listener);
+        try {
+          XMLReader parser = XMLHelper.newXMLReader();
+          parser.setContentHandler(handler);
+          parser.parse(new InputSource(sheet));
+        } catch (SAXException | ParserConfigurationException e) {
+          throw new IllegalArgumentException(
+              String.format("Unable to read sheet '%s' in the Excel file", sheetName), e);
+        }
+        return OptionalInt.of(handler.lastRowNum);
+      }
+    }
+    return OptionalInt.empty();
+  }
+
+  // SAX handler of a worksheet XML part, see ECMA-376 Part 1, 18.3 "Worksheets".
+  private static final class SheetHandler extends DefaultHandler {
+    private final CellTextCache texts;
+    private final CellListener listener;
+
+    private int lastRowNum = -1;
+
+    // States of the current row and cell.
+    private int row = -1;
+    private int column = -1;
+    private boolean wanted;
+    private String cellType;
+    private int styleIndex;
+    private boolean hasFormula;
+    private final StringBuilder value = new StringBuilder();
+    private boolean inValue;
+
+    // States of the current inline string of the current cell.
+    private XSSFRichTextString inlineString;
+    private final StringBuilder inlineText = new StringBuilder();
+    private boolean inInlineText;
+    private boolean inRun;
+    private boolean inPhoneticRun;
+    private XSSFFont runFont;
+
+    SheetHandler(CellTextCache texts, CellListener listener) {
+      this.texts = texts;
+      this.listener = listener;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      switch (localName) {
+        case "row":
+          String rowReference = attributes.getValue("r");
+          row = rowReference == null ? row + 1 : Integer.parseInt(rowReference) - 1;
+          lastRowNum = Math.max(lastRowNum, row);
+          column = -1;
+          break;
+        case "c":
+          String cellReference = attributes.getValue("r");
+          column =
+              cellReference == null
+                  ? column + 1
+                  : ExcelCellIndex.packedColumn(ExcelCellIndex.parsePacked(cellReference));
+          wanted = listener.wants(row, column);
+          if (wanted) {
+            cellType = attributes.getValue("t");
+            String style = attributes.getValue("s");
+            styleIndex = style == null ? 0 : Integer.parseInt(style);
+            hasFormula = false;
+            value.setLength(0);
+            inlineString = null;
+          }
+          break;
+        case "f":
+          hasFormula = true;
+          break;
+        case "v":
+          inValue = wanted;
+          break;
+        case "is":
+          if (wanted) {
+            inlineString = new XSSFRichTextString();
+            inlineText.setLength(0);
+          }
+          break;
+        case "r":
+          if (inlineString != null) {
+            inRun = true;
+            runFont = null;
+            inlineText.setLength(0);
+          }
+          break;
+        case "rPh":
+          inPhoneticRun = inlineString != null;
+          break;
+        case "vertAlign":
+          if (inRun) {
+            String align = attributes.getValue("val");
+            if ("superscript".equals(align) || "subscript".equals(align)) {
+              runFont = new XSSFFont();
+              runFont.setTypeOffset(
+                  "superscript".equals(align) ? Font.SS_SUPER : Font.SS_SUB);
+            }
+          }
+          break;
+        case "t":
+          inInlineText = inlineString != null && !inPhoneticRun;
+          break;
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (inValue) {
+        value.append(ch, start, length);
+      } else if (inInlineText) {
+        inlineText.append(ch, start, length);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      switch (localName) {
+        case "v":
+          inValue = false;
+          break;
+        case "t":
+          inInlineText = false;
+          break;
+        case "r":
+          if (inRun) {
+            inlineString.append(inlineText.toString(), runFont);
+            inlineText.setLength(0);
+            inRun = false;
+          }
+          break;
+        case "rPh":
+          inPhoneticRun = false;
+          break;
+        case "is":
+          // An inline string without formatting runs.
+          if (inlineString != null && inlineString.numFormattingRuns() == 0) {
+            inlineString = new XSSFRichTextString(inlineText.toString());
+          }
+          break;
+        case "c":
+          if (wanted) {
+            decodeCell();
+          }
+          wanted = false;
+          break;
+        default:
+          break;
+      }
+    }
+
+    // Decodes the current cell in the same way as SheetParserUtils.safeGetCellString().
+    private void decodeCell() {
+      String cellString = null;
+      String error = null;
+      try {
+        if (hasFormula) {
+          error = unsupportedCellError("FORMULA");
+        } else if (cellType == null || cellType.equals("n")) {
+          cellString =
+              value.length() == 0 ? "" : texts.numeric(Double.parseDouble(value.toString()));
+        } else if (cellType.equals("b")) {
+          cellString = value.toString().equals("1") ? "true" : "false";
+        } else if (cellType.equals("s")) {
+          cellString =
+              value.length() == 0
+                  ? ""
+                  : texts.sharedString(Integer.parseInt(value.toString()), row, column);
+        } else if (cellType.equals("inlineStr")) {
+          cellString =
+              inlineString == null
+                  ? texts.intern(value.toString().trim())
+                  : texts.intern(SheetParserUtils.richTextToString(inlineString, row, column));
+        } else if (cellType.equals("str")) {
+          cellString = texts.intern(value.toString().trim());
+        } else {
+          error = unsupportedCellError(cellType.equals("e") ? "ERROR" : cellType);
+        }
+      } catch (IllegalArgumentException e) {
+        // E.g., an unsupported rich text format, it is raised only if the cell string is used.
+        error = e.getMessage();
+      }
+      listener.onCell(row, column, styleIndex, cellString, error);
+    }
+
+    private String unsupportedCellError(String type) {
+      return String.format(
+          "Unsupported cell type %s at %s with text %s.",
+          type, ExcelCellIndex.of(row, column), value);
+    }
+  }
+}
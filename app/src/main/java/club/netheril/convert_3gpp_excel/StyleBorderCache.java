@@ -0,0 +1,65 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+// This class caches the visible border mask (see SheetParserUtils.TOP_BORDER etc.) of each cell
+// style in a workbook.
+//
+// A workbook typically has only a few dozen distinct cell styles shared by all cells, while
+// computing the border mask of a style requires reading 4 border styles and 4 border colors.
+// With this cache, the border mask of a cell is computed once per style and then it is a single
+// array lookup by the style index.
+//
+// Masks are computed lazily. Concurrent lookups are safe: a mask is a pure function of the
+// style, so racing threads at worst compute and write the same value.
+final class StyleBorderCache {
+  // The mask of a style which is not computed yet.
+  private static final byte UNKNOWN = -1;
+
+  private final StylesTable styles;
+
+  // Indexed by the style index.
+  private final byte[] masks;
+
+  private StyleBorderCache(StylesTable styles) {
+    this.styles = styles;
+    this.masks = new byte[styles.getNumCellStyles()];
+    Arrays.fill(masks, UNKNOWN);
+  }
+
+  public static StyleBorderCache of(StylesTable styles) {
+    return new StyleBorderCache(checkNotNull(styles));
+  }
+
+  // Returns the border mask of the style with the given index.
+  public int borderMask(int styleIndex) {
+    if (styleIndex < 0 || styleIndex >= masks.length) {
+      // Not expected in a valid workbook, styles.getStyleAt() reports the error if any.
+      return computeBorderMask(styleIndex);
+    }
+    byte mask = masks[styleIndex];
+    if (mask == UNKNOWN) {
+      mask = (byte) computeBorderMask(styleIndex);
+      masks[styleIndex] = mask;
+    }
+    return mask;
+  }
+
+  // Returns the border mask of the given cell.
+  public int cellBorderMask(XSSFCell cell) {
+    // XSSFCell.getCellStyle() creates a new XSSFCellStyle on each call, reads the style index
+    // directly instead. A cell without the style attribute uses the default style 0.
+    return borderMask(cell.getCTCell().isSetS() ? (int) cell.getCTCell().getS() : 0);
+  }
+
+  private int computeBorderMask(int styleIndex) {
+    XSSFCellStyle style =
+        checkNotNull(styles.getStyleAt(styleIndex), "Unable to find cell style %s", styleIndex);
+    return SheetParserUtils.styleBorderMask(style);
+  }
+}
@@ -0,0 +1,365 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import javax.annotation.Nullable;
+
+// This class renders TableData to an Appendable incrementally, i.e., it walks the table tree and
+// writes each row, column and cell as it goes, instead of building the whole output as one
+// String. With a buffered output, the memory used by rendering is constant regardless of the
+// table size (except the recursion depth of nested columns).
+//
+// Supported formats:
+// - PRETTY: the same text as TableData.toString().
+// - JSON: one JSON document of the table, e.g.,
+//   {"rows":[{"columns":[{"type":"leaf","cells":["DC_1A_n1A"]},{"type":"empty"}]}]}
+// - NDJSON: one JSON document per (top level) logical row, one document per line, e.g.,
+//   {"row":0,"columns":[{"type":"leaf","cells":["DC_1A_n1A"]},{"type":"empty"}]}
+// - CSV: one line per flattened record (see TableFlattener), quoted as RFC 4180, e.g.,
+//   DC_1A_n1A,20
+// - FLAT_NDJSON: one JSON document per flattened record, e.g.,
+//   {"row":0,"values":["DC_1A_n1A","20"]}
+//
+// If a file name is given, JSON and NDJSON documents also carry a "file" field, and CSV lines
+// start with a file column, so that outputs of many files (e.g., in batch mode) can be told
+// apart.
+final class TableDataWriter {
+  enum Format {
+    PRETTY,
+    JSON,
+    NDJSON,
+    CSV,
+    FLAT_NDJSON;
+
+    // Parses a format name in the command line, e.g., "json" or "flat-ndjson".
+    static Format of(String name) {
+      for (Format format : values()) {
+        if (format.name().equalsIgnoreCase(name.replace('-', '_'))) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException(String.format("Unrecognizable output format '%s'", name));
+    }
+  }
+
+  private static final String INDENT = "  ";
+
+  public static void write(TableData data, Format format, Appendable out) throws IOException {
+    write(data, format, null, out);
+  }
+
+  public static void write(
+      TableData data, Format format, @Nullable String fileName, Appendable out)
+      throws IOException {
+    checkNotNull(data);
+    checkNotNull(format);
+    checkNotNull(out);
+    switch (format) {
+      case PRETTY:
+        new PrettyWriter(out).writeData(data, "");
+        break;
+      case JSON:
+        writeJson(data, fileName, out);
+        break;
+      case NDJSON:
+        writeNdjson(data, fileName, out);
+        break;
+      case CSV:
+        writeCsv(data, fileName, out);
+        break;
+      case FLAT_NDJSON:
+        writeFlatNdjson(data, fileName, out);
+        break;
+    }
+  }
+
+  private static void writeJson(TableData data, @Nullable String fileName, Appendable out)
+      throws IOException {
+    out.append('{');
+    if (fileName != null) {
+      out.append("\"file\":");
+      writeJsonString(fileName, out);
+      out.append(',');
+    }
+    out.append("\"rows\":");
+    writeJsonRows(data.rows(), out);
+    out.append("}\n");
+  }
+
+  private static void writeNdjson(TableData data, @Nullable String fileName, Appendable out)
+      throws IOException {
+    for (int i = 0; i < data.rows().size(); i++) {
+      out.append('{');
+      if (fileName != null) {
+        out.append("\"file\":");
+        writeJsonString(fileName, out);
+        out.append(',');
+      }
+      out.append("\"row\":").append(Integer.toString(i)).append(",\"columns\":");
+      writeJsonColumns(data.rows().get(i).columns(), out);
+      out.append("}\n");
+    }
+  }
+
+  private static void writeCsv(TableData data, @Nullable String fileName, Appendable out)
+      throws IOException {
+    TableFlattener.RecordCursor records = new TableFlattener.RecordCursor(data);
+    while (records.next()) {
+      if (fileName != null) {
+        writeCsvField(fileName, out);
+        out.append(',');
+      }
+      List<String> values = records.values();
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          out.append(',');
+        }
+        writeCsvField(values.get(i), out);
+      }
+      out.append('\n');
+    }
+  }
+
+  // Writes a CSV field, which is quoted (with quotes doubled) only if it has a comma, a quote or a
+  // line break, see RFC 4180.
+  private static void writeCsvField(String text, Appendable out) throws IOException {
+    boolean needsQuotes = false;
+    for (int i = 0; i < text.length() && !needsQuotes; i++) {
+      char c = text.charAt(i);
+      needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!needsQuotes) {
+      out.append(text);
+      return;
+    }
+    out.append('"');
+    int runBegin = 0;
+    for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', runBegin)) {
+      out.append(text, runBegin, i + 1).append('"');
+      runBegin = i + 1;
+    }
+    out.append(text, runBegin, text.length());
+    out.append('"');
+  }
+
+  private static void writeFlatNdjson(TableData data, @Nullable String fileName, Appendable out)
+      throws IOException {
+    TableFlattener.RecordCursor records = new TableFlattener.RecordCursor(data);
+    while (records.next()) {
+      out.append('{');
+      if (fileName != null) {
+        out.append("\"file\":");
+        writeJsonString(fileName, out);
+        out.append(',');
+      }
+      out.append("\"row\":").append(Integer.toString(records.row())).append(",\"values\":[");
+      List<String> values = records.values();
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          out.append(',');
+        }
+        writeJsonString(values.get(i), out);
+      }
+      out.append("]}\n");
+    }
+  }
+
+  private static void writeJsonRows(List<TableRow> rows, Appendable out) throws IOException {
+    out.append('[');
+    for (int i = 0; i < rows.size(); i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append("{\"columns\":");
+      writeJsonColumns(rows.get(i).columns(), out);
+      out.append('}');
+    }
+    out.append(']');
+  }
+
+  private static void writeJsonColumns(List<TableColumn> columns, Appendable out)
+      throws IOException {
+    out.append('[');
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      TableColumn column = columns.get(i);
+      switch (column.type()) {
+        case EMPTY:
+          out.append("{\"type\":\"empty\"}");
+          break;
+        case LEAF:
+          out.append("{\"type\":\"leaf\",\"cells\":[");
+          for (int j = 0; j < column.cells().size(); j++) {
+            if (j > 0) {
+              out.append(',');
+            }
+            writeJsonString(column.cells().get(j), out);
+          }
+          out.append("]}");
+          break;
+        case PARENT:
+          out.append("{\"type\":\"parent\",\"rows\":");
+          writeJsonRows(column.childRows(), out);
+          out.append('}');
+          break;
+        default:
+          throw new IllegalStateException("Unknown TableColumn type: " + column.type());
+      }
+    }
+    out.append(']');
+  }
+
+  // Writes a JSON string literal, see RFC 8259 section 7. Runs of characters which need no
+  // escaping are written as a whole.
+  private static void writeJsonString(String text, Appendable out) throws IOException {
+    out.append('"');
+    int runBegin = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        continue;
+      }
+      out.append(text, runBegin, i);
+      runBegin = i + 1;
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          out.append(String.format("\\u%04x", (int) c));
+          break;
+      }
+    }
+    out.append(text, runBegin, text.length());
+    out.append('"');
+  }
+
+  // Writes the same text as toString() of TableData, TableRow (by AutoValue @ToPrettyString) and
+  // TableColumn.
+  //
+  // @ToPrettyString indents a nested value which is not @ToPrettyString (i.e., TableColumn) by
+  // indenting every new line in its toString(), and TableColumn.toString() of a parent column
+  // contains toString() of its child rows. So each level of nesting is tracked as a prefix, which
+  // is written after every new line.
+  private static final class PrettyWriter {
+    private final Appendable out;
+
+    PrettyWriter(Appendable out) {
+      this.out = out;
+    }
+
+    // Writes a new line, followed by the prefix and the indent of the given level.
+    private void newLine(String prefix, int level) throws IOException {
+      out.append('\n').append(prefix);
+      for (int i = 0; i < level; i++) {
+        out.append(INDENT);
+      }
+    }
+
+    void writeData(TableData data, String prefix) throws IOException {
+      out.append("TableData {");
+      newLine(prefix, 1);
+      out.append("rows = ");
+      writeRows(data.rows(), prefix, 1);
+      out.append(',');
+      newLine(prefix, 0);
+      out.append('}');
+    }
+
+    // Writes a list of rows as a property value at the given level.
+    private void writeRows(List<TableRow> rows, String prefix, int level) throws IOException {
+      if (rows.isEmpty()) {
+        out.append("[]");
+        return;
+      }
+      out.append('[');
+      for (TableRow row : rows) {
+        newLine(prefix, level + 1);
+        writeRow(row, prefix, level + 1);
+        out.append(',');
+      }
+      newLine(prefix, level);
+      out.append(']');
+    }
+
+    private void writeRow(TableRow row, String prefix, int level) throws IOException {
+      out.append("TableRow {");
+      newLine(prefix, level + 1);
+      out.append("columns = ");
+      List<TableColumn> columns = row.columns();
+      if (columns.isEmpty()) {
+        out.append("[]");
+      } else {
+        out.append('[');
+        for (TableColumn column : columns) {
+          newLine(prefix, level + 2);
+          writeColumn(column, prefix + INDENT.repeat(level + 2));
+          out.append(',');
+        }
+        newLine(prefix, level + 1);
+        out.append(']');
+      }
+      out.append(',');
+      newLine(prefix, level);
+      out.append('}');
+    }
+
+    // Writes TableColumn.toString(), every new line in it is followed by the given prefix.
+    private void writeColumn(TableColumn column, String prefix) throws IOException {
+      switch (column.type()) {
+        case EMPTY:
+          out.append("EmptyColumn");
+          break;
+        case LEAF:
+          out.append("LeafColumn [");
+          for (int i = 0; i < column.cells().size(); i++) {
+            if (i > 0) {
+              out.append(", ");
+            }
+            writeText(column.cells().get(i), prefix);
+          }
+          out.append(']');
+          break;
+        case PARENT:
+          out.append("ParentColumn [");
+          for (int i = 0; i < column.childRows().size(); i++) {
+            if (i > 0) {
+              out.append(", ");
+            }
+            writeRow(column.childRows().get(i), prefix, 0);
+          }
+          out.append(']');
+          break;
+        default:
+          throw new IllegalStateException("Unknown TableColumn type: " + column.type());
+      }
+    }
+
+    // Writes the text, every new line in it is followed by the given prefix.
+    private void writeText(String text, String prefix) throws IOException {
+      int runBegin = 0;
+      for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', runBegin)) {
+        out.append(text, runBegin, i);
+        newLine(prefix, 0);
+        runBegin = i + 1;
+      }
+      out.append(text, runBegin, text.length());
+    }
+  }
+}
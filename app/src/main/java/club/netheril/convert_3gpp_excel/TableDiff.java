@@ -0,0 +1,437 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import club.netheril.convert_3gpp_excel.TableIndex.ColumnPath;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+// This class is a structural diff between two versions of the same table, e.g., the tables of
+// the same serial number in two spec versions.
+//
+// Each subtree (a row or a column) of both tables is hashed once, Merkle style, i.e., the hash of
+// a row is computed from the hashes of its columns and so on. Then identical rows and columns are
+// skipped by comparing their hashes in O(1), and only changed subtrees are walked.
+//
+// Logical rows are aligned as follows, at the top level and in parent columns alike:
+// 1. A row of the old table which is identical to a row of the new table is unchanged, even if it
+//    is moved, e.g., by an inserted row before it.
+// 2. Other rows with the same first column (e.g., the same band combination) are changed, and
+//    their columns are compared by position.
+// 3. Remaining rows are removed from the old table or added to the new table.
+//
+// Changes are reported per top level logical row, with the leaf cells which are removed or added
+// in each changed leaf column.
+@AutoValue
+abstract class TableDiff {
+  enum Kind {
+    ADDED,
+    REMOVED,
+    CHANGED,
+  }
+
+  // A changed top level logical row.
+  @AutoValue
+  abstract static class RowChange {
+    abstract Kind kind();
+
+    // Index of the row in the old table, -1 if the row is added.
+    abstract int oldRow();
+
+    // Index of the row in the new table, -1 if the row is removed.
+    abstract int newRow();
+
+    // Changed leaf columns in the row, i.e., all non-empty ones of an added or removed row.
+    abstract ImmutableList<ColumnChange> columnChanges();
+
+    static RowChange of(Kind kind, int oldRow, int newRow, List<ColumnChange> columnChanges) {
+      return new AutoValue_TableDiff_RowChange(
+          kind, oldRow, newRow, ImmutableList.copyOf(columnChanges));
+    }
+  }
+
+  // Leaf cells removed from or added to a leaf column.
+  @AutoValue
+  abstract static class ColumnChange {
+    // Path of the column in the old table, null if the column is added.
+    @Nullable
+    abstract ColumnPath oldPath();
+
+    // Path of the column in the new table, null if the column is removed.
+    @Nullable
+    abstract ColumnPath newPath();
+
+    abstract ImmutableList<String> removedCells();
+
+    abstract ImmutableList<String> addedCells();
+
+    static ColumnChange of(
+        @Nullable ColumnPath oldPath,
+        @Nullable ColumnPath newPath,
+        List<String> removedCells,
+        List<String> addedCells) {
+      return new AutoValue_TableDiff_ColumnChange(
+          oldPath, newPath, ImmutableList.copyOf(removedCells), ImmutableList.copyOf(addedCells));
+    }
+  }
+
+  // Changed top level rows: removed and changed rows in the order of the old table, then added
+  // rows in the order of the new table.
+  abstract ImmutableList<RowChange> rowChanges();
+
+  public boolean isEmpty() {
+    return rowChanges().isEmpty();
+  }
+
+  // Diffs two versions of a table, either of them may be null for a table which doesn't exist in
+  // that version.
+  public static TableDiff of(@Nullable TableData oldData, @Nullable TableData newData) {
+    List<HashedRow> oldRows = oldData == null ? ImmutableList.of() : hashRows(oldData.rows());
+    List<HashedRow> newRows = newData == null ? ImmutableList.of() : hashRows(newData.rows());
+    ArrayList<RowChange> rowChanges = new ArrayList<>();
+    alignRows(
+        oldRows,
+        newRows,
+        new RowVisitor() {
+          @Override
+          public void changed(int oldRow, HashedRow oldRowNode, int newRow, HashedRow newRowNode) {
+            ArrayList<ColumnChange> columnChanges = new ArrayList<>();
+            diffColumns(
+                oldRowNode,
+                ImmutableList.of(oldRow),
+                newRowNode,
+                ImmutableList.of(newRow),
+                columnChanges);
+            rowChanges.add(RowChange.of(Kind.CHANGED, oldRow, newRow, columnChanges));
+          }
+
+          @Override
+          public void removed(int oldRow, HashedRow oldRowNode) {
+            ArrayList<ColumnChange> columnChanges = new ArrayList<>();
+            addLeafColumns(oldRowNode, ImmutableList.of(oldRow), false, columnChanges);
+            rowChanges.add(RowChange.of(Kind.REMOVED, oldRow, -1, columnChanges));
+          }
+
+          @Override
+          public void added(int newRow, HashedRow newRowNode) {
+            ArrayList<ColumnChange> columnChanges = new ArrayList<>();
+            addLeafColumns(newRowNode, ImmutableList.of(newRow), true, columnChanges);
+            rowChanges.add(RowChange.of(Kind.ADDED, -1, newRow, columnChanges));
+          }
+        });
+    return new AutoValue_TableDiff(ImmutableList.copyOf(rowChanges));
+  }
+
+  // Diffs all tables of two releases, tables are matched by their serial numbers. The result has
+  // an entry for each table which is changed, added or removed, in the order of the old release
+  // and then the new release.
+  public static ImmutableMap<String, TableDiff> ofReleases(
+      List<ParsedTable> oldTables, List<ParsedTable> newTables) {
+    LinkedHashMap<String, TableData> oldData = bySerialNumber(oldTables);
+    LinkedHashMap<String, TableData> newData = bySerialNumber(newTables);
+    LinkedHashMap<String, TableDiff> diffs = new LinkedHashMap<>();
+    for (Map.Entry<String, TableData> entry : oldData.entrySet()) {
+      TableDiff diff = of(entry.getValue(), newData.get(entry.getKey()));
+      if (!diff.isEmpty()) {
+        diffs.put(entry.getKey(), diff);
+      }
+    }
+    for (Map.Entry<String, TableData> entry : newData.entrySet()) {
+      if (!oldData.containsKey(entry.getKey())) {
+        diffs.put(entry.getKey(), of(null, entry.getValue()));
+      }
+    }
+    return ImmutableMap.copyOf(diffs);
+  }
+
+  private static LinkedHashMap<String, TableData> bySerialNumber(List<ParsedTable> tables) {
+    LinkedHashMap<String, TableData> data = new LinkedHashMap<>();
+    for (ParsedTable table : checkNotNull(tables)) {
+      String serialNumber = table.metadata().tableSerialNumber();
+      if (data.put(serialNumber, table.data()) != null) {
+        throw new IllegalArgumentException(
+            String.format("Duplicate table %s in one release", serialNumber));
+      }
+    }
+    return data;
+  }
+
+  // A row and its hash, with hashes of all its descendants.
+  private static final class HashedRow {
+    final HashCode hash;
+    final ImmutableList<HashedColumn> columns;
+
+    HashedRow(HashCode hash, ImmutableList<HashedColumn> columns) {
+      this.hash = hash;
+      this.columns = columns;
+    }
+
+    // The hash of the first column, which identifies a row (e.g., by its band combination) among
+    // changed rows.
+    HashCode keyHash() {
+      return columns.get(0).hash;
+    }
+  }
+
+  private static final class HashedColumn {
+    final TableColumn column;
+    final HashCode hash;
+    // Null unless it is a parent column.
+    @Nullable final ImmutableList<HashedRow> childRows;
+
+    HashedColumn(TableColumn column, HashCode hash, @Nullable ImmutableList<HashedRow> childRows) {
+      this.column = column;
+      this.hash = hash;
+      this.childRows = childRows;
+    }
+  }
+
+  // Not for security, only to tell whether subtrees are identical.
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final byte ROW_TAG = 'R';
+  private static final byte EMPTY_TAG = 'E';
+  private static final byte LEAF_TAG = 'L';
+  private static final byte PARENT_TAG = 'P';
+
+  private static ImmutableList<HashedRow> hashRows(List<TableRow> rows) {
+    ImmutableList.Builder<HashedRow> hashedRows = ImmutableList.builder();
+    for (TableRow row : rows) {
+      ImmutableList.Builder<HashedColumn> columns = ImmutableList.builder();
+      Hasher hasher = HASH_FUNCTION.newHasher().putByte(ROW_TAG).putInt(row.columns().size());
+      for (TableColumn column : row.columns()) {
+        HashedColumn hashedColumn = hashColumn(column);
+        hasher.putBytes(hashedColumn.hash.asBytes());
+        columns.add(hashedColumn);
+      }
+      hashedRows.add(new HashedRow(hasher.hash(), columns.build()));
+    }
+    return hashedRows.build();
+  }
+
+  private static HashedColumn hashColumn(TableColumn column) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    switch (column.type()) {
+      case EMPTY:
+        return new HashedColumn(column, hasher.putByte(EMPTY_TAG).hash(), null);
+      case LEAF:
+        hasher.putByte(LEAF_TAG).putInt(column.cells().size());
+        for (String cell : column.cells()) {
+          // Cells are length prefixed, so that ["ab", "c"] and ["a", "bc"] differ.
+          hasher.putInt(cell.length()).putUnencodedChars(cell);
+        }
+        return new HashedColumn(column, hasher.hash(), null);
+      case PARENT:
+        ImmutableList<HashedRow> childRows = hashRows(column.childRows());
+        hasher.putByte(PARENT_TAG).putInt(childRows.size());
+        for (HashedRow childRow : childRows) {
+          hasher.putBytes(childRow.hash.asBytes());
+        }
+        return new HashedColumn(column, hasher.hash(), childRows);
+    }
+    throw new IllegalStateException("Unexpected column type " + column.type());
+  }
+
+  private interface RowVisitor {
+    void changed(int oldRow, HashedRow oldRowNode, int newRow, HashedRow newRowNode);
+
+    void removed(int oldRow, HashedRow oldRowNode);
+
+    void added(int newRow, HashedRow newRowNode);
+  }
+
+  // Aligns two lists of rows (see the class comment), and visits rows which are not unchanged.
+  private static void alignRows(
+      List<HashedRow> oldRows, List<HashedRow> newRows, RowVisitor visitor) {
+    // 1. Identical rows, matched in order.
+    boolean[] newMatched = new boolean[newRows.size()];
+    HashMap<HashCode, ArrayDeque<Integer>> newRowsByHash = new HashMap<>();
+    for (int i = 0; i < newRows.size(); i++) {
+      newRowsByHash.computeIfAbsent(newRows.get(i).hash, hash -> new ArrayDeque<>()).add(i);
+    }
+    boolean[] oldMatched = new boolean[oldRows.size()];
+    for (int i = 0; i < oldRows.size(); i++) {
+      ArrayDeque<Integer> candidates = newRowsByHash.get(oldRows.get(i).hash);
+      if (candidates != null && !candidates.isEmpty()) {
+        oldMatched[i] = true;
+        newMatched[candidates.poll()] = true;
+      }
+    }
+    // 2. Changed rows, matched by their first columns in order.
+    HashMap<HashCode, ArrayDeque<Integer>> newRowsByKey = new HashMap<>();
+    for (int i = 0; i < newRows.size(); i++) {
+      if (!newMatched[i]) {
+        newRowsByKey.computeIfAbsent(newRows.get(i).keyHash(), hash -> new ArrayDeque<>()).add(i);
+      }
+    }
+    for (int i = 0; i < oldRows.size(); i++) {
+      if (oldMatched[i]) {
+        continue;
+      }
+      ArrayDeque<Integer> candidates = newRowsByKey.get(oldRows.get(i).keyHash());
+      if (candidates != null && !candidates.isEmpty()) {
+        int newRow = candidates.poll();
+        newMatched[newRow] = true;
+        visitor.changed(i, oldRows.get(i), newRow, newRows.get(newRow));
+      } else {
+        // 3. Removed rows.
+        visitor.removed(i, oldRows.get(i));
+      }
+    }
+    // 3. Added rows.
+    for (int i = 0; i < newRows.size(); i++) {
+      if (!newMatched[i]) {
+        visitor.added(i, newRows.get(i));
+      }
+    }
+  }
+
+  // Compares columns of two changed rows by position.
+  private static void diffColumns(
+      HashedRow oldRow,
+      ImmutableList<Integer> oldRowPath,
+      HashedRow newRow,
+      ImmutableList<Integer> newRowPath,
+      List<ColumnChange> changes) {
+    int columnCount = Math.max(oldRow.columns.size(), newRow.columns.size());
+    for (int i = 0; i < columnCount; i++) {
+      HashedColumn oldColumn = i < oldRow.columns.size() ? oldRow.columns.get(i) : null;
+      HashedColumn newColumn = i < newRow.columns.size() ? newRow.columns.get(i) : null;
+      if (oldColumn != null && newColumn != null && oldColumn.hash.equals(newColumn.hash)) {
+        // Identical subtrees.
+        continue;
+      }
+      ImmutableList<Integer> oldPath = oldColumn == null ? null : append(oldRowPath, i);
+      ImmutableList<Integer> newPath = newColumn == null ? null : append(newRowPath, i);
+      if (oldColumn != null && newColumn != null && isLeaf(oldColumn) && isLeaf(newColumn)) {
+        changes.add(
+            diffCells(
+                ColumnPath.of(oldPath),
+                ColumnPath.of(newPath),
+                cellsOf(oldColumn),
+                cellsOf(newColumn)));
+      } else if (oldColumn != null
+          && newColumn != null
+          && oldColumn.childRows != null
+          && newColumn.childRows != null) {
+        List<HashedRow> oldChildRows = oldColumn.childRows;
+        List<HashedRow> newChildRows = newColumn.childRows;
+        alignRows(
+            oldChildRows,
+            newChildRows,
+            new RowVisitor() {
+              @Override
+              public void changed(
+                  int oldChildRow, HashedRow oldChild, int newChildRow, HashedRow newChild) {
+                diffColumns(
+                    oldChild,
+                    append(oldPath, oldChildRow),
+                    newChild,
+                    append(newPath, newChildRow),
+                    changes);
+              }
+
+              @Override
+              public void removed(int oldChildRow, HashedRow oldChild) {
+                addLeafColumns(oldChild, append(oldPath, oldChildRow), false, changes);
+              }
+
+              @Override
+              public void added(int newChildRow, HashedRow newChild) {
+                addLeafColumns(newChild, append(newPath, newChildRow), true, changes);
+              }
+            });
+      } else {
+        // Added, removed, or changed between a leaf column and a parent column.
+        if (oldColumn != null) {
+          addLeafColumns(oldColumn, oldPath, false, changes);
+        }
+        if (newColumn != null) {
+          addLeafColumns(newColumn, newPath, true, changes);
+        }
+      }
+    }
+  }
+
+  private static boolean isLeaf(HashedColumn column) {
+    return column.childRows == null;
+  }
+
+  private static ImmutableList<String> cellsOf(HashedColumn column) {
+    return column.column.type() == TableColumn.Type.LEAF
+        ? column.column.cells()
+        : ImmutableList.of();
+  }
+
+  // Cells in the old column but not in the new one are removed, and vice versa. Repeated cells
+  // are counted.
+  private static ColumnChange diffCells(
+      ColumnPath oldPath, ColumnPath newPath, List<String> oldCells, List<String> newCells) {
+    Multiset<String> remaining = HashMultiset.create(newCells);
+    ImmutableList.Builder<String> removedCells = ImmutableList.builder();
+    for (String cell : oldCells) {
+      if (!remaining.remove(cell)) {
+        removedCells.add(cell);
+      }
+    }
+    Multiset<String> oldRemaining = HashMultiset.create(oldCells);
+    ImmutableList.Builder<String> addedCells = ImmutableList.builder();
+    for (String cell : newCells) {
+      if (!oldRemaining.remove(cell)) {
+        addedCells.add(cell);
+      }
+    }
+    return ColumnChange.of(oldPath, newPath, removedCells.build(), addedCells.build());
+  }
+
+  // Reports all non-empty leaf columns in the given row as added or removed.
+  private static void addLeafColumns(
+      HashedRow row, ImmutableList<Integer> rowPath, boolean added, List<ColumnChange> changes) {
+    for (int i = 0; i < row.columns.size(); i++) {
+      addLeafColumns(row.columns.get(i), append(rowPath, i), added, changes);
+    }
+  }
+
+  private static void addLeafColumns(
+      HashedColumn column,
+      ImmutableList<Integer> columnPath,
+      boolean added,
+      List<ColumnChange> changes) {
+    if (column.childRows != null) {
+      for (int i = 0; i < column.childRows.size(); i++) {
+        addLeafColumns(column.childRows.get(i), append(columnPath, i), added, changes);
+      }
+      return;
+    }
+    ImmutableList<String> cells = cellsOf(column);
+    if (cells.isEmpty()) {
+      return;
+    }
+    ColumnPath path = ColumnPath.of(columnPath);
+    changes.add(
+        added
+            ? ColumnChange.of(null, path, ImmutableList.of(), cells)
+            : ColumnChange.of(path, null, cells, ImmutableList.of()));
+  }
+
+  private static ImmutableList<Integer> append(List<Integer> path, int index) {
+    return ImmutableList.<Integer>builderWithExpectedSize(path.size() + 1)
+        .addAll(path)
+        .add(index)
+        .build();
+  }
+}
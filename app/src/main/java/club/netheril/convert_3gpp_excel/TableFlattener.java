@@ -0,0 +1,260 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// This class flattens a table into denormalized records, i.e., every combination of leaf cells
+// across nested rows becomes one record, e.g., a band combination x bandwidth class x bandwidth.
+//
+// The records of a row are the cartesian product of the values of its columns, in order, where:
+// - A leaf column takes each of its cells.
+// - An empty column takes one empty string.
+// - A parent column takes each record of each of its child rows, so a record may have a different
+//   number of values than another record through a different child row.
+//
+// Records are produced lazily, the last column varying fastest, so a table which expands to
+// millions of records is walked with memory proportional to its nesting depth and width, instead
+// of the number of records. See TableDataWriter.Format.CSV and FLAT_NDJSON for sinks.
+final class TableFlattener {
+
+  // Iterates over all records of a table. The values of the current record are kept in one
+  // buffer, which is reused by the next record, so that iterating takes no allocation per record
+  // (except at nested rows).
+  static final class RecordCursor {
+    private final List<TableRow> rows;
+    private int row = -1;
+    private RowCursor rowCursor = null;
+    private final ArrayList<String> values = new ArrayList<>();
+    private final List<String> readOnlyValues = Collections.unmodifiableList(values);
+
+    RecordCursor(TableData data) {
+      this.rows = checkNotNull(data).rows();
+    }
+
+    // Moves to the next record, returns false if there are no more records.
+    boolean next() {
+      if (rowCursor == null || !rowCursor.advance()) {
+        row++;
+        if (row >= rows.size()) {
+          row = rows.size();
+          rowCursor = null;
+          return false;
+        }
+        rowCursor = new RowCursor(rows.get(row));
+      }
+      values.clear();
+      rowCursor.appendTo(values);
+      return true;
+    }
+
+    // Index of the top level logical row of the current record.
+    int row() {
+      checkCurrent();
+      return row;
+    }
+
+    // Values of the current record, which are only valid until the next call of next().
+    List<String> values() {
+      checkCurrent();
+      return readOnlyValues;
+    }
+
+    private void checkCurrent() {
+      if (rowCursor == null) {
+        throw new NoSuchElementException("No current record");
+      }
+    }
+  }
+
+  // All records of the table, each of them is an immutable copy.
+  public static Iterator<ImmutableList<String>> iterator(TableData data) {
+    RecordCursor cursor = new RecordCursor(data);
+    return new Iterator<ImmutableList<String>>() {
+      // Whether the cursor is on a record which is not returned yet, null if it is unknown.
+      private Boolean hasCurrent = null;
+
+      @Override
+      public boolean hasNext() {
+        if (hasCurrent == null) {
+          hasCurrent = cursor.next();
+        }
+        return hasCurrent;
+      }
+
+      @Override
+      public ImmutableList<String> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        hasCurrent = null;
+        return ImmutableList.copyOf(cursor.values());
+      }
+    };
+  }
+
+  // Same as iterator(data), but as a sequential stream.
+  public static Stream<ImmutableList<String>> stream(TableData data) {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            iterator(data), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+        /* parallel= */ false);
+  }
+
+  // Number of records of the table, without producing them. Throws an ArithmeticException if it
+  // overflows a long.
+  public static long recordCount(TableData data) {
+    return recordCount(checkNotNull(data).rows());
+  }
+
+  private static long recordCount(List<TableRow> rows) {
+    long count = 0;
+    for (TableRow row : rows) {
+      long rowCount = 1;
+      for (TableColumn column : row.columns()) {
+        rowCount = Math.multiplyExact(rowCount, recordCount(column));
+      }
+      count = Math.addExact(count, rowCount);
+    }
+    return count;
+  }
+
+  private static long recordCount(TableColumn column) {
+    switch (column.type()) {
+      case EMPTY:
+        return 1;
+      case LEAF:
+        return column.cells().size();
+      case PARENT:
+        return recordCount(column.childRows());
+    }
+    throw new IllegalStateException("Unknown TableColumn type: " + column.type());
+  }
+
+  // Position of a column in its values, starting at its first value.
+  private abstract static class ColumnCursor {
+    // Moves to the next value, returns false if there are no more values.
+    abstract boolean advance();
+
+    abstract void appendTo(List<String> values);
+
+    static ColumnCursor of(TableColumn column) {
+      switch (column.type()) {
+        case EMPTY:
+          return EmptyCursor.INSTANCE;
+        case LEAF:
+          return new LeafCursor(column.cells());
+        case PARENT:
+          return new ParentCursor(column.childRows());
+      }
+      throw new IllegalStateException("Unknown TableColumn type: " + column.type());
+    }
+  }
+
+  private static final class EmptyCursor extends ColumnCursor {
+    static final EmptyCursor INSTANCE = new EmptyCursor();
+
+    @Override
+    boolean advance() {
+      return false;
+    }
+
+    @Override
+    void appendTo(List<String> values) {
+      values.add("");
+    }
+  }
+
+  private static final class LeafCursor extends ColumnCursor {
+    private final List<String> cells;
+    private int cell = 0;
+
+    LeafCursor(List<String> cells) {
+      this.cells = cells;
+    }
+
+    @Override
+    boolean advance() {
+      if (cell + 1 >= cells.size()) {
+        return false;
+      }
+      cell++;
+      return true;
+    }
+
+    @Override
+    void appendTo(List<String> values) {
+      values.add(cells.get(cell));
+    }
+  }
+
+  // Only the cursor of the current child row is kept, so memory is bounded by the nesting depth.
+  private static final class ParentCursor extends ColumnCursor {
+    private final List<TableRow> childRows;
+    private int childRow = 0;
+    private RowCursor rowCursor;
+
+    ParentCursor(List<TableRow> childRows) {
+      this.childRows = childRows;
+      this.rowCursor = new RowCursor(childRows.get(0));
+    }
+
+    @Override
+    boolean advance() {
+      if (rowCursor.advance()) {
+        return true;
+      }
+      if (childRow + 1 >= childRows.size()) {
+        return false;
+      }
+      childRow++;
+      rowCursor = new RowCursor(childRows.get(childRow));
+      return true;
+    }
+
+    @Override
+    void appendTo(List<String> values) {
+      rowCursor.appendTo(values);
+    }
+  }
+
+  // An odometer over the columns of a row, the last column varying fastest.
+  private static final class RowCursor {
+    private final List<TableColumn> columns;
+    private final ColumnCursor[] cursors;
+
+    RowCursor(TableRow row) {
+      this.columns = row.columns();
+      this.cursors = new ColumnCursor[columns.size()];
+      for (int i = 0; i < cursors.length; i++) {
+        cursors[i] = ColumnCursor.of(columns.get(i));
+      }
+    }
+
+    boolean advance() {
+      for (int i = cursors.length - 1; i >= 0; i--) {
+        if (cursors[i].advance()) {
+          return true;
+        }
+        // Wraps around to the first value, and carries to the previous column.
+        cursors[i] = ColumnCursor.of(columns.get(i));
+      }
+      return false;
+    }
+
+    void appendTo(List<String> values) {
+      for (ColumnCursor cursor : cursors) {
+        cursor.appendTo(values);
+      }
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// This class is an inverted index of leaf cell strings of a parsed table, so that looking up a
+// band or band combination (e.g., "DC_7A_n7A", or all ones starting with "DC_7A") doesn't walk
+// the whole TableData tree. It is built once after parsing, see of(), and it can be stored next to
+// the output, see toBytes() and of(ByteBuffer).
+//
+// A hit is the path of a leaf column (see ColumnPath) which has a cell equal to (or starting with)
+// the looked up string.
+//
+// Distinct cell strings are kept in a sorted array, and each of them has a sorted list of ids of
+// column paths. So an exact lookup is a binary search, and a prefix lookup is two binary searches
+// for the range of strings starting with the prefix (which is what a trie of the strings would
+// give, but in flat arrays which are serialized as is). Lookups only allocate their results.
+//
+// A table index is immutable and thread safe.
+final class TableIndex {
+  static final int MAGIC = 0x33475049; // "3GPI"
+  static final int VERSION = 1;
+
+  // Distinct leaf cell strings, sorted.
+  private final String[] keys;
+  // Path ids of key i are postings [postingEnds[i - 1], postingEnds[i]), sorted.
+  private final int[] postingEnds;
+  private final int[] postings;
+  // Indexes of path i are pathIndexes [pathEnds[i - 1], pathEnds[i]), see ColumnPath.
+  private final int[] pathEnds;
+  private final int[] pathIndexes;
+
+  private TableIndex(
+      String[] keys, int[] postingEnds, int[] postings, int[] pathEnds, int[] pathIndexes) {
+    this.keys = keys;
+    this.postingEnds = postingEnds;
+    this.postings = postings;
+    this.pathEnds = pathEnds;
+    this.pathIndexes = pathIndexes;
+  }
+
+  // The path of a column from the top level of the table, i.e., the index of its top level row,
+  // the index of the column in that row, then (if the column is nested in a parent column) the
+  // index of the child row and the index of the column in it, and so on.
+  @AutoValue
+  abstract static class ColumnPath {
+    // Row and column indexes, alternately, so there are always an even number of them.
+    abstract ImmutableList<Integer> indexes();
+
+    static ColumnPath of(List<Integer> indexes) {
+      checkArgument(
+          indexes != null && !indexes.isEmpty() && indexes.size() % 2 == 0,
+          "Invalid column path %s",
+          indexes);
+      return new AutoValue_TableIndex_ColumnPath(ImmutableList.copyOf(indexes));
+    }
+
+    static ColumnPath of(Integer... indexes) {
+      return of(Arrays.asList(indexes));
+    }
+
+    // Index of the top level logical row.
+    int row() {
+      return indexes().get(0);
+    }
+
+    // Index of the column in the top level logical row.
+    int column() {
+      return indexes().get(1);
+    }
+
+    // The column at this path in the given table, which is the one the index is built from.
+    TableColumn resolve(TableData data) {
+      List<TableRow> rows = data.rows();
+      TableColumn column = null;
+      for (int i = 0; i < indexes().size(); i += 2) {
+        checkArgument(rows != null, "Invalid column path %s, it is not in the table", this);
+        column = rows.get(indexes().get(i)).columns().get(indexes().get(i + 1));
+        rows = column.childRows();
+      }
+      return column;
+    }
+  }
+
+  // Builds the index of all leaf cell strings of the given table.
+  public static TableIndex of(TableData data) {
+    checkNotNull(data);
+    Builder builder = new Builder();
+    builder.addRows(data.rows());
+    return builder.build();
+  }
+
+  private static final class Builder {
+    private final TreeMap<String, KeyPostings> postings = new TreeMap<>();
+    private final ImmutableIntArray.Builder pathEnds = ImmutableIntArray.builder();
+    private final ImmutableIntArray.Builder pathIndexes = ImmutableIntArray.builder();
+    private int pathCount = 0;
+    private int pathIndexCount = 0;
+    // Indexes of the path being visited.
+    private final ArrayList<Integer> path = new ArrayList<>();
+
+    void addRows(List<TableRow> rows) {
+      for (int row = 0; row < rows.size(); row++) {
+        path.add(row);
+        List<TableColumn> columns = rows.get(row).columns();
+        for (int column = 0; column < columns.size(); column++) {
+          path.add(column);
+          addColumn(columns.get(column));
+          path.remove(path.size() - 1);
+        }
+        path.remove(path.size() - 1);
+      }
+    }
+
+    private void addColumn(TableColumn column) {
+      switch (column.type()) {
+        case PARENT:
+          addRows(column.childRows());
+          break;
+        case LEAF:
+          int pathId = pathCount++;
+          for (int index : path) {
+            pathIndexes.add(index);
+          }
+          pathIndexCount += path.size();
+          pathEnds.add(pathIndexCount);
+          for (String cell : column.cells()) {
+            KeyPostings keyPostings = postings.computeIfAbsent(cell, key -> new KeyPostings());
+            // A cell string repeated in the same column is indexed once.
+            if (keyPostings.lastPathId != pathId) {
+              keyPostings.pathIds.add(pathId);
+              keyPostings.lastPathId = pathId;
+            }
+          }
+          break;
+        case EMPTY:
+          break;
+      }
+    }
+
+    private static final class KeyPostings {
+      final ImmutableIntArray.Builder pathIds = ImmutableIntArray.builder();
+      int lastPathId = -1;
+    }
+
+    TableIndex build() {
+      String[] keys = new String[postings.size()];
+      int[] postingEnds = new int[postings.size()];
+      ImmutableIntArray.Builder allPostings = ImmutableIntArray.builder();
+      int key = 0;
+      int postingCount = 0;
+      for (Map.Entry<String, KeyPostings> entry : postings.entrySet()) {
+        ImmutableIntArray pathIds = entry.getValue().pathIds.build();
+        keys[key] = entry.getKey();
+        allPostings.addAll(pathIds);
+        postingCount += pathIds.length();
+        postingEnds[key] = postingCount;
+        key++;
+      }
+      return new TableIndex(
+          keys,
+          postingEnds,
+          allPostings.build().toArray(),
+          pathEnds.build().toArray(),
+          pathIndexes.build().toArray());
+    }
+  }
+
+  // Number of distinct leaf cell strings.
+  public int size() {
+    return keys.length;
+  }
+
+  // Paths of leaf columns which have a cell equal to the given string, in the order of the table.
+  public ImmutableList<ColumnPath> find(String cell) {
+    checkNotNull(cell);
+    int key = Arrays.binarySearch(keys, cell);
+    if (key < 0) {
+      return ImmutableList.of();
+    }
+    return pathsOf(key, key + 1);
+  }
+
+  // Paths of leaf columns which have a cell starting with the given prefix, in the order of the
+  // table.
+  public ImmutableList<ColumnPath> findPrefix(String prefix) {
+    checkNotNull(prefix);
+    int begin = lowerBound(prefix);
+    // Keys starting with the prefix are consecutive from begin, and keys after them don't.
+    int low = begin;
+    int high = keys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle].startsWith(prefix)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return pathsOf(begin, low);
+  }
+
+  // Top level logical rows which have a leaf cell starting with the given prefix in the given top
+  // level column, e.g., all rows whose first column starts with "DC_7A".
+  public ImmutableIntArray findRowsByPrefix(String prefix, int column) {
+    ImmutableIntArray.Builder rows = ImmutableIntArray.builder();
+    int lastRow = -1;
+    for (ColumnPath path : findPrefix(prefix)) {
+      // Paths are in the order of the table, so rows are sorted.
+      if (path.column() == column && path.row() != lastRow) {
+        rows.add(path.row());
+        lastRow = path.row();
+      }
+    }
+    return rows.build();
+  }
+
+  // Index of the first key which is not less than the given string.
+  private int lowerBound(String text) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle].compareTo(text) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  // Distinct paths of keys [beginKey, endKey), sorted by path ids.
+  private ImmutableList<ColumnPath> pathsOf(int beginKey, int endKey) {
+    int begin = beginKey == 0 ? 0 : postingEnds[beginKey - 1];
+    int end = endKey == 0 ? 0 : postingEnds[endKey - 1];
+    int[] pathIds = Arrays.copyOfRange(postings, begin, end);
+    if (endKey - beginKey > 1) {
+      // Postings of different keys are merged.
+      Arrays.sort(pathIds);
+    }
+    ImmutableList.Builder<ColumnPath> paths = ImmutableList.builder();
+    for (int i = 0; i < pathIds.length; i++) {
+      if (i == 0 || pathIds[i] != pathIds[i - 1]) {
+        paths.add(path(pathIds[i]));
+      }
+    }
+    return paths.build();
+  }
+
+  private ColumnPath path(int pathId) {
+    int begin = pathId == 0 ? 0 : pathEnds[pathId - 1];
+    Integer[] indexes = new Integer[pathEnds[pathId] - begin];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = pathIndexes[begin + i];
+    }
+    return ColumnPath.of(indexes);
+  }
+
+  // Serializes the index. All integers are 32-bit big-endian, and the layout is:
+  //
+  //   Header:  magic, version, key count, posting count, path count, path index count
+  //   Arrays:  ends of the UTF-8 keys in the key data, posting ends, postings, path ends, path
+  //            indexes, see the fields of the same names
+  //   Keys:    the UTF-8 key data
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(keys.length);
+      out.writeInt(postings.length);
+      out.writeInt(pathEnds.length);
+      out.writeInt(pathIndexes.length);
+      byte[][] keyBytes = new byte[keys.length][];
+      int keyEnd = 0;
+      for (int i = 0; i < keys.length; i++) {
+        keyBytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        keyEnd += keyBytes[i].length;
+        out.writeInt(keyEnd);
+      }
+      writeInts(postingEnds, out);
+      writeInts(postings, out);
+      writeInts(pathEnds, out);
+      writeInts(pathIndexes, out);
+      for (byte[] key : keyBytes) {
+        out.write(key);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected error of writing to a byte array", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeInts(int[] values, DataOutputStream out) throws IOException {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  public void write(Path file) throws IOException {
+    Files.write(file, toBytes());
+  }
+
+  // Reads an index serialized by toBytes(), starting at the position of the buffer. The bytes are
+  // validated, so that a truncated or corrupted index throws an IllegalArgumentException here
+  // instead of allocating from a bogus count, or failing (or returning wrong paths) in lookups.
+  public static TableIndex of(ByteBuffer buffer) {
+    checkNotNull(buffer);
+    ByteBuffer in = buffer.slice();
+    try {
+      if (in.getInt() != MAGIC) {
+        throw new IllegalArgumentException("Invalid table index, the magic number doesn't match");
+      }
+      int version = in.getInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(
+            String.format("Unsupported table index version %d, expected %d", version, VERSION));
+      }
+      int keyCount = in.getInt();
+      int postingCount = in.getInt();
+      int pathCount = in.getInt();
+      int pathIndexCount = in.getInt();
+      int[] keyEnds = readInts(in, keyCount, "key ends");
+      int[] postingEnds = readInts(in, keyCount, "posting ends");
+      int[] postings = readInts(in, postingCount, "postings");
+      int[] pathEnds = readInts(in, pathCount, "path ends");
+      int[] pathIndexes = readInts(in, pathIndexCount, "path indexes");
+      int keyDataOffset = in.position();
+      checkEnds(keyEnds, in.remaining(), /* exact= */ false, "key ends");
+      checkEnds(postingEnds, postingCount, /* exact= */ true, "posting ends");
+      checkEnds(pathEnds, pathIndexCount, /* exact= */ true, "path ends");
+      for (int i = 0; i < keyCount; i++) {
+        int begin = i == 0 ? 0 : postingEnds[i - 1];
+        for (int j = begin; j < postingEnds[i]; j++) {
+          checkArgument(
+              postings[j] >= 0 && postings[j] < pathCount,
+              "Invalid table index, posting %s is not a path id",
+              postings[j]);
+          checkArgument(
+              j == begin || postings[j - 1] < postings[j],
+              "Invalid table index, postings of key %s are not sorted",
+              i);
+        }
+      }
+      for (int i = 0; i < pathCount; i++) {
+        int length = pathEnds[i] - (i == 0 ? 0 : pathEnds[i - 1]);
+        checkArgument(
+            length > 0 && length % 2 == 0,
+            "Invalid table index, path %s has %s indexes",
+            i,
+            length);
+      }
+      for (int pathIndex : pathIndexes) {
+        checkArgument(pathIndex >= 0, "Invalid table index, negative path index %s", pathIndex);
+      }
+      String[] keys = new String[keyCount];
+      for (int i = 0; i < keyCount; i++) {
+        int begin = i == 0 ? 0 : keyEnds[i - 1];
+        byte[] key = new byte[keyEnds[i] - begin];
+        in.get(keyDataOffset + begin, key);
+        keys[i] = new String(key, StandardCharsets.UTF_8);
+        // Lookups are binary searches of the keys.
+        checkArgument(
+            i == 0 || keys[i - 1].compareTo(keys[i]) < 0,
+            "Invalid table index, keys are not sorted at %s",
+            i);
+      }
+      return new TableIndex(keys, postingEnds, postings, pathEnds, pathIndexes);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Invalid table index, it is truncated", e);
+    }
+  }
+
+  // Reads count ints, the count is checked against the remaining bytes before the array is
+  // allocated.
+  private static int[] readInts(ByteBuffer in, int count, String name) {
+    checkArgument(
+        count >= 0 && count <= in.remaining() / Integer.BYTES,
+        "Invalid table index, %s %s exceed the remaining %s bytes",
+        count,
+        name,
+        in.remaining());
+    int[] values = new int[count];
+    in.asIntBuffer().get(values);
+    in.position(in.position() + count * Integer.BYTES);
+    return values;
+  }
+
+  // Checks that the ends of consecutive ranges are non-decreasing from 0, and the last one is the
+  // given total (or if not exact, at most the total).
+  private static void checkEnds(int[] ends, int total, boolean exact, String name) {
+    int previous = 0;
+    for (int end : ends) {
+      checkArgument(
+          end >= previous && end <= total,
+          "Invalid table index, %s are out of order or bounds",
+          name);
+      previous = end;
+    }
+    checkArgument(
+        !exact || previous == total,
+        "Invalid table index, %s end at %s, expected %s",
+        name,
+        previous,
+        total);
+  }
+
+  public static TableIndex read(Path file) throws IOException {
+    return of(ByteBuffer.wrap(Files.readAllBytes(file)));
+  }
+}
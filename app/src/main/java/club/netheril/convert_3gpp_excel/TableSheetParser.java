@@ -2,38 +2,384 @@ package club.netheril.convert_3gpp_excel;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import org.apache.commons.compress.utils.Lists;
+import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 final class TableSheetParser {
-  private static final String SHEET_NAME = "Table";
+  static final String SHEET_NAME = "Table";
+
+  // How structural invariants of the table are validated.
+  enum Validation {
+    // Every rectagle is fully validated at every level of the recursion, i.e., borders which are
+    // already implied by how the rectagle is split from its parent are checked again. It is meant
+    // for tests, as a cross-check of TRUSTED.
+    PARANOID,
+    // Each invariant is checked only once, where it is not implied by the splitting of the parent
+    // rectagle. It accepts and rejects the same tables as PARANOID, with the same errors.
+    TRUSTED,
+  }
+
+  // In parallel mode, logical rows are parsed by one task as long as they have at most this many
+  // cells in total. Smaller tasks cost more to schedule than to parse.
+  static final int PARALLEL_TASK_CELLS = 1 << 12;
 
   public static TableData parse(XSSFWorkbook workbook, TableMetadata metadata) {
-    XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
-    checkArgument(sheet != null, "Unable to find Table sheet.");
+    return parse(workbook, metadata, Validation.TRUSTED);
+  }
+
+  public static TableData parse(
+      XSSFWorkbook workbook, TableMetadata metadata, Validation validation) {
+    checkNotNull(validation);
+    XSSFSheet sheet = getTableSheet(workbook, metadata);
+
+    // All border checks below are answered by a border grid which is built by scanning the table
+    // data rect only once.
+    CellTextCache texts = CellTextCache.of(workbook.getSharedStringSource());
+    ParserStats.Timer bordersTimer = ParserStats.start(ParserStats.Phase.BORDERS, null);
+    BorderGrid borders = BorderGrid.of(sheet, metadata.tableDataRect());
+    bordersTimer.stop();
+    ParserStats.Timer tableTimer = ParserStats.start(ParserStats.Phase.TABLE, null);
+    TableData table =
+        parse(
+            borders,
+            (row, column) -> SheetParserUtils.safeGetCellString(sheet, row, column, texts),
+            validation,
+            false);
+    tableTimer.stop();
+    return table;
+  }
+
+  // Same as parse(workbook, metadata), but logical rows are parsed in parallel by the given pool.
+  // POI objects are not thread safe, so the table data rect is copied to a SheetSnapshot first.
+  public static TableData parseParallel(
+      XSSFWorkbook workbook, TableMetadata metadata, ForkJoinPool pool) {
+    XSSFSheet sheet = getTableSheet(workbook, metadata);
+    CellTextCache texts = CellTextCache.of(workbook.getSharedStringSource());
+    ParserStats.Timer snapshotTimer = ParserStats.start(ParserStats.Phase.SNAPSHOT, null);
+    SheetSnapshot snapshot = SheetSnapshot.of(sheet, metadata.tableDataRect(), texts);
+    snapshotTimer.stop();
+    return parseParallel(snapshot, pool);
+  }
+
+  // Parses all given tables in the loaded workbook, e.g., the ones found by
+  // MetadataSheetParser.parseAll(). The tables are parsed in parallel by the given pool, and
+  // results are in the same order as the metadata.
+  //
+  // POI objects are not thread safe, so the table data rect of each table is copied to a
+  // SheetSnapshot first on the calling thread, and all snapshots share the same style and string
+  // caches of the workbook.
+  public static ImmutableList<ParsedTable> parseAll(
+      XSSFWorkbook workbook, List<TableMetadata> metadata, ForkJoinPool pool) {
+    checkNotNull(metadata);
+    checkNotNull(pool);
+    StyleBorderCache styles = StyleBorderCache.of(workbook.getStylesSource());
+    CellTextCache texts = CellTextCache.of(workbook.getSharedStringSource());
+    ArrayList<ForkJoinTask<TableData>> tasks = Lists.newArrayList();
+    for (TableMetadata tableMetadata : metadata) {
+      XSSFSheet sheet = getTableSheet(workbook, tableMetadata);
+      ParserStats.Timer snapshotTimer = ParserStats.start(ParserStats.Phase.SNAPSHOT, null);
+      SheetSnapshot snapshot =
+          SheetSnapshot.of(sheet, tableMetadata.tableDataRect(), styles, texts);
+      snapshotTimer.stop();
+      tasks.add(
+          ForkJoinTask.adapt(
+              () -> parse(snapshot.borders(), snapshot, Validation.TRUSTED, true)));
+    }
+    // The tasks are invoked in the pool, so that logical rows of a large table are also forked
+    // to the same pool.
+    ParserStats.Timer tableTimer = ParserStats.start(ParserStats.Phase.TABLE, null);
+    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    tableTimer.stop();
+
+    ImmutableList.Builder<ParsedTable> tables = ImmutableList.builder();
+    for (int i = 0; i < metadata.size(); i++) {
+      tables.add(ParsedTable.of(metadata.get(i), tasks.get(i).join()));
+    }
+    return tables.build();
+  }
+
+  private static XSSFSheet getTableSheet(XSSFWorkbook workbook, TableMetadata metadata) {
+    XSSFSheet sheet = workbook.getSheet(metadata.tableSheetName());
+    checkArgument(sheet != null, "Unable to find %s sheet.", metadata.tableSheetName());
     ExcelRect tableDataRect = metadata.tableDataRect();
     for (int row = tableDataRect.beginRow(); row < tableDataRect.endRow(); row++) {
+      XSSFRow sheetRow = sheet.getRow(row);
       for (int column = tableDataRect.beginColumn(); column < tableDataRect.endColumn(); column++) {
-        checkArgument(
-            sheet.getRow(row) != null && sheet.getRow(row).getCell(column) != null,
-            String.format(
-                "Invalid table sheet, cell %s in table data rect %s doesn't exist",
-                ExcelCellIndex.of(row, column), tableDataRect));
+        if (sheetRow == null || sheetRow.getCell(column) == null) {
+          throw missingCellError(row, column, tableDataRect);
+        }
+      }
+    }
+    return sheet;
+  }
+
+  // Parses the table data from a snapshot of the table data rect, e.g., the one read by
+  // StreamingWorkbookParser without loading the whole workbook.
+  public static TableData parse(SheetSnapshot snapshot) {
+    return parse(snapshot, Validation.TRUSTED);
+  }
+
+  public static TableData parse(SheetSnapshot snapshot, Validation validation) {
+    checkNotNull(validation);
+    checkSnapshot(snapshot);
+    ParserStats.Timer tableTimer = ParserStats.start(ParserStats.Phase.TABLE, null);
+    TableData table = parse(snapshot.borders(), snapshot, validation, false);
+    tableTimer.stop();
+    return table;
+  }
+
+  // Same as parse(snapshot), but logical rows are parsed in parallel by the given pool. The
+  // order of rows is preserved, and the result is the same as the one of parse(snapshot).
+  public static TableData parseParallel(SheetSnapshot snapshot, ForkJoinPool pool) {
+    checkNotNull(pool);
+    checkSnapshot(snapshot);
+    // The whole parse runs in the pool, so that nested tasks are forked to the same pool.
+    ParserStats.Timer tableTimer = ParserStats.start(ParserStats.Phase.TABLE, null);
+    TableData table =
+        pool.invoke(
+            ForkJoinTask.adapt(
+                () -> parse(snapshot.borders(), snapshot, Validation.TRUSTED, true)));
+    tableTimer.stop();
+    return table;
+  }
+
+  // Parses only the structure of the table data, i.e., logical rows and columns, cell strings of
+  // a leaf column are read from the sheet when they are accessed for the first time. The workbook
+  // must stay open while the returned table is used, and the table is not thread safe.
+  public static LazyTable parseLazy(XSSFWorkbook workbook, TableMetadata metadata) {
+    XSSFSheet sheet = getTableSheet(workbook, metadata);
+    CellTextCache texts = CellTextCache.of(workbook.getSharedStringSource());
+    return LazyTable.of(
+        parseTree(
+            BorderGrid.of(sheet, metadata.tableDataRect()),
+            new LazyTableBuilder(
+                (row, column) -> SheetParserUtils.safeGetCellString(sheet, row, column, texts)),
+            Validation.TRUSTED,
+            false));
+  }
+
+  // Same as parseLazy(workbook, metadata), but cell strings are read from the retained snapshot,
+  // so the returned table is thread safe.
+  public static LazyTable parseLazy(SheetSnapshot snapshot) {
+    checkSnapshot(snapshot);
+    return LazyTable.of(
+        parseTree(
+            snapshot.borders(), new LazyTableBuilder(snapshot), Validation.TRUSTED, false));
+  }
+
+  private static void checkSnapshot(SheetSnapshot snapshot) {
+    ExcelRect tableDataRect = snapshot.rect();
+    for (int row = tableDataRect.beginRow(); row < tableDataRect.endRow(); row++) {
+      for (int column = tableDataRect.beginColumn(); column < tableDataRect.endColumn(); column++) {
+        if (!snapshot.hasCell(row, column)) {
+          throw missingCellError(row, column, tableDataRect);
+        }
+      }
+    }
+  }
+
+  private static IllegalArgumentException missingCellError(
+      int row, int column, ExcelRect tableDataRect) {
+    return new IllegalArgumentException(
+        String.format(
+            "Invalid table sheet, cell %s in table data rect %s doesn't exist",
+            ExcelCellIndex.of(row, column), tableDataRect));
+  }
+
+  private static TableData parse(
+      BorderGrid borders, CellTextSource cells, Validation validation, boolean parallel) {
+    return TableData.of(parseTree(borders, new TableDataBuilder(cells), validation, parallel));
+  }
+
+  // Parses the logical rows of the table data rect into a tree built by the given builder.
+  private static <R, C> List<R> parseTree(
+      BorderGrid borders, TreeBuilder<R, C> builder, Validation validation, boolean parallel) {
+    ParseContext<R, C> context = new ParseContext<>(borders, builder, validation, parallel);
+    // The table data rect itself is always validated, nested rectagles are split from it.
+    checkSheetRectagle(context, borders.rect());
+    List<R> rows = parseRowsFromRectagle(context, borders.rect(), false);
+    ParserStats.recordTable(
+        borders.rect(),
+        context.cellProbes,
+        context.borderChecks,
+        context.rectValidations,
+        context.maxDepth);
+    return rows;
+  }
+
+  // Builds nodes of the parsed tree, so that the same recursion builds either a TableData or a
+  // LazyTable.
+  private interface TreeBuilder<R, C> {
+    // A column which consists of the cells in the given rect.
+    C leafColumn(ExcelRect rect);
+
+    C parentColumn(ExcelRect rect, List<R> childRows);
+
+    R row(List<C> columns);
+
+    // Whether leafColumn() reads the cells of the rect, only for ParserStats.
+    boolean readsCells();
+  }
+
+  // Builds a TableData, cell strings of leaf columns are read eagerly.
+  private static final class TableDataBuilder implements TreeBuilder<TableRow, TableColumn> {
+    private final CellTextSource cells;
+
+    TableDataBuilder(CellTextSource cells) {
+      this.cells = cells;
+    }
+
+    @Override
+    public TableColumn leafColumn(ExcelRect rect) {
+      return TableColumn.leaf(readLeafCells(cells, rect));
+    }
+
+    @Override
+    public TableColumn parentColumn(ExcelRect rect, List<TableRow> childRows) {
+      return TableColumn.parent(childRows);
+    }
+
+    @Override
+    public TableRow row(List<TableColumn> columns) {
+      return TableRow.of(columns);
+    }
+
+    @Override
+    public boolean readsCells() {
+      return true;
+    }
+  }
+
+  // Builds a LazyTable, cell strings are read when they are accessed.
+  private static final class LazyTableBuilder
+      implements TreeBuilder<LazyTable.Row, LazyTable.Column> {
+    private final CellTextSource cells;
+
+    LazyTableBuilder(CellTextSource cells) {
+      this.cells = cells;
+    }
+
+    @Override
+    public LazyTable.Column leafColumn(ExcelRect rect) {
+      return LazyTable.Column.leaf(cells, rect);
+    }
+
+    @Override
+    public LazyTable.Column parentColumn(ExcelRect rect, List<LazyTable.Row> childRows) {
+      return LazyTable.Column.parent(rect, childRows);
+    }
+
+    @Override
+    public LazyTable.Row row(List<LazyTable.Column> columns) {
+      return LazyTable.Row.of(columns);
+    }
+
+    @Override
+    public boolean readsCells() {
+      return false;
+    }
+  }
+
+  // Returns non-empty strings of cells in the given rect, in row-major order.
+  static ImmutableList<String> readLeafCells(CellTextSource cells, ExcelRect rect) {
+    ImmutableList.Builder<String> cellStrings = ImmutableList.builder();
+    for (int row = rect.beginRow(); row < rect.endRow(); row++) {
+      for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
+        String cellString = cells.cellString(row, column);
+        if (!cellString.isEmpty()) {
+          cellStrings.add(cellString);
+        }
       }
     }
+    return cellStrings.build();
+  }
+
+  // What is shared by all levels of the recursion.
+  //
+  // It also counts the work of the recursion for ParserStats. Counters are plain fields, so each
+  // ParseRowsTask counts in a context of its own (see forTask()), which is merged into its parent
+  // after it is joined.
+  private static final class ParseContext<R, C> {
+    final BorderGrid borders;
+    final TreeBuilder<R, C> builder;
+    final boolean paranoid;
+    // In parallel mode, the builder and borders must be safe to be used by multiple threads, and
+    // the recursion must run in a ForkJoinPool.
+    final boolean parallel;
+
+    long cellProbes;
+    long borderChecks;
+    long rectValidations;
+    // The number of nested parseRowsFromRectagle() calls being run, and the max of it.
+    int depth;
+    int maxDepth;
+
+    ParseContext(
+        BorderGrid borders, TreeBuilder<R, C> builder, Validation validation, boolean parallel) {
+      this(borders, builder, validation == Validation.PARANOID, parallel);
+    }
+
+    private ParseContext(
+        BorderGrid borders, TreeBuilder<R, C> builder, boolean paranoid, boolean parallel) {
+      this.borders = borders;
+      this.builder = builder;
+      this.paranoid = paranoid;
+      this.parallel = parallel;
+    }
 
-    return TableData.of(parseRowsFromRectagle(sheet, metadata.tableDataRect(), false));
+    // A context of a task forked at the current depth, with counters of its own.
+    ParseContext<R, C> forTask() {
+      ParseContext<R, C> context = new ParseContext<>(borders, builder, paranoid, parallel);
+      context.depth = depth;
+      context.maxDepth = depth;
+      return context;
+    }
+
+    void merge(ParseContext<R, C> task) {
+      cellProbes += task.cellProbes;
+      borderChecks += task.borderChecks;
+      rectValidations += task.rectValidations;
+      maxDepth = Math.max(maxDepth, task.maxDepth);
+    }
+
+    boolean hasTopBorder(int row, int column) {
+      borderChecks++;
+      return borders.hasTopBorder(row, column);
+    }
+
+    boolean hasTopBorder(int row, int beginColumn, int endColumn) {
+      borderChecks++;
+      return borders.hasTopBorder(row, beginColumn, endColumn);
+    }
+
+    boolean hasAnyTopBorder(int row, int beginColumn, int endColumn) {
+      borderChecks++;
+      return borders.hasAnyTopBorder(row, beginColumn, endColumn);
+    }
+
+    boolean hasLeftBorder(int beginRow, int endRow, int column) {
+      borderChecks++;
+      return borders.hasLeftBorder(beginRow, endRow, column);
+    }
+
+    int nextTopBorderRow(int row, int column) {
+      borderChecks++;
+      return borders.nextTopBorderRow(row, column);
+    }
+
+    int nextLeftBorderColumn(int row, int column) {
+      borderChecks++;
+      return borders.nextLeftBorderColumn(row, column);
+    }
   }
 
   // Parse a rectagle area in the sheet that consists of one or more logical rows.
@@ -41,80 +387,146 @@ final class TableSheetParser {
   // 1. This rectagle is surrounded by borders.
   // 2. This rectagle is splitted into logical table rows according horizontal
   // continuous top borders that across the entire rectagle.
-  private static List<TableRow> parseRowsFromRectagle(
-      XSSFSheet sheet, ExcelRect rect, boolean strictCheck) {
-    checkSheetRectagle(sheet, rect);
-    ImmutableSet<Integer> allColumns = integerSetFromRange(rect.beginColumn(), rect.endColumn());
-    if (strictCheck) {
-      checkArgument(
-          IntStream.range(rect.beginRow() + 1, rect.endRow())
-              .anyMatch(row -> SheetParserUtils.hasTopBorder(sheet, row, allColumns)));
+  private static <R, C> List<R> parseRowsFromRectagle(
+      ParseContext<R, C> context, ExcelRect rect, boolean strictCheck) {
+    context.depth++;
+    context.maxDepth = Math.max(context.maxDepth, context.depth);
+    List<R> parsedRows = parseRowsFromRectagleAtDepth(context, rect, strictCheck);
+    context.depth--;
+    return parsedRows;
+  }
+
+  private static <R, C> List<R> parseRowsFromRectagleAtDepth(
+      ParseContext<R, C> context, ExcelRect rect, boolean strictCheck) {
+    if (context.paranoid) {
+      checkSheetRectagle(context, rect);
     }
 
+    // Each row rect has the top and bottom borders it is split by, and the left and right borders
+    // of this rectagle. So it is surrounded by borders, and there is no continuous top border
+    // across it.
+    //
+    // A continuous top border across the rectagle is also a top border of its first column, so
+    // only rows of top borders of the first column are checked, and other rows are skipped.
     int subBeginRow = rect.beginRow();
-    ArrayList<TableRow> parsedRows = Lists.newArrayList();
-    for (int row = rect.beginRow() + 1; row <= rect.endRow(); row++) {
-      if (SheetParserUtils.hasTopBorder(sheet, row, allColumns)) {
-        parsedRows.add(
-            parseOneRowFromRectagle(
-                sheet, ExcelRect.of(subBeginRow, row, rect.beginColumn(), rect.endColumn())));
+    ArrayList<ExcelRect> rowRects = Lists.newArrayList();
+    for (int row = context.nextTopBorderRow(rect.beginRow(), rect.beginColumn());
+        row <= rect.endRow();
+        row = context.nextTopBorderRow(row, rect.beginColumn())) {
+      if (context.hasTopBorder(row, rect.beginColumn(), rect.endColumn())) {
+        rowRects.add(ExcelRect.of(subBeginRow, row, rect.beginColumn(), rect.endColumn()));
         subBeginRow = row;
       }
     }
+    if (strictCheck) {
+      // There is a continuous top border within the rectagle, i.e., the first row rect ends
+      // before the end of the rectagle.
+      checkArgument(!rowRects.isEmpty() && rowRects.get(0).endRow() < rect.endRow());
+    }
+    if (context.parallel && rect.cellCount() > PARALLEL_TASK_CELLS) {
+      ParseRowsTask<R, C> task = new ParseRowsTask<>(context, rowRects, 0, rowRects.size());
+      List<R> parsedRows = task.invoke();
+      context.merge(task.context);
+      return parsedRows;
+    }
+    ArrayList<R> parsedRows = Lists.newArrayList();
+    for (ExcelRect rowRect : rowRects) {
+      parsedRows.add(parseOneRowFromRectagle(context, rowRect));
+    }
     return parsedRows;
   }
 
+  // Parses logical rows [begin, end) of the given row rects. Logical rows are independent of each
+  // other, so they are split in halves until a half has at most PARALLEL_TASK_CELLS cells.
+  private static final class ParseRowsTask<R, C> extends RecursiveTask<List<R>> {
+    private final ParseContext<R, C> context;
+    private final List<ExcelRect> rowRects;
+    private final int begin;
+    private final int end;
+
+    // The given context is the one of the parent, the task counts in a context of its own.
+    ParseRowsTask(ParseContext<R, C> context, List<ExcelRect> rowRects, int begin, int end) {
+      this.context = context.forTask();
+      this.rowRects = rowRects;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    protected List<R> compute() {
+      // Row rects are consecutive and have the same columns.
+      int cellCount =
+          end == begin
+              ? 0
+              : (rowRects.get(end - 1).endRow() - rowRects.get(begin).beginRow())
+                  * rowRects.get(begin).columnCount();
+      if (end - begin <= 1 || cellCount <= PARALLEL_TASK_CELLS) {
+        ArrayList<R> parsedRows = Lists.newArrayList();
+        for (int i = begin; i < end; i++) {
+          parsedRows.add(parseOneRowFromRectagle(context, rowRects.get(i)));
+        }
+        return parsedRows;
+      }
+      int middle = (begin + end) >>> 1;
+      ParseRowsTask<R, C> first = new ParseRowsTask<>(context, rowRects, begin, middle);
+      ParseRowsTask<R, C> second = new ParseRowsTask<>(context, rowRects, middle, end);
+      invokeAll(first, second);
+      ArrayList<R> parsedRows = Lists.newArrayList();
+      parsedRows.addAll(first.join());
+      parsedRows.addAll(second.join());
+      context.merge(first.context);
+      context.merge(second.context);
+      return parsedRows;
+    }
+  }
+
   // Parse a rectagle area in the sheet that consists of only one logical row.
   // It is exepected that:
   // 1. This rectagle is surrounded by borders.
   // 2. There is no horizontal continuous top borders that across the entire
   // rectagle.
-  private static TableRow parseOneRowFromRectagle(XSSFSheet sheet, ExcelRect rect) {
-    checkSheetRectagle(sheet, rect);
-    for (int row = rect.beginRow() + 1; row < rect.endRow(); row++) {
-      checkArgument(
-          !SheetParserUtils.hasTopBorder(
-              sheet, row, integerSetFromRange(rect.beginColumn(), rect.endColumn())));
-    }
-
-    ImmutableMap<Integer, Boolean> hasSplitByColumn =
-        IntStream.range(rect.beginColumn(), rect.endColumn())
-            .boxed()
-            .collect(
-                toImmutableMap(
-                    column -> column,
-                    column -> {
-                      for (int row = rect.beginRow() + 1; row < rect.endRow(); row++) {
-                        if (SheetParserUtils.hasTopBorder(sheet, row, ImmutableSet.of(column))) {
-                          return true;
-                        }
-                      }
-                      return false;
-                    }));
+  private static <R, C> R parseOneRowFromRectagle(ParseContext<R, C> context, ExcelRect rect) {
+    if (context.paranoid) {
+      checkSheetRectagle(context, rect);
+      for (int row = rect.beginRow() + 1; row < rect.endRow(); row++) {
+        checkArgument(!context.hasTopBorder(row, rect.beginColumn(), rect.endColumn()));
+      }
+    }
+
+    // Whether a column has any internal top border, i.e., its next top border is above the end
+    // row. Indexed by (column - rect.beginColumn()).
+    boolean[] hasSplitByColumn = new boolean[rect.columnCount()];
+    for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
+      hasSplitByColumn[column - rect.beginColumn()] =
+          context.nextTopBorderRow(rect.beginRow(), column) < rect.endRow();
+    }
 
     int subBeginColumn = rect.beginColumn();
-    ArrayList<TableColumn> parsedColumns = Lists.newArrayList();
+    ArrayList<C> parsedColumns = Lists.newArrayList();
     for (int column = rect.beginColumn() + 1; column <= rect.endColumn(); column++) {
       // This is the last column or there is an internal horizontal cell boder to
       // further split.
+      boolean subRectHasSplit = hasSplitByColumn[subBeginColumn - rect.beginColumn()];
       if (column == rect.endColumn()
-          || hasSplitByColumn.get(column) != hasSplitByColumn.get(subBeginColumn)) {
-        if (!hasSplitByColumn.get(subBeginColumn)) {
-          parsedColumns.addAll(
-              parseLeafColumnsFromRectagle(
-                  sheet, ExcelRect.of(rect.beginRow(), rect.endRow(), subBeginColumn, column)));
+          || hasSplitByColumn[column - rect.beginColumn()] != subRectHasSplit) {
+        ExcelRect subRect = ExcelRect.of(rect.beginRow(), rect.endRow(), subBeginColumn, column);
+        // The top and bottom borders of the sub rect are the ones of this rectagle, but it is not
+        // split by left borders, so its left and right borders are not implied.
+        if (!context.paranoid) {
+          checkLeftAndRightBorders(context, subRect);
+        }
+        if (!subRectHasSplit) {
+          // No column of the sub rect has an internal top border.
+          parsedColumns.addAll(parseLeafColumnsFromRectagle(context, subRect));
         } else {
           parsedColumns.add(
-              TableColumn.parent(
-                  parseRowsFromRectagle(
-                      sheet,
-                      ExcelRect.of(rect.beginRow(), rect.endRow(), subBeginColumn, column),
-                      true)));
+              context.builder.parentColumn(
+                  subRect, parseRowsFromRectagle(context, subRect, true)));
         }
         subBeginColumn = column;
       }
     }
-    return TableRow.of(parsedColumns);
+    return context.builder.row(parsedColumns);
   }
 
   // Parse a rectagle area in the sheet that consists of only leaf logical
@@ -122,73 +534,70 @@ final class TableSheetParser {
   // It is exepected that:
   // 1. This rectagle is surrounded by borders.
   // 2. There is no horizontal top borders within this rectagle.
-  private static List<TableColumn> parseLeafColumnsFromRectagle(XSSFSheet sheet, ExcelRect rect) {
-    checkSheetRectagle(sheet, rect);
-    checkArgument(
-        IntStream.range(rect.beginRow() + 1, rect.endRow())
-            .allMatch(
-                row -> {
-                  return SheetParserUtils.getColumnsWithTopBorder(
-                          sheet, row, integerSetFromRange(rect.beginColumn(), rect.endColumn()))
-                      .isEmpty();
-                }));
-
-    ImmutableSet<Integer> allRows = integerSetFromRange(rect.beginRow(), rect.endRow());
+  private static <R, C> List<C> parseLeafColumnsFromRectagle(
+      ParseContext<R, C> context, ExcelRect rect) {
+    if (context.paranoid) {
+      checkSheetRectagle(context, rect);
+      for (int row = rect.beginRow() + 1; row < rect.endRow(); row++) {
+        checkArgument(!context.hasAnyTopBorder(row, rect.beginColumn(), rect.endColumn()));
+      }
+    }
+
+    // Each leaf column is split by left borders, so it is surrounded by borders. A continuous left
+    // border is also a left border of the first row, so other columns are skipped.
     int subBeginColumn = rect.beginColumn();
-    ArrayList<TableColumn> parsedColumns = Lists.newArrayList();
-    for (int column = rect.beginColumn() + 1; column <= rect.endColumn(); column++) {
-      if (SheetParserUtils.getRowsWithLeftBorder(sheet, allRows, column).containsAll(allRows)) {
+    ArrayList<C> parsedColumns = Lists.newArrayList();
+    for (int column = context.nextLeftBorderColumn(rect.beginRow(), rect.beginColumn());
+        column <= rect.endColumn();
+        column = context.nextLeftBorderColumn(rect.beginRow(), column)) {
+      if (context.hasLeftBorder(rect.beginRow(), rect.endRow(), column)) {
         parsedColumns.add(
             parseOneLeafColumnFromRectagle(
-                sheet, ExcelRect.of(rect.beginRow(), rect.endRow(), subBeginColumn, column)));
+                context, ExcelRect.of(rect.beginRow(), rect.endRow(), subBeginColumn, column)));
         subBeginColumn = column;
       }
     }
     return parsedColumns;
   }
 
-  private static TableColumn parseOneLeafColumnFromRectagle(XSSFSheet sheet, ExcelRect rect) {
-    checkSheetRectagle(sheet, rect);
-
-    ArrayList<ExcelCellIndex> cellIndecies = Lists.newArrayList();
-    for (int row = rect.beginRow(); row < rect.endRow(); row++) {
-      for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
-        cellIndecies.add(ExcelCellIndex.of(row, column));
-      }
+  private static <R, C> C parseOneLeafColumnFromRectagle(
+      ParseContext<R, C> context, ExcelRect rect) {
+    if (context.paranoid) {
+      checkSheetRectagle(context, rect);
+    }
+    if (context.builder.readsCells()) {
+      context.cellProbes += rect.cellCount();
     }
-    ImmutableList<String> cellStrings =
-        cellIndecies.stream()
-            .map(cellIndex -> SheetParserUtils.safeGetCellString(sheet, cellIndex))
-            .filter(cellString -> !cellString.isEmpty())
-            .collect(toImmutableList());
-    return TableColumn.leaf(cellStrings);
+    return context.builder.leafColumn(rect);
   }
 
-  private static void checkSheetRectagle(XSSFSheet sheet, ExcelRect rect) {
-    checkNotNull(sheet);
+  private static void checkSheetRectagle(ParseContext<?, ?> context, ExcelRect rect) {
     checkNotNull(rect);
 
     // Checks existences of top and bottom borders.
-    ImmutableSet<Integer> allColumns = integerSetFromRange(rect.beginColumn(), rect.endColumn());
     checkArgument(
-        SheetParserUtils.hasTopBorder(sheet, rect.beginRow(), allColumns),
-        String.format("Invalid rectagle %s, it has no top border", rect));
+        context.hasTopBorder(rect.beginRow(), rect.beginColumn(), rect.endColumn()),
+        "Invalid rectagle %s, it has no top border",
+        rect);
 
     checkArgument(
-        SheetParserUtils.hasTopBorder(sheet, rect.endRow(), allColumns),
-        String.format("Invalid rectagle %s, it has no bottom border", rect));
+        context.hasTopBorder(rect.endRow(), rect.beginColumn(), rect.endColumn()),
+        "Invalid rectagle %s, it has no bottom border",
+        rect);
 
+    checkLeftAndRightBorders(context, rect);
+  }
+
+  private static void checkLeftAndRightBorders(ParseContext<?, ?> context, ExcelRect rect) {
+    context.rectValidations++;
     // Checks existences of left and right borders.
-    ImmutableSet<Integer> allRows = integerSetFromRange(rect.beginRow(), rect.endRow());
     checkArgument(
-        SheetParserUtils.hasLeftBorder(sheet, allRows, rect.beginColumn()),
-        String.format("Invalid rectagle %s, it has no left border", rect));
+        context.hasLeftBorder(rect.beginRow(), rect.endRow(), rect.beginColumn()),
+        "Invalid rectagle %s, it has no left border",
+        rect);
     checkArgument(
-        SheetParserUtils.hasLeftBorder(sheet, allRows, rect.endColumn()),
-        String.format("Invalid rectagle %s, it has no right border", rect));
-  }
-
-  private static ImmutableSet<Integer> integerSetFromRange(int begin, int end) {
-    return IntStream.range(begin, end).boxed().collect(toImmutableSet());
+        context.hasLeftBorder(rect.beginRow(), rect.endRow(), rect.endColumn()),
+        "Invalid rectagle %s, it has no right border",
+        rect);
   }
 }
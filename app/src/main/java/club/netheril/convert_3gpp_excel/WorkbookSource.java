@@ -0,0 +1,295 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.InputStreamStatistics;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.InvalidOperationException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+
+// This class is where the bytes of an Excel workbook come from, i.e., a file, a memory-mapped file
+// or bytes in memory (e.g., the body of a request of ConversionServer).
+//
+// All sources are opened as an OPCPackage on the ZIP central directory, so that parts (e.g., the
+// XML of a sheet) are inflated only when they are read, and the ZIP bytes are never copied:
+// - A file is read by random access, instead of POI buffering the whole ZIP in memory, which is
+//   what opening it from an InputStream does.
+// - Bytes in memory and a mapped file are read through a read-only channel on a ByteBuffer.
+//
+// A source can be opened any number of times, even concurrently. An opened package is read only,
+// and the caller closes it by OPCPackage.revert() (close() of a read only package also reverts it,
+// but with a warning), which also closes the underlying file.
+abstract class WorkbookSource {
+  // Name of the source in messages, e.g., the path of the file.
+  abstract String name();
+
+  // Opens the workbook as a read only package, throws an IllegalArgumentException if it is not a
+  // valid Excel file.
+  abstract OPCPackage open();
+
+  @Override
+  public String toString() {
+    return name();
+  }
+
+  // The workbook in the given file, read by random access.
+  public static WorkbookSource of(Path file) {
+    checkNotNull(file);
+    return new WorkbookSource() {
+      @Override
+      String name() {
+        return file.toString();
+      }
+
+      @Override
+      OPCPackage open() {
+        try {
+          return OPCPackage.open(file.toFile(), PackageAccess.READ);
+        } catch (InvalidFormatException | InvalidOperationException e) {
+          // InvalidOperationException if the file doesn't exist or it is not readable.
+          throw new IllegalArgumentException(
+              String.format("Unable to open Excel file '%s'", file), e);
+        }
+      }
+    };
+  }
+
+  // The workbook in the given file, which is mapped into memory instead of being read. The
+  // mapping is released when the source is garbage collected.
+  public static WorkbookSource mapped(Path file) throws IOException {
+    checkNotNull(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      checkArgument(
+          channel.size() <= Integer.MAX_VALUE,
+          "Excel file '%s' is too large (%s bytes) to be mapped",
+          file,
+          channel.size());
+      return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+    }
+  }
+
+  // The workbook in the given bytes, which must not be modified while the source is used.
+  public static WorkbookSource of(byte[] bytes, String name) {
+    return of(ByteBuffer.wrap(checkNotNull(bytes)), name);
+  }
+
+  // The workbook in the remaining bytes of the given buffer, which must not be modified while the
+  // source is used. The position and the limit of the buffer are not changed.
+  public static WorkbookSource of(ByteBuffer bytes, String name) {
+    ByteBuffer workbook = checkNotNull(bytes).slice();
+    checkNotNull(name);
+    return new WorkbookSource() {
+      @Override
+      String name() {
+        return name;
+      }
+
+      @Override
+      OPCPackage open() {
+        ZipFile zipFile;
+        try {
+          zipFile = new ZipFile(new ByteBufferChannel(workbook.duplicate()));
+        } catch (IOException e) {
+          throw new IllegalArgumentException(
+              String.format("Unable to open Excel workbook '%s'", name), e);
+        }
+        try {
+          return OPCPackage.open(new ZipFileEntrySource(zipFile));
+        } catch (InvalidFormatException | RuntimeException e) {
+          try {
+            zipFile.close();
+          } catch (IOException closeError) {
+            e.addSuppressed(closeError);
+          }
+          throw new IllegalArgumentException(
+              String.format("Unable to open Excel workbook '%s'", name), e);
+        }
+      }
+    };
+  }
+
+  // Parts of a package in a ZIP file, which is opened on a channel. A file opened by POI is a
+  // ZipSecureFile with the same checks of entry sizes.
+  private static final class ZipFileEntrySource implements ZipEntrySource {
+    private final ZipFile zipFile;
+    private volatile boolean closed = false;
+
+    ZipFileEntrySource(ZipFile zipFile) {
+      this.zipFile = zipFile;
+    }
+
+    @Override
+    public Enumeration<? extends ZipArchiveEntry> getEntries() {
+      return zipFile.getEntries();
+    }
+
+    @Override
+    public ZipArchiveEntry getEntry(String path) {
+      return zipFile.getEntry(path);
+    }
+
+    @Override
+    public InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+      return new InflateLimitInputStream(zipFile.getInputStream(entry), entry.getName());
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      zipFile.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+  }
+
+  // Fails reading an entry which inflates to more than ZipSecureFile.getMaxEntrySize(), or with a
+  // ratio of compressed to inflated size lower than ZipSecureFile.getMinInflateRatio(), i.e., a
+  // zip bomb, the same as ZipSecureFile does for a file.
+  private static final class InflateLimitInputStream extends FilterInputStream {
+    // Small entries are not checked by their ratios, which vary a lot, the same as POI does.
+    private static final long GRACE_ENTRY_SIZE = 100 * 1024;
+
+    private final String entryName;
+    private long inflatedBytes = 0;
+
+    InflateLimitInputStream(InputStream in, String entryName) {
+      super(in);
+      this.entryName = entryName;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        checkLimits(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        checkLimits(count);
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      long skipped = super.skip(count);
+      checkLimits(skipped);
+      return skipped;
+    }
+
+    private void checkLimits(long count) throws IOException {
+      inflatedBytes += count;
+      if (inflatedBytes > ZipSecureFile.getMaxEntrySize()) {
+        throw new IOException(
+            String.format(
+                "Zip entry %s is larger than %d bytes",
+                entryName, ZipSecureFile.getMaxEntrySize()));
+      }
+      // Stored entries are not inflated, so they don't have statistics.
+      if (inflatedBytes > GRACE_ENTRY_SIZE && in instanceof InputStreamStatistics) {
+        double ratio = (double) ((InputStreamStatistics) in).getCompressedCount() / inflatedBytes;
+        if (ratio < ZipSecureFile.getMinInflateRatio()) {
+          throw new IOException(
+              String.format(
+                  "Zip entry %s may be a zip bomb, its compression ratio %f is lower than %f",
+                  entryName, ratio, ZipSecureFile.getMinInflateRatio()));
+        }
+      }
+    }
+  }
+
+  // A read-only channel on the remaining bytes of a buffer, whose position is the position of the
+  // channel.
+  private static final class ByteBufferChannel implements SeekableByteChannel {
+    private final ByteBuffer buffer;
+    private boolean open = true;
+
+    ByteBufferChannel(ByteBuffer buffer) {
+      this.buffer = buffer.slice();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destination) throws IOException {
+      ensureOpen();
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(destination.remaining(), buffer.remaining());
+      destination.put(buffer.slice(buffer.position(), count));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+      ensureOpen();
+      return buffer.position();
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+      checkArgument(newPosition >= 0, "Invalid position %s", newPosition);
+      ensureOpen();
+      // A position beyond the end is allowed, and reading from it returns -1.
+      buffer.position((int) Math.min(newPosition, buffer.limit()));
+      return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+      ensureOpen();
+      return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public synchronized void close() {
+      open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+    }
+  }
+}
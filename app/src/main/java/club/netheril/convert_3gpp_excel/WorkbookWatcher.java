@@ -0,0 +1,419 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+// This class watches directories of Excel files, and converts a workbook whenever it is saved,
+// see "--watch" of App.
+//
+// - Each converted workbook has an output file in the output directory, at the same relative path
+//   as the workbook in its watched directory, e.g., "<output>/38.101-3/5.5B.4.1-1.json" of
+//   "<watched>/38.101-3/5.5B.4.1-1.xlsx". An output is written to a temporary file first and then
+//   atomically renamed, so a reader never sees a partial output.
+// - Saving a workbook usually fires a burst of events, so a workbook is only converted after no
+//   event of it happens for the quiet period.
+// - A workbook whose content hash is the same as the last time it was converted (e.g., it is
+//   saved without any change) is skipped.
+// - Workbooks which become ready at the same time are converted concurrently by BatchConverter.
+// - A workbook of more than one table has an output per table, see outputOf().
+// - The output of a deleted workbook is deleted.
+//
+// Workbooks in the watched directories are all converted once when the watcher starts, pass a
+// parser with a ConversionCache to avoid converting unchanged workbooks again after a restart.
+final class WorkbookWatcher implements AutoCloseable {
+  static final Duration DEFAULT_QUIET_PERIOD = Duration.ofMillis(200);
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  // Characters of a table serial number which are replaced in the name of its output.
+  private static final Pattern UNSAFE_FILE_NAME_CHARS = Pattern.compile("[\\\\/:*?\"<>|]");
+
+  private final ImmutableList<Path> roots;
+  private final Path outputDirectory;
+  private final Function<Path, ? extends List<ParsedTable>> parser;
+  private final long heapBytesPerFileByte;
+  private final TableDataWriter.Format format;
+  private final long quietPeriodNanos;
+  private final Consumer<BatchConverter.FileResult> onResult;
+
+  private final WatchService watchService;
+  // Watched directories, including subdirectories of roots.
+  private final HashMap<WatchKey, Path> directories = new HashMap<>();
+  // Workbooks with events, and the nano time after which they are converted unless another event
+  // happens, in the order of their first events.
+  private final LinkedHashMap<Path, Long> pendingDeadlines = new LinkedHashMap<>();
+  // Content hashes of converted workbooks.
+  private final HashMap<Path, HashCode> convertedHashes = new HashMap<>();
+  // Outputs of converted workbooks.
+  private final HashMap<Path, ImmutableList<Path>> outputs = new HashMap<>();
+
+  private final AtomicLong convertedCount = new AtomicLong();
+  private final AtomicLong skippedCount = new AtomicLong();
+
+  private WorkbookWatcher(
+      ImmutableList<Path> roots,
+      Path outputDirectory,
+      Function<Path, ? extends List<ParsedTable>> parser,
+      long heapBytesPerFileByte,
+      TableDataWriter.Format format,
+      Duration quietPeriod,
+      Consumer<BatchConverter.FileResult> onResult)
+      throws IOException {
+    this.roots = roots;
+    this.outputDirectory = outputDirectory;
+    this.parser = parser;
+    this.heapBytesPerFileByte = heapBytesPerFileByte;
+    this.format = format;
+    this.quietPeriodNanos = quietPeriod.toNanos();
+    this.onResult = onResult;
+    this.watchService = roots.get(0).getFileSystem().newWatchService();
+  }
+
+  // Starts watching the given directories, all workbooks in them are pending to be converted by
+  // run(). Results of conversions (including failures of writing outputs) are reported to
+  // onResult, on the thread calling run().
+  public static WorkbookWatcher create(
+      List<Path> directories,
+      Path outputDirectory,
+      Function<Path, ? extends List<ParsedTable>> parser,
+      long heapBytesPerFileByte,
+      TableDataWriter.Format format,
+      Duration quietPeriod,
+      Consumer<BatchConverter.FileResult> onResult)
+      throws IOException {
+    checkArgument(
+        directories != null && !directories.isEmpty(), "No directories to watch are given");
+    ImmutableList.Builder<Path> roots = ImmutableList.builder();
+    for (Path directory : directories) {
+      checkArgument(Files.isDirectory(directory), "Unable to find directory '%s'", directory);
+      roots.add(directory.toAbsolutePath().normalize());
+    }
+    checkNotNull(outputDirectory);
+    checkNotNull(parser);
+    checkNotNull(format);
+    checkArgument(!quietPeriod.isNegative(), "Invalid quiet period %s", quietPeriod);
+    checkNotNull(onResult);
+    Files.createDirectories(outputDirectory);
+    WorkbookWatcher watcher =
+        new WorkbookWatcher(
+            roots.build(),
+            outputDirectory.toAbsolutePath().normalize(),
+            parser,
+            heapBytesPerFileByte,
+            format,
+            quietPeriod,
+            onResult);
+    try {
+      for (Path root : watcher.roots) {
+        watcher.registerAll(root);
+      }
+    } catch (IOException | RuntimeException e) {
+      watcher.close();
+      throw e;
+    }
+    return watcher;
+  }
+
+  // Watches and converts workbooks until the watcher is closed or the thread is interrupted.
+  public void run() {
+    while (true) {
+      WatchKey key;
+      try {
+        long waitNanos = nanosUntilNextDeadline();
+        key =
+            waitNanos == Long.MAX_VALUE
+                ? watchService.take()
+                : watchService.poll(waitNanos, TimeUnit.NANOSECONDS);
+        // Drains all events which are already fired before converting anything.
+        while (key != null) {
+          handleEvents(key);
+          key = watchService.poll();
+        }
+      } catch (ClosedWatchServiceException e) {
+        return;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      convertReadyWorkbooks();
+    }
+  }
+
+  // Number of workbooks converted successfully, including outputs written.
+  long convertedCount() {
+    return convertedCount.get();
+  }
+
+  // Number of workbooks skipped since their content hashes are unchanged.
+  long skippedCount() {
+    return skippedCount.get();
+  }
+
+  // Stops watching, run() returns after the conversions in progress.
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  // Watches the given directory and its subdirectories, workbooks in them become pending.
+  private void registerAll(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+          // Registering a directory again returns the same key.
+          WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+          directories.put(key, path);
+        } else if (BatchConverter.isExcelFile(path)) {
+          markPending(path);
+        }
+      }
+    }
+  }
+
+  private void handleEvents(WatchKey key) {
+    Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events are lost, so all workbooks are checked by their content hashes.
+        rescan();
+        continue;
+      }
+      if (directory == null) {
+        continue;
+      }
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+        // Workbooks may be created in it before it is watched.
+        try {
+          registerAll(path);
+        } catch (IOException e) {
+          // E.g., deleted right after it is created, which fires its own event.
+        }
+      } else if (BatchConverter.isExcelFile(path)) {
+        // A deleted workbook is also pending, since saving a workbook may replace it by a new
+        // file, i.e., a deletion followed by a creation.
+        markPending(path);
+      }
+    }
+    if (!key.reset()) {
+      // The directory is deleted.
+      directories.remove(key);
+    }
+  }
+
+  private void rescan() {
+    for (Path root : roots) {
+      try {
+        registerAll(root);
+      } catch (IOException e) {
+        // The root is deleted or unreadable, its workbooks are checked when it is back.
+      }
+    }
+    // Deleted workbooks don't show up in the scan.
+    for (Path workbook : convertedHashes.keySet()) {
+      markPending(workbook);
+    }
+  }
+
+  private void markPending(Path workbook) {
+    // Removed first so that the order of pendingDeadlines is also the order of deadlines.
+    pendingDeadlines.remove(workbook);
+    pendingDeadlines.put(workbook, System.nanoTime() + quietPeriodNanos);
+  }
+
+  private long nanosUntilNextDeadline() {
+    if (pendingDeadlines.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    long deadline = pendingDeadlines.values().iterator().next();
+    return Math.max(0, deadline - System.nanoTime());
+  }
+
+  private void convertReadyWorkbooks() {
+    long now = System.nanoTime();
+    LinkedHashMap<Path, HashCode> changedHashes = new LinkedHashMap<>();
+    Iterator<Map.Entry<Path, Long>> pending = pendingDeadlines.entrySet().iterator();
+    while (pending.hasNext()) {
+      Map.Entry<Path, Long> entry = pending.next();
+      if (entry.getValue() - now > 0) {
+        break;
+      }
+      pending.remove();
+      Path workbook = entry.getKey();
+      if (!Files.isRegularFile(workbook)) {
+        convertedHashes.remove(workbook);
+        deleteOutput(workbook);
+        continue;
+      }
+      HashCode hash;
+      try {
+        hash = MoreFiles.asByteSource(workbook).hash(Hashing.sha256());
+      } catch (IOException e) {
+        onResult.accept(BatchConverter.FileResult.failure(workbook, e));
+        continue;
+      }
+      if (hash.equals(convertedHashes.get(workbook))) {
+        skippedCount.incrementAndGet();
+      } else {
+        changedHashes.put(workbook, hash);
+      }
+    }
+    if (changedHashes.isEmpty()) {
+      return;
+    }
+    BatchConverter.convert(
+        ImmutableList.copyOf(changedHashes.keySet()),
+        parser,
+        heapBytesPerFileByte,
+        result -> {
+          if (result.succeeded()) {
+            try {
+              writeOutputs(result.file(), result.tables());
+            } catch (IOException e) {
+              onResult.accept(BatchConverter.FileResult.failure(result.file(), e));
+              return;
+            }
+            // If the workbook is changed again after it is hashed, it has another event, and it
+            // is converted again since its new hash is different.
+            convertedHashes.put(result.file(), changedHashes.get(result.file()));
+            convertedCount.incrementAndGet();
+          }
+          onResult.accept(result);
+        });
+  }
+
+  // The output file of the given workbook.
+  Path outputOf(Path workbook) {
+    return outputOf(workbook, "");
+  }
+
+  // The output file of the given table of the workbook, which has tableCount tables. A workbook of
+  // more than one table has an output per table, named by the table serial number, e.g.,
+  // "5.5B.4.1.5.3B.1.3-1.json" of table 5.3B.1.3-1 in "5.5B.4.1.xlsx".
+  Path outputOf(Path workbook, ParsedTable table, int tableCount) {
+    if (tableCount == 1) {
+      return outputOf(workbook);
+    }
+    String serialNumber = table.metadata().tableSerialNumber();
+    return outputOf(workbook, "." + UNSAFE_FILE_NAME_CHARS.matcher(serialNumber).replaceAll("_"));
+  }
+
+  private Path outputOf(Path workbook, String nameSuffix) {
+    Path relative = workbook.getFileName();
+    for (Path root : roots) {
+      if (workbook.startsWith(root)) {
+        relative = root.relativize(workbook);
+        break;
+      }
+    }
+    String name = relative.getFileName().toString();
+    String baseName = name.substring(0, name.lastIndexOf('.'));
+    return outputDirectory
+        .resolve(relative)
+        .resolveSibling(baseName + nameSuffix + outputSuffix(format));
+  }
+
+  static String outputSuffix(TableDataWriter.Format format) {
+    switch (format) {
+      case PRETTY:
+        return ".txt";
+      case JSON:
+        return ".json";
+      case NDJSON:
+        return ".ndjson";
+      case CSV:
+        return ".csv";
+      case FLAT_NDJSON:
+        return ".flat.ndjson";
+    }
+    throw new IllegalArgumentException("Unknown output format " + format);
+  }
+
+  // Writes the outputs of the tables of the given workbook, and deletes its previous outputs
+  // which are not written again, e.g., of a table removed from the workbook.
+  private void writeOutputs(Path workbook, List<ParsedTable> tables) throws IOException {
+    ImmutableList.Builder<Path> written = ImmutableList.builder();
+    for (ParsedTable table : tables) {
+      Path output = outputOf(workbook, table, tables.size());
+      writeOutput(output, App.tableSource(workbook.toString(), table, tables.size()), table.data());
+      written.add(output);
+    }
+    ImmutableList<Path> current = written.build();
+    for (Path previous : orDefaultOutput(workbook, outputs.put(workbook, current))) {
+      if (!current.contains(previous)) {
+        Files.deleteIfExists(previous);
+      }
+    }
+  }
+
+  // The given recorded outputs of the workbook, or if they are unknown (e.g., written before the
+  // watcher starts), the output of a single table.
+  private ImmutableList<Path> orDefaultOutput(
+      Path workbook, @Nullable ImmutableList<Path> recorded) {
+    return recorded == null ? ImmutableList.of(outputOf(workbook)) : recorded;
+  }
+
+  private void writeOutput(Path output, String source, TableData data) throws IOException {
+    Files.createDirectories(output.getParent());
+    Path temp =
+        Files.createTempFile(output.getParent(), output.getFileName().toString(), TEMP_SUFFIX);
+    try {
+      // Streamed into the file, since a flattened table may have millions of records.
+      try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        TableDataWriter.write(data, format, source, out);
+      }
+      try {
+        Files.move(
+            temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void deleteOutput(Path workbook) {
+    try {
+      for (Path output : orDefaultOutput(workbook, outputs.remove(workbook))) {
+        Files.deleteIfExists(output);
+      }
+    } catch (IOException e) {
+      onResult.accept(BatchConverter.FileResult.failure(workbook, e));
+    }
+  }
+}
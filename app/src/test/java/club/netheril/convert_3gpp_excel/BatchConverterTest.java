@@ -0,0 +1,202 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchConverterTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final ImmutableList<ParsedTable> TEST_TABLES =
+      ImmutableList.of(
+          ParsedTable.of(
+              TableMetadata.builder()
+                  .setSpecName("38.101-3")
+                  .setSpecVersion("h50")
+                  .setTableSerialNumber("5.3B.1.3-1")
+                  .setTableTitle("")
+                  .setTableDataRect(ExcelRect.of("A1", "A1"))
+                  .build(),
+              TableData.of(TableRow.of(TableColumn.leaf("1")))));
+
+  private Path createFile(String name) throws IOException {
+    Path file = tempFolder.getRoot().toPath().resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, new byte[] {0});
+  }
+
+  @Test
+  public void expandInputs_succeed() throws IOException {
+    Path b = createFile("specs/b.xlsx");
+    Path a = createFile("specs/a.xlsx");
+    Path c = createFile("specs/sub/c.xlsx");
+    createFile("specs/~$a.xlsx");
+    createFile("specs/readme.txt");
+    Path d = createFile("other/d.xlsx");
+    String root = tempFolder.getRoot().toString();
+
+    // Files in a directory are sorted and included recursively.
+    assertEquals(
+        ImmutableList.of(a, b, c), BatchConverter.expandInputs(ImmutableList.of(root + "/specs")));
+
+    // Glob patterns.
+    assertEquals(
+        ImmutableList.of(a, b),
+        BatchConverter.expandInputs(ImmutableList.of(root + "/specs/*.xlsx")));
+    assertEquals(
+        ImmutableList.of(d, c),
+        BatchConverter.expandInputs(ImmutableList.of(root + "/{other,specs/sub}/*.xlsx")));
+
+    // Input order is kept and duplicated files are removed.
+    assertEquals(
+        ImmutableList.of(d, a, b, c),
+        BatchConverter.expandInputs(
+            ImmutableList.of(d.toString(), root + "/specs", a.toString())));
+  }
+
+  @Test
+  public void expandInputs_fail() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BatchConverter.expandInputs(ImmutableList.of(tempFolder.getRoot() + "/missing")));
+  }
+
+  @Test
+  public void convert_resultsInInputOrder() throws IOException {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (int i = 0; i < 20; i++) {
+      files.add(createFile(String.format("%02d.xlsx", i)));
+    }
+    ArrayList<Path> reported = new ArrayList<>();
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            files.build(),
+            file -> {
+              try {
+                // Files at the front take longer.
+                Thread.sleep(20 - Integer.parseInt(file.getFileName().toString().substring(0, 2)));
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+              return TEST_TABLES;
+            },
+            /* heapBudgetBytes= */ Long.MAX_VALUE,
+            file -> 0,
+            result -> reported.add(result.file()));
+    assertEquals(files.build(), reported);
+    assertEquals(20, summary.fileCount());
+    assertTrue(summary.failures().isEmpty());
+  }
+
+  @Test
+  public void convert_failureDoesNotStopOthers() throws IOException {
+    Path good = createFile("good.xlsx");
+    Path bad = createFile("bad.xlsx");
+    ImmutableList.Builder<BatchConverter.FileResult> results = ImmutableList.builder();
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            ImmutableList.of(bad, good),
+            file -> {
+              if (file.equals(bad)) {
+                throw new IllegalArgumentException("Bad file");
+              }
+              return TEST_TABLES;
+            },
+            /* heapBudgetBytes= */ Long.MAX_VALUE,
+            file -> 0,
+            results::add);
+
+    ImmutableList<BatchConverter.FileResult> reported = results.build();
+    assertEquals(2, reported.size());
+    assertFalse(reported.get(0).succeeded());
+    assertTrue(reported.get(0).error() instanceof IllegalArgumentException);
+    assertTrue(reported.get(1).succeeded());
+    assertEquals(TEST_TABLES, reported.get(1).tables());
+    assertEquals(ImmutableList.of(reported.get(0)), summary.failures());
+  }
+
+  @Test
+  public void convert_boundedByHeapBudget() throws IOException {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (int i = 0; i < 10; i++) {
+      files.add(createFile(String.format("%02d.xlsx", i)));
+    }
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            files.build(),
+            file -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+              running.decrementAndGet();
+              return TEST_TABLES;
+            },
+            // Each file takes 2 MB of a 5 MB budget, so at most 2 files run at the same time.
+            /* heapBudgetBytes= */ 5 << 20,
+            file -> 2 << 20,
+            result -> {});
+    assertTrue(summary.failures().isEmpty());
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void convert_unreportedResultsBoundedByHeapBudget() throws IOException {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (int i = 0; i < 10; i++) {
+      files.add(createFile(String.format("%02d.xlsx", i)));
+    }
+    Path first = files.build().get(0);
+    // Files which are admitted but not reported yet.
+    AtomicInteger unreported = new AtomicInteger();
+    AtomicInteger maxUnreported = new AtomicInteger();
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            files.build(),
+            file -> {
+              maxUnreported.accumulateAndGet(unreported.incrementAndGet(), Math::max);
+              // The first file is slow, so results of the others finish before it.
+              if (file.equals(first)) {
+                try {
+                  Thread.sleep(50);
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+              return TEST_TABLES;
+            },
+            // Each file takes 2 MB of a 5 MB budget until it is reported.
+            /* heapBudgetBytes= */ 5 << 20,
+            file -> 2 << 20,
+            result -> unreported.decrementAndGet());
+    assertTrue(summary.failures().isEmpty());
+    assertTrue(maxUnreported.get() <= 2);
+  }
+
+  @Test
+  public void convert_fileLargerThanBudget() throws IOException {
+    Path file = createFile("large.xlsx");
+    BatchConverter.Summary summary =
+        BatchConverter.convert(
+            ImmutableList.of(file),
+            f -> TEST_TABLES,
+            /* heapBudgetBytes= */ 1 << 20,
+            f -> Long.MAX_VALUE,
+            result -> {});
+    assertEquals(1, summary.fileCount());
+    assertTrue(summary.failures().isEmpty());
+  }
+}
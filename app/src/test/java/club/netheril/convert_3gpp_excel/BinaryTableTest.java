@@ -0,0 +1,197 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryTableTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final TableMetadata TEST_METADATA =
+      TableMetadata.builder()
+          .setSpecName("38.101-3")
+          .setSpecVersion("h50")
+          .setTableSerialNumber("5.3B.1.3-1")
+          .setTableTitle("Täble títle")
+          .setTableDataRect(ExcelRect.of("A6", "G20"))
+          .build();
+
+  private static final TableData TEST_DATA =
+      TableData.of(
+          TableRow.of(
+              TableColumn.leaf("DC_7A_n7A", "DC_7A_n7A"),
+              TableColumn.parent(
+                  TableRow.of(TableColumn.leaf("5,10,15,20"), TableColumn.empty()),
+                  TableRow.of(TableColumn.parent(TableRow.of(TableColumn.leaf("20", "40")))))),
+          TableRow.of(TableColumn.empty(), TableColumn.leaf("multi\nline")));
+
+  @Test
+  public void roundTrip_succeed() {
+    BinaryTable table =
+        BinaryTable.of(ByteBuffer.wrap(BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA)));
+    assertEquals(TEST_METADATA, table.metadata());
+    assertEquals(TEST_DATA, table.toTableData());
+  }
+
+  @Test
+  public void roundTrip_parsedTable() throws IOException {
+    String fileName = "table_5.3B.1.3-1.xlsx";
+    InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
+    assertNotNull(String.format("Unable to find file '%s'", fileName), file);
+    try (XSSFWorkbook workbook = new XSSFWorkbook(file)) {
+      TableMetadata metadata = MetadataSheetParser.parse(workbook);
+      TableData data = TableSheetParser.parse(workbook, metadata);
+
+      Path binaryFile = tempFolder.getRoot().toPath().resolve("table.bin");
+      BinaryTableFormat.write(metadata, data, binaryFile);
+      BinaryTable table = BinaryTableFormat.open(binaryFile);
+      assertEquals(metadata, table.metadata());
+      assertEquals(data, table.toTableData());
+    }
+  }
+
+  @Test
+  public void lazyAccess_succeed() {
+    BinaryTable table =
+        BinaryTable.of(ByteBuffer.wrap(BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA)));
+    assertEquals(2, table.rowCount());
+
+    BinaryTable.Row row = table.row(0);
+    assertEquals(2, row.columnCount());
+    assertEquals(TableColumn.Type.LEAF, row.column(0).type());
+    assertEquals(2, row.column(0).cellCount());
+    assertEquals("DC_7A_n7A", row.column(0).cell(1));
+    // Equal strings are decoded only once.
+    assertSame(row.column(0).cell(0), row.column(0).cell(1));
+
+    BinaryTable.Column parent = row.column(1);
+    assertEquals(TableColumn.Type.PARENT, parent.type());
+    assertEquals(0, parent.cellCount());
+    assertEquals(2, parent.childRowCount());
+    assertEquals("40", parent.childRow(1).column(0).childRow(0).column(0).cell(1));
+    assertEquals(TableColumn.Type.EMPTY, parent.childRow(0).column(1).type());
+
+    assertEquals("multi\nline", table.row(1).column(1).cell(0));
+
+    assertThrows(IndexOutOfBoundsException.class, () -> table.row(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> row.column(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> row.column(0).cell(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> row.column(0).childRow(0));
+  }
+
+  @Test
+  public void stringsAreDeduplicated() {
+    TableData repeated =
+        TableData.of(
+            TableRow.of(TableColumn.leaf("a long repeated cell text")),
+            TableRow.of(TableColumn.leaf("a long repeated cell text")));
+    TableData distinct =
+        TableData.of(
+            TableRow.of(TableColumn.leaf("a long repeated cell text")),
+            TableRow.of(TableColumn.leaf("another long cell text!!!")));
+    assertTrue(
+        BinaryTableFormat.toBytes(TEST_METADATA, repeated).length
+            < BinaryTableFormat.toBytes(TEST_METADATA, distinct).length);
+  }
+
+  @Test
+  public void of_failureDueToInvalidData() {
+    byte[] bytes = BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA);
+
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 0;
+    assertThrows(IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(badMagic)));
+
+    byte[] badVersion = bytes.clone();
+    badVersion[7] = 99;
+    assertThrows(
+        IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(badVersion)));
+
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+    assertThrows(IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(truncated)));
+
+    assertThrows(IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.allocate(4)));
+  }
+
+  @Test
+  public void of_failureDueToCorruptedHeader() {
+    byte[] bytes = BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA);
+
+    // (string count + 1) * 4 overflows an int.
+    byte[] overflowedStringCount =
+        withInt(bytes, BinaryTableFormat.STRING_COUNT_OFFSET, 0x7fffffff);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BinaryTable.of(ByteBuffer.wrap(overflowedStringCount)));
+
+    // More strings than the buffer could have, they are not allocated.
+    byte[] largeStringCount = withInt(bytes, BinaryTableFormat.STRING_COUNT_OFFSET, 0x3fffffff);
+    assertThrows(
+        IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(largeStringCount)));
+
+    byte[] negativeNodesOffset = withInt(bytes, BinaryTableFormat.NODES_OFFSET_OFFSET, -1);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BinaryTable.of(ByteBuffer.wrap(negativeNodesOffset)));
+
+    byte[] rootOffsetOutOfRange =
+        withInt(bytes, BinaryTableFormat.ROOT_OFFSET_OFFSET, bytes.length);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BinaryTable.of(ByteBuffer.wrap(rootOffsetOutOfRange)));
+  }
+
+  @Test
+  public void of_failureDueToCorruptedStrings() {
+    byte[] bytes = BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA);
+    // The end of the first string, i.e., the spec name.
+    int firstEndOffset = BinaryTableFormat.HEADER_SIZE + Integer.BYTES;
+
+    byte[] endOutOfRange = withInt(bytes, firstEndOffset, 0x7fffffff);
+    assertThrows(
+        IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(endOutOfRange)));
+
+    byte[] decreasingEnds = withInt(bytes, firstEndOffset, -1);
+    assertThrows(
+        IllegalArgumentException.class, () -> BinaryTable.of(ByteBuffer.wrap(decreasingEnds)));
+  }
+
+  @Test
+  public void read_failureDueToCorruptedNodes() {
+    byte[] bytes = BinaryTableFormat.toBytes(TEST_METADATA, TEST_DATA);
+    int rootOffset = ByteBuffer.wrap(bytes).getInt(BinaryTableFormat.ROOT_OFFSET_OFFSET);
+    int nodesOffset = ByteBuffer.wrap(bytes).getInt(BinaryTableFormat.NODES_OFFSET_OFFSET);
+
+    // A count larger than the buffer is not allocated.
+    BinaryTable largeRowCount =
+        BinaryTable.of(ByteBuffer.wrap(withInt(bytes, rootOffset, 1 << 30)));
+    assertThrows(IllegalArgumentException.class, largeRowCount::rowCount);
+    assertThrows(IllegalArgumentException.class, largeRowCount::toTableData);
+
+    // A row which points to the root itself would loop.
+    BinaryTable cyclicRow =
+        BinaryTable.of(
+            ByteBuffer.wrap(withInt(bytes, rootOffset + Integer.BYTES, rootOffset - nodesOffset)));
+    assertThrows(IllegalArgumentException.class, () -> cyclicRow.row(0));
+    assertThrows(IllegalArgumentException.class, cyclicRow::toTableData);
+
+    BinaryTable negativeRow =
+        BinaryTable.of(ByteBuffer.wrap(withInt(bytes, rootOffset + Integer.BYTES, -1)));
+    assertThrows(IllegalArgumentException.class, negativeRow::toTableData);
+  }
+
+  private static byte[] withInt(byte[] bytes, int offset, int value) {
+    byte[] result = bytes.clone();
+    ByteBuffer.wrap(result).putInt(offset, value);
+    return result;
+  }
+}
@@ -0,0 +1,169 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BorderGridTest {
+
+  private final String TEST_EXCEL_FILE = "table_border_test_data.xlsx";
+
+  private XSSFWorkbook testWorkbook;
+  private XSSFSheet testSheet;
+
+  @Before
+  public void setUp() {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(TEST_EXCEL_FILE);
+    checkNotNull(file, String.format("Unable to find file '%s'", TEST_EXCEL_FILE));
+    try {
+      testWorkbook = new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to read Excel from file '%s'", TEST_EXCEL_FILE), e);
+    }
+    testSheet = testWorkbook.getSheetAt(0);
+    checkNotNull(testSheet, "Unable to get sheet 0 from the test Excel file");
+  }
+
+  @After
+  public void tearDown() {
+    try {
+      testWorkbook.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close test workbook");
+    }
+  }
+
+  @Test
+  public void hasTopBorder_sameAsSheetParserUtils() {
+    BorderGrid borders = BorderGrid.of(testSheet, ExcelRect.of(0, 5, 0, 5));
+    for (int row = 0; row <= 5; row++) {
+      for (int column = 0; column < 5; column++) {
+        assertEquals(
+            String.format("Unexpected top border at %s", ExcelCellIndex.of(row, column)),
+            SheetParserUtils.getColumnsWithTopBorder(testSheet, row, ImmutableSet.of(column))
+                .contains(column),
+            borders.hasTopBorder(row, column));
+      }
+    }
+  }
+
+  @Test
+  public void hasLeftBorder_sameAsSheetParserUtils() {
+    BorderGrid borders = BorderGrid.of(testSheet, ExcelRect.of(0, 5, 0, 5));
+    for (int row = 0; row < 5; row++) {
+      for (int column = 0; column <= 5; column++) {
+        assertEquals(
+            String.format("Unexpected left border at %s", ExcelCellIndex.of(row, column)),
+            SheetParserUtils.getRowsWithLeftBorder(testSheet, ImmutableSet.of(row), column)
+                .contains(row),
+            borders.hasLeftBorder(row, column));
+      }
+    }
+  }
+
+  @Test
+  public void rangeQueries_succeed() {
+    BorderGrid borders = BorderGrid.of(testSheet, ExcelRect.of(0, 5, 0, 5));
+
+    // Row 0 has top border at all columns by definition.
+    assertTrue(borders.hasTopBorder(0, 0, 5));
+    // Row 1 has top border at column 1, 2, 3, but not at other columns.
+    assertTrue(borders.hasTopBorder(1, 1, 4));
+    assertFalse(borders.hasTopBorder(1, 0, 4));
+    assertFalse(borders.hasTopBorder(1, 1, 5));
+    assertTrue(borders.hasAnyTopBorder(1, 0, 5));
+    // Row 5 has no top border at any column.
+    assertFalse(borders.hasAnyTopBorder(5, 0, 5));
+
+    // Column 0 has left border at all rows by definition.
+    assertTrue(borders.hasLeftBorder(0, 5, 0));
+    // Column 1 has left border at row 1, 2, 3, but not at other rows.
+    assertTrue(borders.hasLeftBorder(1, 4, 1));
+    assertFalse(borders.hasLeftBorder(0, 4, 1));
+    assertFalse(borders.hasLeftBorder(1, 5, 1));
+  }
+
+  @Test
+  public void nextBorders_sameAsScan() {
+    BorderGrid borders = BorderGrid.of(testSheet, ExcelRect.of(0, 5, 0, 5));
+    assertNextBordersSameAsScan(borders);
+  }
+
+  @Test
+  public void nextBorders_sameAsScanAcrossWords() {
+    // Borders at every 7th row and every 5th column of a grid wider and taller than 64 cells.
+    ExcelRect rect = ExcelRect.of(3, 200, 2, 150);
+    BorderGrid borders =
+        BorderGrid.of(
+            rect,
+            (row, column) ->
+                (row % 7 == 0 ? SheetParserUtils.TOP_BORDER : 0)
+                    | (column % 5 == 0 ? SheetParserUtils.LEFT_BORDER : 0));
+    assertNextBordersSameAsScan(borders);
+    assertEquals(7, borders.nextTopBorderRow(3, 10));
+    assertEquals(201, borders.nextTopBorderRow(196, 10));
+    assertEquals(5, borders.nextLeftBorderColumn(10, 2));
+    assertEquals(151, borders.nextLeftBorderColumn(10, 150));
+  }
+
+  private static void assertNextBordersSameAsScan(BorderGrid borders) {
+    ExcelRect rect = borders.rect();
+    for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
+      for (int row = rect.beginRow(); row <= rect.endRow(); row++) {
+        int expected = row + 1;
+        while (expected <= rect.endRow() && !borders.hasTopBorder(expected, column)) {
+          expected++;
+        }
+        assertEquals(
+            String.format("Unexpected next top border of %s", ExcelCellIndex.of(row, column)),
+            expected,
+            borders.nextTopBorderRow(row, column));
+      }
+    }
+    for (int row = rect.beginRow(); row < rect.endRow(); row++) {
+      for (int column = rect.beginColumn(); column <= rect.endColumn(); column++) {
+        int expected = column + 1;
+        while (expected <= rect.endColumn() && !borders.hasLeftBorder(row, expected)) {
+          expected++;
+        }
+        assertEquals(
+            String.format("Unexpected next left border of %s", ExcelCellIndex.of(row, column)),
+            expected,
+            borders.nextLeftBorderColumn(row, column));
+      }
+    }
+  }
+
+  @Test
+  public void rangeQueries_fail() {
+    BorderGrid borders = BorderGrid.of(testSheet, ExcelRect.of(1, 4, 1, 4));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasTopBorder(0, 1, 4));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasTopBorder(5, 1, 4));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasTopBorder(1, 0, 4));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasTopBorder(1, 1, 5));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasTopBorder(1, 2, 2));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasLeftBorder(0, 4, 1));
+    assertThrows(IllegalArgumentException.class, () -> borders.hasLeftBorder(1, 4, 5));
+    assertThrows(IllegalArgumentException.class, () -> borders.nextTopBorderRow(5, 1));
+    assertThrows(IllegalArgumentException.class, () -> borders.nextTopBorderRow(1, 4));
+    assertThrows(IllegalArgumentException.class, () -> borders.nextLeftBorderColumn(4, 1));
+    assertThrows(IllegalArgumentException.class, () -> borders.nextLeftBorderColumn(1, 5));
+  }
+
+  @Test
+  public void of_fail() {
+    assertThrows(NullPointerException.class, () -> BorderGrid.of(null, ExcelRect.of(0, 1, 0, 1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BorderGrid.of(testSheet, ExcelRect.of(0, Integer.MAX_VALUE, 0, 1)));
+  }
+}
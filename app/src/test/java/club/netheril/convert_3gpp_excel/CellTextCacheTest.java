@@ -0,0 +1,123 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CellTextCacheTest {
+
+  private final String TEST_EXCEL_FILE = "table_border_test_data.xlsx";
+
+  private XSSFWorkbook testWorkbook;
+  private XSSFSheet testSheet;
+
+  @Before
+  public void setUp() {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(TEST_EXCEL_FILE);
+    checkNotNull(file, String.format("Unable to find file '%s'", TEST_EXCEL_FILE));
+    try {
+      testWorkbook = new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to read Excel from file '%s'", TEST_EXCEL_FILE), e);
+    }
+    testSheet = testWorkbook.getSheetAt(0);
+    checkNotNull(testSheet, "Unable to get sheet 0 from the test Excel file");
+  }
+
+  @After
+  public void tearDown() {
+    try {
+      testWorkbook.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close test workbook");
+    }
+  }
+
+  @Test
+  public void sharedString_sameAsRichTextToString() {
+    SharedStringsTable sharedStrings = testWorkbook.getSharedStringSource();
+    CellTextCache texts = CellTextCache.of(sharedStrings);
+    for (int i = 0; i < sharedStrings.getUniqueCount(); i++) {
+      String expected;
+      try {
+        expected =
+            SheetParserUtils.richTextToString(
+                (XSSFRichTextString) sharedStrings.getItemAt(i), 0, 0);
+      } catch (IllegalArgumentException e) {
+        final int index = i;
+        assertThrows(IllegalArgumentException.class, () -> texts.sharedString(index, 0, 0));
+        continue;
+      }
+      String actual = texts.sharedString(i, 0, 0);
+      assertEquals(expected, actual);
+      // The decoded string is memoized.
+      assertSame(actual, texts.sharedString(i, 0, 0));
+    }
+  }
+
+  @Test
+  public void sharedString_fail() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CellTextCache.of(testWorkbook.getSharedStringSource()).sharedString(-1, 0, 0));
+    assertThrows(
+        IllegalArgumentException.class, () -> CellTextCache.of(null).sharedString(0, 0, 0));
+  }
+
+  @Test
+  public void numeric_formattedOnceAndInterned() {
+    CellTextCache texts = CellTextCache.of(null);
+    assertEquals("123", texts.numeric(123));
+    assertEquals("4.567", texts.numeric(4.567));
+    assertSame(texts.numeric(123), texts.numeric(123.0));
+    // Numeric strings and text strings share instances.
+    assertSame(texts.numeric(123), texts.intern(new String("123")));
+  }
+
+  @Test
+  public void numeric_manyValues() {
+    CellTextCache texts = CellTextCache.of(null);
+    ArrayList<String> first = new ArrayList<>();
+    // More values than the initial capacity, so the table grows.
+    for (int i = 0; i < 1000; i++) {
+      first.add(texts.numeric(i * 5.0));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(SheetParserUtils.numericToString(i * 5.0), first.get(i));
+      assertSame(first.get(i), texts.numeric(i * 5.0));
+    }
+    assertEquals("0", texts.numeric(-0.0));
+  }
+
+  @Test
+  public void intern_sameInstance() {
+    CellTextCache texts = CellTextCache.of(null);
+    String first = texts.intern(new String("DC_7A_n7A"));
+    assertSame(first, texts.intern(new String("DC_7A_n7A")));
+    assertNotSame(first, texts.intern(new String("DC_7A_n7B")));
+  }
+
+  @Test
+  public void safeGetCellString_sameWithAndWithoutCache() {
+    CellTextCache texts = CellTextCache.of(testWorkbook.getSharedStringSource());
+    for (int row = 0; row < 5; row++) {
+      for (int column = 0; column < 5; column++) {
+        assertEquals(
+            String.format("Unexpected cell value at %s", ExcelCellIndex.of(row, column)),
+            SheetParserUtils.safeGetCellString(testSheet, row, column),
+            SheetParserUtils.safeGetCellString(testSheet, row, column, texts));
+      }
+    }
+  }
+}
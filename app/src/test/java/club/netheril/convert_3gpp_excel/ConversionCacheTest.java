@@ -0,0 +1,206 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConversionCacheTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final ParsedTable TEST_TABLE =
+      ParsedTable.of(
+          TableMetadata.builder()
+              .setSpecName("38.101-3")
+              .setSpecVersion("h50")
+              .setTableSerialNumber("5.3B.1.3-1")
+              .setTableTitle("")
+              .setTableDataRect(ExcelRect.of("A6", "G20"))
+              .build(),
+          TableData.of(
+              TableRow.of(
+                  TableColumn.leaf("DC_7A_n7A"),
+                  TableColumn.parent(
+                      TableRow.of(TableColumn.leaf("20"), TableColumn.empty()),
+                      TableRow.of(TableColumn.leaf("40, 60, 80, 100"))))));
+  private static final ImmutableList<ParsedTable> TEST_TABLES = ImmutableList.of(TEST_TABLE);
+
+  private Path cacheDirectory;
+  private final AtomicInteger conversions = new AtomicInteger();
+  private final Function<WorkbookSource, ImmutableList<ParsedTable>> converter =
+      source -> {
+        conversions.incrementAndGet();
+        return TEST_TABLES;
+      };
+
+  @Before
+  public void setUp() {
+    cacheDirectory = tempFolder.getRoot().toPath().resolve("cache");
+  }
+
+  private Path createWorkbook(String name, String content) throws IOException {
+    Path file = tempFolder.getRoot().toPath().resolve(name);
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void getOrConvert_convertsOnlyOnce() throws IOException {
+    Path workbook = createWorkbook("a.xlsx", "workbook a");
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 1 << 20);
+
+    assertEquals(TEST_TABLES, cache.getOrConvert(workbook, converter));
+    assertEquals(TEST_TABLES, cache.getOrConvert(workbook, converter));
+    assertEquals(1, conversions.get());
+
+    // The cache persists across instances, e.g., the next run.
+    ConversionCache reopened = ConversionCache.open(cacheDirectory, 1 << 20);
+    assertEquals(TEST_TABLES, reopened.getOrConvert(workbook, converter));
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  public void getOrConvert_keyedByContent() throws IOException {
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    cache.getOrConvert(createWorkbook("a.xlsx", "workbook a"), converter);
+
+    // A copy with another name hits the cache.
+    cache.getOrConvert(createWorkbook("copy_of_a.xlsx", "workbook a"), converter);
+    assertEquals(1, conversions.get());
+
+    // A changed workbook misses the cache.
+    cache.getOrConvert(createWorkbook("a.xlsx", "workbook a, changed"), converter);
+    assertEquals(2, conversions.get());
+  }
+
+  @Test
+  public void getOrConvert_parsesHashedBytes() throws IOException {
+    byte[] original = readResource("table_5.3B.1.3-1.xlsx");
+    byte[] saved = readResource("table_5.6A.1-2.xlsx");
+    Path workbook = tempFolder.getRoot().toPath().resolve("a.xlsx");
+    Files.write(workbook, original);
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 1 << 20);
+
+    // The workbook is saved again after it is hashed and before it is parsed.
+    ImmutableList<ParsedTable> tables =
+        cache.getOrConvert(
+            workbook,
+            source -> {
+              try {
+                Files.write(workbook, saved);
+                return App.parseExcelTables(source, null);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+
+    ImmutableList<ParsedTable> expected =
+        App.parseExcelTables(WorkbookSource.of(original, "original"), null);
+    assertEquals(expected, tables);
+    // The table is stored under the key of the bytes which are parsed.
+    assertEquals(
+        ImmutableList.of(
+            cacheDirectory.resolve(
+                ConversionCache.keyOf(original) + ConversionCache.ENTRY_SUFFIX)),
+        cache.entries());
+    assertEquals(expected, cache.get(ConversionCache.keyOf(original)));
+    assertNull(cache.get(ConversionCache.keyOf(saved)));
+  }
+
+  private byte[] readResource(String fileName) throws IOException {
+    try (InputStream file = getClass().getClassLoader().getResourceAsStream(fileName)) {
+      return file.readAllBytes();
+    }
+  }
+
+  @Test
+  public void keyOf_includesVersions() throws IOException {
+    String key = ConversionCache.keyOf(createWorkbook("a.xlsx", "workbook a"));
+    assertTrue(
+        key,
+        key.endsWith(
+            String.format(
+                "-p%d-f%d", ConversionCache.PARSER_VERSION, BinaryTableFormat.VERSION)));
+    assertEquals(key, ConversionCache.keyOf(createWorkbook("b.xlsx", "workbook a")));
+    assertNotEquals(key, ConversionCache.keyOf(createWorkbook("c.xlsx", "workbook c")));
+  }
+
+  @Test
+  public void getOrConvert_corruptedEntryIsMiss() throws IOException {
+    Path workbook = createWorkbook("a.xlsx", "workbook a");
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    cache.getOrConvert(workbook, converter);
+    Path entry = cache.entries().get(0);
+    byte[] bytes = Files.readAllBytes(entry);
+    Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+    assertEquals(TEST_TABLES, cache.getOrConvert(workbook, converter));
+    assertEquals(2, conversions.get());
+    // The entry is written again.
+    assertEquals(TEST_TABLES, cache.getOrConvert(workbook, converter));
+    assertEquals(2, conversions.get());
+  }
+
+  @Test
+  public void put_multipleTables() throws IOException {
+    ParsedTable other =
+        ParsedTable.of(
+            TableMetadata.builder()
+                .setSpecName("38.101-3")
+                .setSpecVersion("h50")
+                .setTableSerialNumber("5.3B.1.3-2")
+                .setTableTitle("")
+                .setTableDataRect(ExcelRect.of("A6", "A6"))
+                .build(),
+            TableData.of(TableRow.of(TableColumn.leaf("DC_1A_n78A"))));
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    cache.put("key", ImmutableList.of(TEST_TABLE, other));
+
+    assertEquals(ImmutableList.of(TEST_TABLE, other), cache.get("key"));
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsed() throws IOException {
+    long entrySize = BinaryTableFormat.toBytes(TEST_TABLE.metadata(), TEST_TABLE.data()).length;
+    // Room for two entries.
+    ConversionCache cache = ConversionCache.open(cacheDirectory, 2 * entrySize + 1);
+    String[] keys = {"key0", "key1", "key2"};
+    cache.put(keys[0], TEST_TABLES);
+    cache.put(keys[1], TEST_TABLES);
+    long now = System.currentTimeMillis();
+    Files.setLastModifiedTime(
+        cacheDirectory.resolve(keys[0] + ConversionCache.ENTRY_SUFFIX),
+        FileTime.fromMillis(now - 20_000));
+    Files.setLastModifiedTime(
+        cacheDirectory.resolve(keys[1] + ConversionCache.ENTRY_SUFFIX),
+        FileTime.fromMillis(now - 10_000));
+
+    // Using key0 makes key1 the least recently used one.
+    assertNotNull(cache.get(keys[0]));
+    cache.put(keys[2], TEST_TABLES);
+
+    assertEquals(2, cache.entries().size());
+    assertNotNull(cache.get(keys[0]));
+    assertNull(cache.get(keys[1]));
+    assertNotNull(cache.get(keys[2]));
+  }
+
+  @Test
+  public void open_failureDueToInvalidMaxBytes() {
+    assertThrows(IllegalArgumentException.class, () -> ConversionCache.open(cacheDirectory, 0));
+  }
+}
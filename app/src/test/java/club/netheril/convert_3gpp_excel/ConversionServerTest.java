@@ -0,0 +1,212 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConversionServerTest {
+
+  private static final String TEST_FILE_NAME = "table_5.3B.1.3-1.xlsx";
+
+  private static final TableData TEST_DATA = TableData.of(TableRow.of(TableColumn.leaf("20")));
+  private static final ImmutableList<ParsedTable> TEST_TABLES =
+      ImmutableList.of(testTable("5.3B.1.3-1", TEST_DATA));
+
+  private static ParsedTable testTable(String tableSerialNumber, TableData data) {
+    return ParsedTable.of(
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber(tableSerialNumber)
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A1", "A1"))
+            .build(),
+        data);
+  }
+
+  private final HttpClient client = HttpClient.newHttpClient();
+  private ConversionServer server;
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private byte[] readTestFile(String fileName) throws IOException {
+    try (InputStream file = getClass().getClassLoader().getResourceAsStream(fileName)) {
+      if (file == null) {
+        throw new RuntimeException(String.format("Unable to find file '%s'", fileName));
+      }
+      return file.readAllBytes();
+    }
+  }
+
+  private void startServer(
+      int workers, int queueCapacity, Function<byte[], ImmutableList<ParsedTable>> converter)
+      throws IOException {
+    server =
+        ConversionServer.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+            workers,
+            queueCapacity,
+            1 << 20,
+            converter);
+  }
+
+  private HttpRequest convertRequest(byte[] body) {
+    return HttpRequest.newBuilder(
+            URI.create(
+                String.format(
+                    "http://localhost:%d%s",
+                    server.address().getPort(), ConversionServer.CONVERT_PATH)))
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+        .build();
+  }
+
+  private HttpResponse<String> post(byte[] body) throws IOException, InterruptedException {
+    return client.send(convertRequest(body), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static String toJson(TableData data) throws IOException {
+    StringBuilder json = new StringBuilder();
+    TableDataWriter.write(data, TableDataWriter.Format.JSON, json);
+    return json.toString();
+  }
+
+  @Test
+  public void convert_respondsJson() throws Exception {
+    startServer(2, 2, ConversionServer::convertWorkbook);
+    byte[] workbookBytes = readTestFile(TEST_FILE_NAME);
+    TableData expected;
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(workbookBytes))) {
+      expected = TableSheetParser.parse(workbook, MetadataSheetParser.parse(workbook));
+    }
+
+    HttpResponse<String> response = post(workbookBytes);
+
+    assertEquals(200, response.statusCode());
+    assertEquals(toJson(expected), response.body());
+  }
+
+  @Test
+  public void convert_respondsLinePerTable() throws Exception {
+    TableData otherData = TableData.of(TableRow.of(TableColumn.leaf("40")));
+    startServer(
+        1,
+        0,
+        bytes ->
+            ImmutableList.of(
+                testTable("5.3B.1.3-1", TEST_DATA), testTable("5.3B.1.3-2", otherData)));
+
+    HttpResponse<String> response = post(new byte[] {1, 2, 3});
+
+    assertEquals(200, response.statusCode());
+    assertEquals(
+        "application/x-ndjson; charset=utf-8",
+        response.headers().firstValue("Content-Type").orElse(null));
+    StringBuilder expected = new StringBuilder();
+    TableDataWriter.write(
+        TEST_DATA, TableDataWriter.Format.JSON, "request body#5.3B.1.3-1", expected);
+    expected.append('\n');
+    TableDataWriter.write(
+        otherData, TableDataWriter.Format.JSON, "request body#5.3B.1.3-2", expected);
+    expected.append('\n');
+    assertEquals(expected.toString(), response.body());
+  }
+
+  @Test
+  public void convert_invalidWorkbookIsBadRequest() throws Exception {
+    startServer(1, 0, ConversionServer::convertWorkbook);
+
+    HttpResponse<String> response = post("not a workbook".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(400, response.statusCode());
+  }
+
+  @Test
+  public void convert_cachedByContent() throws Exception {
+    AtomicInteger conversions = new AtomicInteger();
+    startServer(
+        1,
+        0,
+        bytes -> {
+          conversions.incrementAndGet();
+          return TEST_TABLES;
+        });
+
+    assertEquals(toJson(TEST_DATA), post(new byte[] {1, 2, 3}).body());
+    assertEquals(toJson(TEST_DATA), post(new byte[] {1, 2, 3}).body());
+    assertEquals(1, conversions.get());
+    post(new byte[] {4, 5, 6});
+    assertEquals(2, conversions.get());
+  }
+
+  @Test
+  public void convert_shedsLoadWhenQueueIsFull() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    startServer(
+        1,
+        1,
+        bytes -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+          return TEST_TABLES;
+        });
+
+    // One request is being converted and the other one is queued.
+    CompletableFuture<HttpResponse<String>> first =
+        client.sendAsync(convertRequest(new byte[] {1}), HttpResponse.BodyHandlers.ofString());
+    CompletableFuture<HttpResponse<String>> second =
+        client.sendAsync(convertRequest(new byte[] {2}), HttpResponse.BodyHandlers.ofString());
+    while (server.admittedCount() < 2) {
+      Thread.sleep(10);
+    }
+
+    HttpResponse<String> rejected = post(new byte[] {3});
+    assertEquals(503, rejected.statusCode());
+    assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+
+    release.countDown();
+    assertEquals(200, first.get().statusCode());
+    assertEquals(200, second.get().statusCode());
+  }
+
+  @Test
+  public void convert_onlyPost() throws Exception {
+    startServer(1, 0, bytes -> TEST_TABLES);
+
+    HttpResponse<String> response =
+        client.send(
+            HttpRequest.newBuilder(convertRequest(new byte[0]).uri()).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+    assertEquals(405, response.statusCode());
+  }
+
+  @Test
+  public void start_failureDueToInvalidWorkerCount() {
+    assertThrows(IllegalArgumentException.class, () -> startServer(0, 1, bytes -> TEST_TABLES));
+  }
+}
@@ -0,0 +1,228 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CorpusStoreTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static TableMetadata metadata(String specVersion, String tableSerialNumber) {
+    return TableMetadata.builder()
+        .setSpecName("38.101-3")
+        .setSpecVersion(specVersion)
+        .setTableSerialNumber(tableSerialNumber)
+        .setTableTitle("Täble " + tableSerialNumber)
+        .setTableDataRect(ExcelRect.of("A6", "G20"))
+        .build();
+  }
+
+  private static TableData data(String firstCell) {
+    return TableData.of(
+        TableRow.of(
+            TableColumn.leaf(firstCell),
+            TableColumn.parent(
+                TableRow.of(TableColumn.leaf("5,10,15,20"), TableColumn.empty()),
+                TableRow.of(TableColumn.leaf("20", "40")))));
+  }
+
+  private Path newStore() {
+    return tempFolder.getRoot().toPath().resolve("corpus.3gps");
+  }
+
+  @Test
+  public void get_succeed() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("DC_7A_n7A"));
+      writer.put(ParsedTable.of(metadata("h50", "5.3B.1.3-10"), data("DC_1A_n78A")));
+      writer.put(metadata("h5", "5.3B.1.3-1"), data("DC_3A_n78A"));
+    }
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(3, store.size());
+      BinaryTable table = store.get("38.101-3", "h50", "5.3B.1.3-1");
+      assertEquals(metadata("h50", "5.3B.1.3-1"), table.metadata());
+      assertEquals(data("DC_7A_n7A"), table.toTableData());
+      assertEquals(
+          data("DC_1A_n78A"),
+          store.get(CorpusStore.Key.parse("38.101-3/h50/5.3B.1.3-10")).toTableData());
+      assertEquals(data("DC_3A_n78A"), store.get("38.101-3", "h5", "5.3B.1.3-1").toTableData());
+      assertNull(store.get("38.101-3", "h50", "5.3B.1.3-2"));
+      assertNull(store.get("38.101-1", "h50", "5.3B.1.3-1"));
+    }
+  }
+
+  @Test
+  public void keys_sortedBySpecThenVersionThenSerialNumber() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+      writer.put(metadata("h50", "5.3B.1.3-10"), data("b"));
+      writer.put(metadata("h5", "5.3B.1.3-2"), data("c"));
+    }
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(
+          ImmutableList.of(
+              CorpusStore.Key.parse("38.101-3/h5/5.3B.1.3-2"),
+              CorpusStore.Key.parse("38.101-3/h50/5.3B.1.3-1"),
+              CorpusStore.Key.parse("38.101-3/h50/5.3B.1.3-10")),
+          store.keys());
+    }
+  }
+
+  @Test
+  public void open_emptyStore() throws IOException {
+    Path file = newStore();
+    CorpusStore.append(file).close();
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(0, store.size());
+      assertEquals(ImmutableList.of(), store.keys());
+      assertNull(store.get("38.101-3", "h50", "5.3B.1.3-1"));
+    }
+  }
+
+  @Test
+  public void append_supersedesTableOfSameKey() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("old"));
+      writer.put(metadata("h50", "5.3B.1.3-2"), data("other"));
+    }
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("new"));
+    }
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(2, store.size());
+      assertEquals(data("new"), store.get("38.101-3", "h50", "5.3B.1.3-1").toTableData());
+      assertEquals(data("other"), store.get("38.101-3", "h50", "5.3B.1.3-2").toTableData());
+    }
+  }
+
+  @Test
+  public void open_whileWriting_readsLastIndex() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+    }
+
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-2"), data("b"));
+      try (CorpusStore store = CorpusStore.open(file)) {
+        assertEquals(1, store.size());
+        assertEquals(data("a"), store.get("38.101-3", "h50", "5.3B.1.3-1").toTableData());
+      }
+    }
+  }
+
+  @Test
+  public void append_failureDueToAnotherWriter() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      assertThrows(IOException.class, () -> CorpusStore.append(file));
+    }
+  }
+
+  @Test
+  public void append_recoversTablesOfCrashedWriter() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+    }
+    // A crashed writer has appended a table and a part of another one, but no index.
+    byte[] table = BinaryTableFormat.toBytes(metadata("h50", "5.3B.1.3-2"), data("b"));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(table));
+      channel.write(ByteBuffer.wrap(table, 0, table.length / 2));
+    }
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(1, store.size());
+    }
+
+    CorpusStore.append(file).close();
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(2, store.size());
+      assertEquals(data("b"), store.get("38.101-3", "h50", "5.3B.1.3-2").toTableData());
+    }
+  }
+
+  @Test
+  public void append_skipsCorruptedTableOfCrashedWriter() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+    }
+    // A crashed writer has appended a complete frame whose string count is corrupted, then a
+    // valid table.
+    byte[] corrupted = BinaryTableFormat.toBytes(metadata("h50", "5.3B.1.3-2"), data("b"));
+    ByteBuffer.wrap(corrupted).putInt(BinaryTableFormat.STRING_COUNT_OFFSET, 0x7fffffff);
+    byte[] table = BinaryTableFormat.toBytes(metadata("h50", "5.3B.1.3-3"), data("c"));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(corrupted));
+      channel.write(ByteBuffer.wrap(table));
+    }
+
+    CorpusStore.append(file).close();
+
+    try (CorpusStore store = CorpusStore.open(file)) {
+      assertEquals(2, store.size());
+      assertNull(store.get("38.101-3", "h50", "5.3B.1.3-2"));
+      assertEquals(data("c"), store.get("38.101-3", "h50", "5.3B.1.3-3").toTableData());
+    }
+  }
+
+  @Test
+  public void append_withoutTablesKeepsFileSize() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+    }
+    long size = Files.size(file);
+
+    CorpusStore.append(file).close();
+
+    assertEquals(size, Files.size(file));
+  }
+
+  @Test
+  public void open_failureDueToInvalidFile() throws IOException {
+    Path file = tempFolder.newFile("invalid.3gps").toPath();
+    Files.write(file, new byte[] {1, 2, 3});
+
+    assertThrows(IllegalArgumentException.class, () -> CorpusStore.open(file));
+    assertThrows(IllegalArgumentException.class, () -> CorpusStore.append(file));
+  }
+
+  @Test
+  public void open_failureDueToCorruptedIndexOffset() throws IOException {
+    Path file = newStore();
+    try (CorpusStore.Writer writer = CorpusStore.append(file)) {
+      writer.put(metadata("h50", "5.3B.1.3-1"), data("a"));
+    }
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[CorpusStore.INDEX_OFFSET_OFFSET + Long.BYTES - 1] ^= 0x55;
+    Files.write(file, bytes);
+
+    assertThrows(IllegalArgumentException.class, () -> CorpusStore.open(file));
+  }
+
+  @Test
+  public void keyParse_failureDueToMissingPart() {
+    assertThrows(IllegalArgumentException.class, () -> CorpusStore.Key.parse("38.101-3/h50"));
+    assertEquals("5.3B/1", CorpusStore.Key.parse("38.101-3/h50/5.3B/1").tableSerialNumber());
+  }
+}
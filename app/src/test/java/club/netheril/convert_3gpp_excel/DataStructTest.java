@@ -43,4 +43,52 @@ public class DataStructTest {
   public void parseExcelCellName_fail() {
     assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.of("12A"));
   }
+
+  @Test
+  public void packedCellIndex_succeed() {
+    long packed = ExcelCellIndex.pack(1000, 27);
+    assertEquals(1000, ExcelCellIndex.packedRow(packed));
+    assertEquals(27, ExcelCellIndex.packedColumn(packed));
+    assertEquals(ExcelCellIndex.of(1000, 27), ExcelCellIndex.ofPacked(packed));
+    assertEquals(packed, ExcelCellIndex.of("AB1001").packed());
+    assertEquals(packed, ExcelCellIndex.parsePacked("AB1001"));
+
+    // Packed indexes sort in row-major order.
+    assertTrue(ExcelCellIndex.pack(0, 100) < ExcelCellIndex.pack(1, 0));
+    assertTrue(ExcelCellIndex.pack(1, 0) < ExcelCellIndex.pack(1, 1));
+  }
+
+  @Test
+  public void parsePackedCellName_fail() {
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked(""));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("A"));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("12"));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("A0"));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("a1"));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("A1B"));
+    assertThrows(IllegalArgumentException.class, () -> ExcelCellIndex.parsePacked("A99999999999"));
+  }
+
+  @Test
+  public void excelRectPrimitiveOperations_succeed() {
+    ExcelRect rect = ExcelRect.of("B3", "D7");
+    assertEquals(5, rect.rowCount());
+    assertEquals(3, rect.columnCount());
+    assertEquals(15, rect.cellCount());
+
+    assertTrue(rect.contains(2, 1));
+    assertTrue(rect.contains(6, 3));
+    assertFalse(rect.contains(1, 1));
+    assertFalse(rect.contains(7, 3));
+    assertFalse(rect.contains(2, 0));
+    assertFalse(rect.contains(2, 4));
+
+    assertTrue(rect.contains(rect));
+    assertTrue(rect.contains(ExcelRect.of("C4", "D5")));
+    assertFalse(rect.contains(ExcelRect.of("A4", "D5")));
+
+    assertEquals(0, rect.offsetOf(2, 1));
+    assertEquals(4, rect.offsetOf(3, 2));
+    assertEquals(14, rect.offsetOf(6, 3));
+  }
 }
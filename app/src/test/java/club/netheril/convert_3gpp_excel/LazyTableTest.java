@@ -0,0 +1,111 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class LazyTableTest {
+
+  private static final int ALL_BORDERS =
+      SheetParserUtils.TOP_BORDER
+          | SheetParserUtils.BOTTOM_BORDER
+          | SheetParserUtils.LEFT_BORDER
+          | SheetParserUtils.RIGHT_BORDER;
+
+  private XSSFWorkbook openExcelFile(String fileName) {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
+    if (file == null) {
+      throw new RuntimeException(String.format("Unable to find file '%s'", fileName));
+    }
+    try {
+      return new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new RuntimeException(String.format("Unable to read Excel from file '%s'", fileName), e);
+    }
+  }
+
+  private void assertSameAsParse(String fileName, ExcelRect rect) throws IOException {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("")
+            .setSpecVersion("")
+            .setTableSerialNumber("")
+            .setTableTitle("")
+            .setTableDataRect(rect)
+            .build();
+    try (XSSFWorkbook workbook = openExcelFile(fileName)) {
+      TableData expected = TableSheetParser.parse(workbook, metadata);
+      assertEquals(expected, TableSheetParser.parseLazy(workbook, metadata).toTableData());
+
+      CellTextCache texts = CellTextCache.of(workbook.getSharedStringSource());
+      SheetSnapshot snapshot =
+          SheetSnapshot.of(workbook.getSheet(TableSheetParser.SHEET_NAME), rect, texts);
+      assertEquals(expected, TableSheetParser.parseLazy(snapshot).toTableData());
+    }
+  }
+
+  @Test
+  public void toTableData_sameAsParse() throws IOException {
+    assertSameAsParse("table_5.3B.1.3-1.xlsx", ExcelRect.of("A6", "G20"));
+  }
+
+  @Test
+  public void toTableData_sameAsParseOnWide() throws IOException {
+    assertSameAsParse("table_5.6A.1-2.xlsx", ExcelRect.of("A4", "AF11"));
+  }
+
+  @Test
+  public void columns_sameAsTableColumns() throws IOException {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("")
+            .setSpecVersion("")
+            .setTableSerialNumber("")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A6", "G20"))
+            .build();
+    try (XSSFWorkbook workbook = openExcelFile("table_5.3B.1.3-1.xlsx")) {
+      TableData expected = TableSheetParser.parse(workbook, metadata);
+      LazyTable actual = TableSheetParser.parseLazy(workbook, metadata);
+      assertEquals(expected.rows().size(), actual.rows().size());
+      for (int row = 0; row < expected.rows().size(); row++) {
+        TableRow expectedRow = expected.rows().get(row);
+        LazyTable.Row actualRow = actual.rows().get(row);
+        assertEquals(expectedRow.columns().size(), actualRow.columns().size());
+        for (int column = 0; column < expectedRow.columns().size(); column++) {
+          TableColumn expectedColumn = expectedRow.columns().get(column);
+          LazyTable.Column actualColumn = actualRow.columns().get(column);
+          assertEquals(expectedColumn.type(), actualColumn.type());
+          assertEquals(expectedColumn.cells(), actualColumn.cells());
+          assertEquals(
+              expectedColumn.type() == TableColumn.Type.PARENT, actualColumn.isParent());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void cells_readOnAccess() {
+    // A table of one logical row with two leaf columns, the second one has an unsupported cell.
+    ExcelRect rect = ExcelRect.of("A2", "B2");
+    SheetSnapshot.Builder builder = SheetSnapshot.builder(rect);
+    builder.addCell(1, 0, ALL_BORDERS, "DC_7A_n7A");
+    builder.addUnsupportedCell(1, 1, ALL_BORDERS, "Unsupported formula cell B2");
+    LazyTable table = TableSheetParser.parseLazy(builder.build());
+
+    // The structure is parsed without reading cells.
+    assertEquals(1, table.rows().size());
+    LazyTable.Row row = table.rows().get(0);
+    assertEquals(2, row.columns().size());
+    assertEquals(ExcelRect.of("B2", "B2"), row.columns().get(1).rect());
+    assertFalse(row.columns().get(1).isParent());
+
+    assertEquals(TableColumn.leaf("DC_7A_n7A"), row.columns().get(0).toTableColumn());
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> row.columns().get(1).cells());
+    assertEquals("Unsupported formula cell B2", e.getMessage());
+  }
+}
@@ -3,6 +3,7 @@ package club.netheril.convert_3gpp_excel;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.junit.Assert.*;
 
+import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -52,4 +53,74 @@ public class MetadataSheetParserTest {
     TableMetadata actual = MetadataSheetParser.parse(testWorkbook);
     assertEquals(expected, actual);
   }
+
+  // Cells of a metadata sheet given as key-value rows.
+  private static CellTextSource metadataCells(String[][] rows) {
+    return (row, column) ->
+        row < rows.length && column < rows[row].length ? rows[row][column] : "";
+  }
+
+  @Test
+  public void parseAll_multipleTables() {
+    String[][] rows = {
+      {"Spec", "38.101-3"},
+      {"Version", "h50"},
+      {"Number", "5.3B.1.3-1"},
+      {"Title", "First"},
+      {"Top left", "A6"},
+      {"Bottom right", "G20"},
+      {"", ""},
+      {"Spec", "38.101-3"},
+      {"Version", "h50"},
+      {"Number", "5.3B.1.3-2"},
+      {"Title", "Second"},
+      {"Sheet", "Table 2"},
+      {"Top left", "B3"},
+      {"Bottom right", "F40"},
+    };
+    assertEquals(
+        ImmutableList.of(
+            TableMetadata.builder()
+                .setSpecName("38.101-3")
+                .setSpecVersion("h50")
+                .setTableSerialNumber("5.3B.1.3-1")
+                .setTableTitle("First")
+                .setTableDataRect(ExcelRect.of("A6", "G20"))
+                .build(),
+            TableMetadata.builder()
+                .setSpecName("38.101-3")
+                .setSpecVersion("h50")
+                .setTableSerialNumber("5.3B.1.3-2")
+                .setTableTitle("Second")
+                .setTableSheetName("Table 2")
+                .setTableDataRect(ExcelRect.of("B3", "F40"))
+                .build()),
+        MetadataSheetParser.parseAll(metadataCells(rows), rows.length - 1));
+
+    // parse() expects exactly one table.
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MetadataSheetParser.parse(metadataCells(rows), rows.length - 1));
+  }
+
+  @Test
+  public void parseAll_sameAsParseOnOneTable() {
+    assertEquals(
+        ImmutableList.of(MetadataSheetParser.parse(testWorkbook)),
+        MetadataSheetParser.parseAll(testWorkbook));
+  }
+
+  @Test
+  public void parseAll_failureDueToMissingRect() {
+    String[][] rows = {
+      {"Spec", "38.101-3"},
+      {"Top left", "A6"},
+      {"Bottom right", "G20"},
+      {"Spec", "38.101-3"},
+      {"Top left", "A6"},
+    };
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MetadataSheetParser.parseAll(metadataCells(rows), rows.length - 1));
+  }
 }
@@ -0,0 +1,153 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import club.netheril.convert_3gpp_excel.TableSheetParser.Validation;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParserStatsTest {
+
+  private static final TableMetadata TEST_METADATA =
+      TableMetadata.builder()
+          .setSpecName("")
+          .setSpecVersion("")
+          .setTableSerialNumber("")
+          .setTableTitle("")
+          .setTableDataRect(ExcelRect.of("A6", "G20"))
+          .build();
+
+  private XSSFWorkbook openExcelFile(String fileName) {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
+    if (file == null) {
+      throw new RuntimeException(String.format("Unable to find file '%s'", fileName));
+    }
+    try {
+      return new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new RuntimeException(String.format("Unable to read Excel from file '%s'", fileName), e);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    ParserStats.reset();
+  }
+
+  @Test
+  public void histogram_exactForSmallValues() {
+    ParserStats.Histogram histogram = new ParserStats.Histogram();
+    for (long value : ImmutableList.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)) {
+      histogram.record(value);
+    }
+    ParserStats.Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(10, snapshot.count());
+    assertEquals(5, snapshot.percentile(50));
+    assertEquals(9, snapshot.percentile(90));
+    assertEquals(10, snapshot.percentile(99));
+    assertEquals(1, snapshot.percentile(0));
+    assertEquals(10, snapshot.max());
+  }
+
+  @Test
+  public void histogram_boundedRelativeError() {
+    ParserStats.Histogram histogram = new ParserStats.Histogram();
+    for (long millis = 1; millis <= 1000; millis++) {
+      histogram.record(millis * 1_000_000);
+    }
+    ParserStats.Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.count());
+    for (int percent : new int[] {1, 50, 90, 99}) {
+      long actual = percent * 10 * 1_000_000L;
+      long estimate = snapshot.percentile(percent);
+      assertTrue(estimate + " of p" + percent, estimate >= actual);
+      assertTrue(estimate + " of p" + percent, estimate <= actual + actual / 16);
+    }
+    assertEquals(1000_000_000L, snapshot.percentile(100));
+    assertEquals(1000_000_000L, snapshot.max());
+  }
+
+  @Test
+  public void histogram_bucketsCoverAllValues() {
+    for (long value :
+        ImmutableList.of(0L, 15L, 16L, 17L, 31L, 32L, 1L << 40, (1L << 40) + 1, Long.MAX_VALUE)) {
+      int bucket = ParserStats.Histogram.bucketOf(value);
+      assertTrue(value + "", ParserStats.Histogram.upperBoundOf(bucket) >= value);
+      assertTrue(value + "", bucket == 0 || ParserStats.Histogram.upperBoundOf(bucket - 1) < value);
+    }
+    assertEquals(
+        Long.MAX_VALUE,
+        ParserStats.Histogram.upperBoundOf(ParserStats.Histogram.bucketOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void parse_countsTable() throws IOException {
+    try (XSSFWorkbook workbook = openExcelFile("table_5.3B.1.3-1.xlsx")) {
+      TableSheetParser.parse(workbook, TEST_METADATA);
+    }
+    assertEquals(1, ParserStats.tableCount());
+    assertEquals(1, ParserStats.phaseCount(ParserStats.Phase.BORDERS));
+    assertEquals(1, ParserStats.phaseCount(ParserStats.Phase.TABLE));
+    // Every cell of the table data rect is read once.
+    assertEquals(TEST_METADATA.tableDataRect().cellCount(), ParserStats.cellProbeCount());
+    assertTrue(ParserStats.borderCheckCount() > 0);
+    assertTrue(ParserStats.rectValidationCount() > 0);
+    // At least rows of the table data rect and rows of parent columns in them.
+    assertTrue(ParserStats.maxRecursionDepth() >= 2);
+  }
+
+  @Test
+  public void parse_paranoidValidatesMore() throws IOException {
+    long trustedValidations;
+    long trustedBorderChecks;
+    try (XSSFWorkbook workbook = openExcelFile("table_5.3B.1.3-1.xlsx")) {
+      TableSheetParser.parse(workbook, TEST_METADATA, Validation.TRUSTED);
+      trustedValidations = ParserStats.rectValidationCount();
+      trustedBorderChecks = ParserStats.borderCheckCount();
+      ParserStats.reset();
+      TableSheetParser.parse(workbook, TEST_METADATA, Validation.PARANOID);
+    }
+    assertTrue(ParserStats.rectValidationCount() > trustedValidations);
+    assertTrue(ParserStats.borderCheckCount() > trustedBorderChecks);
+  }
+
+  @Test
+  public void parseLazy_readsNoCell() throws IOException {
+    try (XSSFWorkbook workbook = openExcelFile("table_5.3B.1.3-1.xlsx")) {
+      TableSheetParser.parseLazy(workbook, TEST_METADATA);
+    }
+    assertEquals(1, ParserStats.tableCount());
+    assertEquals(0, ParserStats.cellProbeCount());
+  }
+
+  @Test
+  public void report_includesFileLatencies() {
+    for (long millis = 1; millis <= 100; millis++) {
+      ParserStats.recordFile("file" + millis, millis * 1_000_000, millis != 100);
+    }
+    ParserStats.start(ParserStats.Phase.LOAD, "file").stop();
+    String report = ParserStats.report();
+    assertTrue(report, report.contains("100 files, 1 failed"));
+    // Percentiles are upper bounds of histogram buckets, but not above the max.
+    assertTrue(
+        report,
+        report.contains("p50 50.332 ms, p90 92.275 ms, p99 100.000 ms, max 100.000 ms"));
+    assertTrue(report, report.contains("load: 1 times"));
+    assertFalse(report, report.contains("metadata:"));
+  }
+
+  @Test
+  public void reset_clearsAll() {
+    ParserStats.recordFile("file", 1_000_000, false);
+    ParserStats.recordTable(ExcelRect.of("A1", "B2"), 4, 10, 3, 2);
+    ParserStats.reset();
+    assertEquals(0, ParserStats.tableCount());
+    assertEquals(0, ParserStats.cellProbeCount());
+    assertEquals(0, ParserStats.maxRecursionDepth());
+    assertTrue(ParserStats.report().contains("0 files, 0 failed"));
+  }
+}
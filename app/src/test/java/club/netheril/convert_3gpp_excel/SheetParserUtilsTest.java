@@ -7,6 +7,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.BitSet;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.After;
@@ -90,6 +94,34 @@ public class SheetParserUtilsTest {
         () -> SheetParserUtils.safeGetCellString(testSheet, ExcelCellIndex.of(5, 2)));
   }
 
+  @Test
+  public void numericToString_integralWithoutFraction() {
+    assertEquals("123", SheetParserUtils.numericToString(123));
+    assertEquals("-40", SheetParserUtils.numericToString(-40));
+    assertEquals("0", SheetParserUtils.numericToString(-0.0));
+    assertEquals("4.567", SheetParserUtils.numericToString(4.567));
+    assertEquals("NaN", SheetParserUtils.numericToString(Double.NaN));
+  }
+
+  @Test
+  public void richTextToString_superscriptionsAreSeparators() {
+    XSSFFont superscript = testWorkbook.createFont();
+    superscript.setTypeOffset(Font.SS_SUPER);
+    XSSFFont regular = testWorkbook.createFont();
+    // Runs: " ab ", "1" (superscript), " c", "d ", "2" (superscript), "  ", "3" (superscript).
+    XSSFRichTextString text = new XSSFRichTextString(" ab 1 cd 2  3");
+    text.applyFont(0, 4, regular);
+    text.applyFont(4, 5, superscript);
+    text.applyFont(5, 7, regular);
+    text.applyFont(7, 9, regular);
+    text.applyFont(9, 10, superscript);
+    text.applyFont(10, 12, regular);
+    text.applyFont(12, 13, superscript);
+    assertEquals("ab,cd", SheetParserUtils.richTextToString(text, 0, 0));
+    // Same result for the same rich text, i.e., the buffer is reset.
+    assertEquals("ab,cd", SheetParserUtils.richTextToString(text, 0, 0));
+  }
+
   @Test
   public void getColumnsWithTopBorder_succeed() {
     ImmutableSet<Integer> allColumns = ImmutableSet.of(0, 1, 2, 3, 4);
@@ -139,6 +171,40 @@ public class SheetParserUtilsTest {
                 testSheet, 0, ImmutableSet.of(Integer.MAX_VALUE)));
   }
 
+  @Test
+  public void getColumnsWithTopBorder_failureNamesCell() {
+    // Column 1001 is after the last supported column.
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> SheetParserUtils.getColumnsWithTopBorder(testSheet, 0, ImmutableSet.of(1001)));
+    assertEquals("Invalid cell index ALN1", e.getMessage());
+    e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> SheetParserUtils.getColumnsWithTopBorder(testSheet, -1, ImmutableSet.of(0)));
+    assertEquals("Invalid cell index (-1, 0)", e.getMessage());
+  }
+
+  @Test
+  public void getColumnsWithTopBorder_rangeSameAsSet() {
+    ImmutableSet<Integer> allColumns = ImmutableSet.of(0, 1, 2, 3, 4);
+    for (int row = 0; row < 6; row++) {
+      BitSet expected = new BitSet();
+      SheetParserUtils.getColumnsWithTopBorder(testSheet, row, allColumns).forEach(expected::set);
+      assertEquals(expected, SheetParserUtils.getColumnsWithTopBorder(testSheet, row, 0, 5));
+      assertEquals(
+          SheetParserUtils.hasTopBorder(testSheet, row, ImmutableSet.of(1, 2, 3)),
+          SheetParserUtils.hasTopBorder(testSheet, row, 1, 4));
+    }
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SheetParserUtils.getColumnsWithTopBorder(testSheet, 0, 1, 1));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SheetParserUtils.getColumnsWithTopBorder(testSheet, -1, 0, 1));
+  }
+
   @Test
   public void getRowsWithLeftBorder_expectedResult() {
     ImmutableSet<Integer> allRows = ImmutableSet.of(0, 1, 2, 3, 4);
@@ -182,4 +248,23 @@ public class SheetParserUtilsTest {
             SheetParserUtils.getRowsWithLeftBorder(
                 testSheet, ImmutableSet.of(Integer.MAX_VALUE), 0));
   }
+
+  @Test
+  public void getRowsWithLeftBorder_rangeSameAsSet() {
+    ImmutableSet<Integer> allRows = ImmutableSet.of(0, 1, 2, 3, 4);
+    for (int column = 0; column < 6; column++) {
+      BitSet expected = new BitSet();
+      SheetParserUtils.getRowsWithLeftBorder(testSheet, allRows, column).forEach(expected::set);
+      assertEquals(expected, SheetParserUtils.getRowsWithLeftBorder(testSheet, 0, 5, column));
+      assertEquals(
+          SheetParserUtils.hasLeftBorder(testSheet, ImmutableSet.of(1, 2, 3), column),
+          SheetParserUtils.hasLeftBorder(testSheet, 1, 4, column));
+    }
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SheetParserUtils.getRowsWithLeftBorder(testSheet, 1, 1, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SheetParserUtils.getRowsWithLeftBorder(testSheet, 0, 1, -1));
+  }
 }
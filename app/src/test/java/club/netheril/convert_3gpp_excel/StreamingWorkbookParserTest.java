@@ -0,0 +1,154 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class StreamingWorkbookParserTest {
+
+  private File testFile(String fileName) {
+    try {
+      return new File(getClass().getClassLoader().getResource(fileName).toURI());
+    } catch (URISyntaxException | NullPointerException e) {
+      throw new RuntimeException(String.format("Unable to find file '%s'", fileName), e);
+    }
+  }
+
+  private XSSFWorkbook openExcelFile(String fileName) {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
+    if (file == null) {
+      throw new RuntimeException(String.format("Unable to find file '%s'", fileName));
+    }
+    try {
+      return new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new RuntimeException(String.format("Unable to read Excel from file '%s'", fileName), e);
+    }
+  }
+
+  private TableData parseWithReader(String fileName, ExcelRect rect) {
+    OPCPackage pkg = StreamingWorkbookParser.openPackage(testFile(fileName));
+    try {
+      return TableSheetParser.parse(
+          StreamingWorkbookParser.readSheetSnapshot(new XSSFReader(pkg), rect));
+    } catch (IOException | OpenXML4JException e) {
+      throw new RuntimeException(String.format("Unable to read Excel from file '%s'", fileName), e);
+    } finally {
+      pkg.revert();
+    }
+  }
+
+  private TableData parseWithWorkbook(String fileName, ExcelRect rect) {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("")
+            .setSpecVersion("")
+            .setTableSerialNumber("")
+            .setTableTitle("")
+            .setTableDataRect(rect)
+            .build();
+    try (XSSFWorkbook workbook = openExcelFile(fileName)) {
+      return TableSheetParser.parse(workbook, metadata);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close test workbook");
+    }
+  }
+
+  @Test
+  public void parseMetadata_sameAsMetadataSheetParser() throws Exception {
+    String fileName = "table_5.3B.1.3-1.xlsx";
+    TableMetadata expected;
+    try (XSSFWorkbook workbook = openExcelFile(fileName)) {
+      expected = MetadataSheetParser.parse(workbook);
+    }
+    OPCPackage pkg = StreamingWorkbookParser.openPackage(testFile(fileName));
+    try {
+      assertEquals(expected, StreamingWorkbookParser.parseMetadata(new XSSFReader(pkg)));
+    } finally {
+      pkg.revert();
+    }
+  }
+
+  @Test
+  public void parse_sameAsTableSheetParser() {
+    ExcelRect rect = ExcelRect.of("A6", "G20");
+    assertEquals(
+        parseWithWorkbook("table_5.3B.1.3-1.xlsx", rect),
+        parseWithReader("table_5.3B.1.3-1.xlsx", rect));
+  }
+
+  @Test
+  public void parse_sameAsTableSheetParserOnWide() {
+    ExcelRect rect = ExcelRect.of("A4", "AF11");
+    assertEquals(
+        parseWithWorkbook("table_5.6A.1-2.xlsx", rect),
+        parseWithReader("table_5.6A.1-2.xlsx", rect));
+  }
+
+  @Test
+  public void parse_failureDueToInvalidBorder() {
+    // See TableSheetParserTest.parse_failureDueToInvalidBorder().
+    ExcelRect rect = ExcelRect.of(ExcelCellIndex.of(21, 0), ExcelCellIndex.of(26, 7));
+    assertThrows(
+        IllegalArgumentException.class, () -> parseWithReader("table_5.3B.1.3-1.xlsx", rect));
+  }
+
+  @Test
+  public void parse_failureDueToInvalidDataRegion() {
+    // See TableSheetParserTest.parse_failureDueToInvalidDataRegion().
+    ExcelRect rect = ExcelRect.of(ExcelCellIndex.of(10, 0), ExcelCellIndex.of(20, 7));
+    assertThrows(
+        IllegalArgumentException.class, () -> parseWithReader("table_5.3B.1.3-1.xlsx", rect));
+  }
+
+  @Test
+  public void cellString_sameAsSafeGetCellString() {
+    // The border test data has plain, numeric, rich text and formula cells.
+    String fileName = "table_border_test_data.xlsx";
+    ExcelRect rect = ExcelRect.of(0, 6, 0, 5);
+    SheetSnapshot snapshot;
+    OPCPackage pkg = StreamingWorkbookParser.openPackage(testFile(fileName));
+    try {
+      XSSFReader reader = new XSSFReader(pkg);
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+      sheets.next().close();
+      snapshot =
+          StreamingWorkbookParser.readSheetSnapshot(reader, sheets.getSheetName(), rect);
+    } catch (IOException | OpenXML4JException e) {
+      throw new RuntimeException(String.format("Unable to read Excel from file '%s'", fileName), e);
+    } finally {
+      pkg.revert();
+    }
+
+    try (XSSFWorkbook workbook = openExcelFile(fileName)) {
+      for (int row = rect.beginRow(); row < rect.endRow(); row++) {
+        for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
+          ExcelCellIndex idx = ExcelCellIndex.of(row, column);
+          String expected;
+          try {
+            expected = SheetParserUtils.safeGetCellString(workbook.getSheetAt(0), idx);
+          } catch (IllegalArgumentException e) {
+            final int r = row;
+            final int c = column;
+            assertThrows(IllegalArgumentException.class, () -> snapshot.cellString(r, c));
+            continue;
+          }
+          assertEquals(
+              String.format("Unexpected cell value at %s", idx),
+              expected,
+              snapshot.cellString(row, column));
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close test workbook");
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StyleBorderCacheTest {
+
+  private final String TEST_EXCEL_FILE = "table_border_test_data.xlsx";
+
+  private XSSFWorkbook testWorkbook;
+  private XSSFSheet testSheet;
+
+  @Before
+  public void setUp() {
+    InputStream file = getClass().getClassLoader().getResourceAsStream(TEST_EXCEL_FILE);
+    checkNotNull(file, String.format("Unable to find file '%s'", TEST_EXCEL_FILE));
+    try {
+      testWorkbook = new XSSFWorkbook(file);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to read Excel from file '%s'", TEST_EXCEL_FILE), e);
+    }
+    testSheet = testWorkbook.getSheetAt(0);
+    checkNotNull(testSheet, "Unable to get sheet 0 from the test Excel file");
+  }
+
+  @After
+  public void tearDown() {
+    try {
+      testWorkbook.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close test workbook");
+    }
+  }
+
+  @Test
+  public void borderMask_sameAsStyleBorderMask() {
+    StylesTable styles = testWorkbook.getStylesSource();
+    StyleBorderCache cache = StyleBorderCache.of(styles);
+    // Looks up each style twice, the second lookup hits the cache.
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < styles.getNumCellStyles(); i++) {
+        assertEquals(
+            String.format("Unexpected border mask of style %d", i),
+            SheetParserUtils.styleBorderMask(styles.getStyleAt(i)),
+            cache.borderMask(i));
+      }
+    }
+  }
+
+  @Test
+  public void cellBorderMask_sameAsCellStyle() {
+    StyleBorderCache cache = StyleBorderCache.of(testWorkbook.getStylesSource());
+    for (int row = 0; row <= testSheet.getLastRowNum(); row++) {
+      XSSFRow sheetRow = testSheet.getRow(row);
+      if (sheetRow == null) {
+        continue;
+      }
+      for (int column = 0; column < sheetRow.getLastCellNum(); column++) {
+        XSSFCell cell = sheetRow.getCell(column);
+        if (cell == null) {
+          continue;
+        }
+        assertEquals(
+            String.format("Unexpected border mask of cell %s", cell.getAddress()),
+            SheetParserUtils.styleBorderMask((XSSFCellStyle) cell.getCellStyle()),
+            cache.cellBorderMask(cell));
+      }
+    }
+  }
+
+  @Test
+  public void borderMask_fail() {
+    StyleBorderCache cache = StyleBorderCache.of(testWorkbook.getStylesSource());
+    assertThrows(RuntimeException.class, () -> cache.borderMask(-1));
+  }
+}
@@ -0,0 +1,129 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class TableDataWriterTest {
+
+  // A table with all types of columns, nested parent columns and special characters.
+  private static final TableData TEST_DATA =
+      TableData.of(
+          TableRow.of(
+              TableColumn.leaf("DC_7A_n7A"),
+              TableColumn.parent(
+                  TableRow.of(TableColumn.leaf("5,10,15,20"), TableColumn.empty()),
+                  TableRow.of(
+                      TableColumn.parent(TableRow.of(TableColumn.leaf("20", "40"))),
+                      TableColumn.leaf("multi\nline")))),
+          TableRow.of(TableColumn.leaf("quote \" and \\ and \t and \u0001")));
+
+  private static String write(TableData data, TableDataWriter.Format format, String fileName) {
+    StringBuilder out = new StringBuilder();
+    try {
+      TableDataWriter.write(data, format, fileName, out);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write to a StringBuilder", e);
+    }
+    return out.toString();
+  }
+
+  @Test
+  public void writePretty_sameAsToString() {
+    assertEquals(TEST_DATA.toString(), write(TEST_DATA, TableDataWriter.Format.PRETTY, null));
+  }
+
+  @Test
+  public void writePretty_sameAsToStringOnParsedTable() throws IOException {
+    String fileName = "table_5.3B.1.3-1.xlsx";
+    InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
+    assertNotNull(String.format("Unable to find file '%s'", fileName), file);
+    try (XSSFWorkbook workbook = new XSSFWorkbook(file)) {
+      TableData data = TableSheetParser.parse(workbook, MetadataSheetParser.parse(workbook));
+      assertEquals(data.toString(), write(data, TableDataWriter.Format.PRETTY, null));
+    }
+  }
+
+  @Test
+  public void writeJson_succeed() {
+    assertEquals(
+        "{\"rows\":["
+            + "{\"columns\":["
+            + "{\"type\":\"leaf\",\"cells\":[\"DC_7A_n7A\"]},"
+            + "{\"type\":\"parent\",\"rows\":["
+            + "{\"columns\":[{\"type\":\"leaf\",\"cells\":[\"5,10,15,20\"]},{\"type\":\"empty\"}]},"
+            + "{\"columns\":["
+            + "{\"type\":\"parent\",\"rows\":["
+            + "{\"columns\":[{\"type\":\"leaf\",\"cells\":[\"20\",\"40\"]}]}]},"
+            + "{\"type\":\"leaf\",\"cells\":[\"multi\\nline\"]}]}]}]},"
+            + "{\"columns\":["
+            + "{\"type\":\"leaf\",\"cells\":[\"quote \\\" and \\\\ and \\t and \\u0001\"]}]}]}\n",
+        write(TEST_DATA, TableDataWriter.Format.JSON, null));
+  }
+
+  @Test
+  public void writeJson_withFileName() {
+    assertEquals(
+        "{\"file\":\"specs/a.xlsx\",\"rows\":[{\"columns\":[{\"type\":\"empty\"}]}]}\n",
+        write(
+            TableData.of(TableRow.of(TableColumn.empty())),
+            TableDataWriter.Format.JSON,
+            "specs/a.xlsx"));
+  }
+
+  @Test
+  public void writeNdjson_oneRowPerLine() {
+    String[] lines = write(TEST_DATA, TableDataWriter.Format.NDJSON, "a.xlsx").split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(
+        lines[0].startsWith("{\"file\":\"a.xlsx\",\"row\":0,\"columns\":[{\"type\":\"leaf\""));
+    assertEquals(
+        "{\"file\":\"a.xlsx\",\"row\":1,\"columns\":["
+            + "{\"type\":\"leaf\",\"cells\":[\"quote \\\" and \\\\ and \\t and \\u0001\"]}]}",
+        lines[1]);
+  }
+
+  @Test
+  public void writeCsv_oneRecordPerLine() {
+    assertEquals(
+        "DC_7A_n7A,\"5,10,15,20\",\n"
+            + "DC_7A_n7A,20,\"multi\nline\"\n"
+            + "DC_7A_n7A,40,\"multi\nline\"\n"
+            + "\"quote \"\" and \\ and \t and \u0001\"\n",
+        write(TEST_DATA, TableDataWriter.Format.CSV, null));
+  }
+
+  @Test
+  public void writeCsv_withFileName() {
+    assertEquals(
+        "\"specs/a,b.xlsx\",20\n\"specs/a,b.xlsx\",40\n",
+        write(
+            TableData.of(TableRow.of(TableColumn.leaf("20", "40"))),
+            TableDataWriter.Format.CSV,
+            "specs/a,b.xlsx"));
+  }
+
+  @Test
+  public void writeFlatNdjson_oneRecordPerLine() {
+    assertEquals(
+        "{\"file\":\"a.xlsx\",\"row\":0,\"values\":[\"DC_7A_n7A\",\"5,10,15,20\",\"\"]}\n"
+            + "{\"file\":\"a.xlsx\",\"row\":0,\"values\":[\"DC_7A_n7A\",\"20\",\"multi\\nline\"]}\n"
+            + "{\"file\":\"a.xlsx\",\"row\":0,\"values\":[\"DC_7A_n7A\",\"40\",\"multi\\nline\"]}\n"
+            + "{\"file\":\"a.xlsx\",\"row\":1,\"values\":"
+            + "[\"quote \\\" and \\\\ and \\t and \\u0001\"]}\n",
+        write(TEST_DATA, TableDataWriter.Format.FLAT_NDJSON, "a.xlsx"));
+  }
+
+  @Test
+  public void formatOf_succeed() {
+    assertEquals(TableDataWriter.Format.JSON, TableDataWriter.Format.of("json"));
+    assertEquals(TableDataWriter.Format.NDJSON, TableDataWriter.Format.of("NDJSON"));
+    assertEquals(TableDataWriter.Format.PRETTY, TableDataWriter.Format.of("pretty"));
+    assertEquals(TableDataWriter.Format.CSV, TableDataWriter.Format.of("csv"));
+    assertEquals(TableDataWriter.Format.FLAT_NDJSON, TableDataWriter.Format.of("flat-ndjson"));
+    assertThrows(IllegalArgumentException.class, () -> TableDataWriter.Format.of("xml"));
+  }
+}
@@ -0,0 +1,269 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import club.netheril.convert_3gpp_excel.TableDiff.ColumnChange;
+import club.netheril.convert_3gpp_excel.TableDiff.Kind;
+import club.netheril.convert_3gpp_excel.TableDiff.RowChange;
+import club.netheril.convert_3gpp_excel.TableIndex.ColumnPath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class TableDiffTest {
+
+  // ┌─────────────┬─────┬──────┐
+  // │ DC_1A_n78A  │ 1   │ 20   │
+  // │             ├─────┼──────┤
+  // │             │ n78 │ 100  │
+  // ├─────────────┼─────┼──────┤
+  // │ DC_3A_n78A  │ 3   │ 20   │
+  // ├─────────────┼─────┼──────┤
+  // │ DC_7A_n78A  │ 7   │ 20   │
+  // └─────────────┴─────┴──────┘
+  private static TableRow dc1A() {
+    return TableRow.of(
+        TableColumn.leaf("DC_1A_n78A"),
+        TableColumn.parent(
+            TableRow.of(TableColumn.leaf("1"), TableColumn.leaf("20")),
+            TableRow.of(TableColumn.leaf("n78"), TableColumn.leaf("100"))));
+  }
+
+  private static TableRow simpleRow(String combination, String band, String... bandwidths) {
+    return TableRow.of(
+        TableColumn.leaf(combination), TableColumn.leaf(band), TableColumn.leaf(bandwidths));
+  }
+
+  private static final TableData OLD_DATA =
+      TableData.of(
+          dc1A(), simpleRow("DC_3A_n78A", "3", "20"), simpleRow("DC_7A_n78A", "7", "20"));
+
+  @Test
+  public void of_identicalTables() {
+    TableDiff diff =
+        TableDiff.of(
+            OLD_DATA,
+            TableData.of(
+                dc1A(), simpleRow("DC_3A_n78A", "3", "20"), simpleRow("DC_7A_n78A", "7", "20")));
+
+    assertTrue(diff.isEmpty());
+  }
+
+  @Test
+  public void of_movedRowsAreUnchanged() {
+    TableDiff diff =
+        TableDiff.of(
+            OLD_DATA,
+            TableData.of(
+                simpleRow("DC_7A_n78A", "7", "20"), dc1A(), simpleRow("DC_3A_n78A", "3", "20")));
+
+    assertTrue(diff.isEmpty());
+  }
+
+  @Test
+  public void of_addedAndRemovedRows() {
+    TableDiff diff =
+        TableDiff.of(
+            OLD_DATA,
+            TableData.of(
+                dc1A(), simpleRow("DC_7A_n78A", "7", "20"), simpleRow("DC_8A_n78A", "8", "10")));
+
+    assertEquals(
+        ImmutableList.of(
+            RowChange.of(
+                Kind.REMOVED,
+                1,
+                -1,
+                ImmutableList.of(
+                    ColumnChange.of(
+                        ColumnPath.of(1, 0),
+                        null,
+                        ImmutableList.of("DC_3A_n78A"),
+                        ImmutableList.of()),
+                    ColumnChange.of(
+                        ColumnPath.of(1, 1), null, ImmutableList.of("3"), ImmutableList.of()),
+                    ColumnChange.of(
+                        ColumnPath.of(1, 2), null, ImmutableList.of("20"), ImmutableList.of()))),
+            RowChange.of(
+                Kind.ADDED,
+                -1,
+                2,
+                ImmutableList.of(
+                    ColumnChange.of(
+                        null,
+                        ColumnPath.of(2, 0),
+                        ImmutableList.of(),
+                        ImmutableList.of("DC_8A_n78A")),
+                    ColumnChange.of(
+                        null, ColumnPath.of(2, 1), ImmutableList.of(), ImmutableList.of("8")),
+                    ColumnChange.of(
+                        null, ColumnPath.of(2, 2), ImmutableList.of(), ImmutableList.of("10"))))),
+        diff.rowChanges());
+  }
+
+  @Test
+  public void of_changedLeafCells() {
+    TableDiff diff =
+        TableDiff.of(
+            OLD_DATA,
+            TableData.of(
+                dc1A(),
+                simpleRow("DC_3A_n78A", "3", "10", "20"),
+                simpleRow("DC_7A_n78A", "7", "20")));
+
+    assertEquals(
+        ImmutableList.of(
+            RowChange.of(
+                Kind.CHANGED,
+                1,
+                1,
+                ImmutableList.of(
+                    ColumnChange.of(
+                        ColumnPath.of(1, 2),
+                        ColumnPath.of(1, 2),
+                        ImmutableList.of(),
+                        ImmutableList.of("10"))))),
+        diff.rowChanges());
+  }
+
+  @Test
+  public void of_changedNestedRows() {
+    TableRow newDc1A =
+        TableRow.of(
+            TableColumn.leaf("DC_1A_n78A"),
+            TableColumn.parent(
+                TableRow.of(TableColumn.leaf("1"), TableColumn.leaf("20")),
+                TableRow.of(TableColumn.leaf("n78"), TableColumn.leaf("90")),
+                TableRow.of(TableColumn.leaf("n79"), TableColumn.leaf("40"))));
+
+    TableDiff diff =
+        TableDiff.of(
+            OLD_DATA,
+            TableData.of(
+                newDc1A,
+                simpleRow("DC_3A_n78A", "3", "20"),
+                simpleRow("DC_7A_n78A", "7", "20")));
+
+    assertEquals(
+        ImmutableList.of(
+            RowChange.of(
+                Kind.CHANGED,
+                0,
+                0,
+                ImmutableList.of(
+                    ColumnChange.of(
+                        ColumnPath.of(0, 1, 1, 1),
+                        ColumnPath.of(0, 1, 1, 1),
+                        ImmutableList.of("100"),
+                        ImmutableList.of("90")),
+                    ColumnChange.of(
+                        null,
+                        ColumnPath.of(0, 1, 2, 0),
+                        ImmutableList.of(),
+                        ImmutableList.of("n79")),
+                    ColumnChange.of(
+                        null,
+                        ColumnPath.of(0, 1, 2, 1),
+                        ImmutableList.of(),
+                        ImmutableList.of("40"))))),
+        diff.rowChanges());
+  }
+
+  @Test
+  public void of_leafColumnChangedToParentColumn() {
+    TableDiff diff =
+        TableDiff.of(
+            TableData.of(simpleRow("DC_3A_n78A", "3", "20")),
+            TableData.of(
+                TableRow.of(
+                    TableColumn.leaf("DC_3A_n78A"),
+                    TableColumn.parent(
+                        TableRow.of(TableColumn.leaf("3")), TableRow.of(TableColumn.leaf("n78"))),
+                    TableColumn.leaf("20"))));
+
+    assertEquals(
+        ImmutableList.of(
+            ColumnChange.of(ColumnPath.of(0, 1), null, ImmutableList.of("3"), ImmutableList.of()),
+            ColumnChange.of(
+                null, ColumnPath.of(0, 1, 0, 0), ImmutableList.of(), ImmutableList.of("3")),
+            ColumnChange.of(
+                null, ColumnPath.of(0, 1, 1, 0), ImmutableList.of(), ImmutableList.of("n78"))),
+        diff.rowChanges().get(0).columnChanges());
+  }
+
+  @Test
+  public void of_repeatedCellsAreCounted() {
+    TableDiff diff =
+        TableDiff.of(
+            TableData.of(simpleRow("DC_3A_n78A", "3", "20", "20")),
+            TableData.of(simpleRow("DC_3A_n78A", "3", "20")));
+
+    assertEquals(
+        ImmutableList.of(
+            ColumnChange.of(
+                ColumnPath.of(0, 2),
+                ColumnPath.of(0, 2),
+                ImmutableList.of("20"),
+                ImmutableList.of())),
+        diff.rowChanges().get(0).columnChanges());
+  }
+
+  @Test
+  public void of_cellBoundariesMatter() {
+    TableDiff diff =
+        TableDiff.of(
+            TableData.of(simpleRow("DC_3A_n78A", "3", "ab", "c")),
+            TableData.of(simpleRow("DC_3A_n78A", "3", "a", "bc")));
+
+    assertFalse(diff.isEmpty());
+  }
+
+  private static ParsedTable parsedTable(String serialNumber, TableData data) {
+    return ParsedTable.of(
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber(serialNumber)
+            .setTableTitle("Table " + serialNumber)
+            .setTableDataRect(ExcelRect.of(ExcelCellIndex.of(0, 0), ExcelCellIndex.of(0, 0)))
+            .setTableSheetName("Table")
+            .build(),
+        data);
+  }
+
+  @Test
+  public void ofReleases() {
+    TableData unchanged = TableData.of(simpleRow("DC_1A_n78A", "1", "20"));
+    TableData removed = TableData.of(simpleRow("DC_2A_n78A", "2", "20"));
+    TableData added = TableData.of(simpleRow("DC_4A_n78A", "4", "20"));
+
+    ImmutableMap<String, TableDiff> diffs =
+        TableDiff.ofReleases(
+            ImmutableList.of(
+                parsedTable("5.5B.4.1-1", unchanged),
+                parsedTable("5.5B.4.1-2", removed),
+                parsedTable("5.5B.4.1-3", OLD_DATA)),
+            ImmutableList.of(
+                parsedTable("5.5B.4.1-3", TableData.of(dc1A())),
+                parsedTable("5.5B.4.1-1", unchanged),
+                parsedTable("5.5B.4.1-4", added)));
+
+    assertEquals(
+        ImmutableList.of("5.5B.4.1-2", "5.5B.4.1-3", "5.5B.4.1-4"), diffs.keySet().asList());
+    assertEquals(TableDiff.of(removed, null), diffs.get("5.5B.4.1-2"));
+    assertEquals(2, diffs.get("5.5B.4.1-3").rowChanges().size());
+    assertEquals(TableDiff.of(null, added), diffs.get("5.5B.4.1-4"));
+  }
+
+  @Test
+  public void ofReleases_failureDueToDuplicateTable() {
+    TableData data = TableData.of(simpleRow("DC_1A_n78A", "1", "20"));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            TableDiff.ofReleases(
+                ImmutableList.of(parsedTable("5.5B.4.1-1", data), parsedTable("5.5B.4.1-1", data)),
+                ImmutableList.of()));
+  }
+}
@@ -0,0 +1,117 @@
+package club.netheril.convert_3gpp_excel;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.junit.Test;
+
+public class TableFlattenerTest {
+
+  // ┌────────────┬────────┬───────────────┐
+  // │            │        │ 5             │
+  // │            │ CA_1A  ├───────────────┤
+  // │ DC_1A_n78A │        │ 10            │
+  // │            ├────────┼───────┬───────┤
+  // │            │ n78A   │ 40    │ 60    │
+  // ├────────────┼────────┴───────┴───────┤
+  // │ DC_3A_n78A │                        │
+  // └────────────┴────────────────────────┘
+  private static final TableData TEST_DATA =
+      TableData.of(
+          TableRow.of(
+              TableColumn.leaf("DC_1A_n78A"),
+              TableColumn.parent(
+                  TableRow.of(TableColumn.leaf("CA_1A"), TableColumn.leaf("5", "10")),
+                  TableRow.of(
+                      TableColumn.leaf("n78A"), TableColumn.leaf("40"), TableColumn.leaf("60")))),
+          TableRow.of(TableColumn.leaf("DC_3A_n78A"), TableColumn.empty()));
+
+  @Test
+  public void iterator_expandsNestedRows() {
+    assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("DC_1A_n78A", "CA_1A", "5"),
+            ImmutableList.of("DC_1A_n78A", "CA_1A", "10"),
+            ImmutableList.of("DC_1A_n78A", "n78A", "40", "60"),
+            ImmutableList.of("DC_3A_n78A", "")),
+        ImmutableList.copyOf(TableFlattener.iterator(TEST_DATA)));
+  }
+
+  @Test
+  public void iterator_cartesianProductWithLastColumnFastest() {
+    TableData data =
+        TableData.of(
+            TableRow.of(
+                TableColumn.leaf("a", "b"), TableColumn.leaf("1"), TableColumn.leaf("x", "y")));
+
+    assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("a", "1", "x"),
+            ImmutableList.of("a", "1", "y"),
+            ImmutableList.of("b", "1", "x"),
+            ImmutableList.of("b", "1", "y")),
+        ImmutableList.copyOf(TableFlattener.iterator(data)));
+  }
+
+  @Test
+  public void iterator_failureAfterLastRecord() {
+    Iterator<ImmutableList<String>> records = TableFlattener.iterator(TEST_DATA);
+    Iterators.advance(records, 4);
+
+    assertFalse(records.hasNext());
+    assertThrows(NoSuchElementException.class, records::next);
+  }
+
+  @Test
+  public void recordCursor_rowsOfRecords() {
+    TableFlattener.RecordCursor cursor = new TableFlattener.RecordCursor(TEST_DATA);
+    ImmutableList.Builder<Integer> rows = ImmutableList.builder();
+    while (cursor.next()) {
+      rows.add(cursor.row());
+    }
+
+    assertEquals(ImmutableList.of(0, 0, 0, 1), rows.build());
+    assertFalse(cursor.next());
+    assertThrows(NoSuchElementException.class, cursor::values);
+  }
+
+  @Test
+  public void stream_isLazy() {
+    // 10^12 records, which are never all produced.
+    TableData data =
+        TableData.of(
+            TableRow.of(
+                Collections.nCopies(
+                    12, TableColumn.leaf("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"))));
+
+    assertEquals(1_000_000_000_000L, TableFlattener.recordCount(data));
+    assertEquals(
+        ImmutableList.of("0", "0", "0", "0", "0", "0", "0", "0", "0", "0", "1", "1"),
+        TableFlattener.stream(data).skip(11).findFirst().get());
+    assertEquals(
+        ImmutableList.of("000000000000", "000000000001", "000000000002"),
+        TableFlattener.stream(data)
+            .limit(3)
+            .map(values -> String.join("", values))
+            .collect(toImmutableList()));
+  }
+
+  @Test
+  public void recordCount_sameAsIterator() {
+    assertEquals(4, TableFlattener.recordCount(TEST_DATA));
+    assertEquals(4, TableFlattener.stream(TEST_DATA).count());
+  }
+
+  @Test
+  public void recordCount_failureDueToOverflow() {
+    TableData data =
+        TableData.of(TableRow.of(Collections.nCopies(64, TableColumn.leaf("a", "b"))));
+
+    assertThrows(ArithmeticException.class, () -> TableFlattener.recordCount(data));
+  }
+}
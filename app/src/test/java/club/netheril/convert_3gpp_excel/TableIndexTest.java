@@ -0,0 +1,136 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import club.netheril.convert_3gpp_excel.TableIndex.ColumnPath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class TableIndexTest {
+
+  // Top level rows:
+  // 0: "DC_7A_n7A", and a parent column of two child rows: ["20", empty] and ["40, 60, 20"].
+  // 1: "DC_7A_n78A", "20".
+  // 2: "DC_8A_n7A", "DC_7A_n7A".
+  private static final TableData TEST_DATA =
+      TableData.of(
+          TableRow.of(
+              TableColumn.leaf("DC_7A_n7A"),
+              TableColumn.parent(
+                  TableRow.of(TableColumn.leaf("20"), TableColumn.empty()),
+                  TableRow.of(TableColumn.leaf("40", "60", "20")))),
+          TableRow.of(TableColumn.leaf("DC_7A_n78A"), TableColumn.leaf("20")),
+          TableRow.of(TableColumn.leaf("DC_8A_n7A"), TableColumn.leaf("DC_7A_n7A")));
+
+  @Test
+  public void find_exact() {
+    TableIndex index = TableIndex.of(TEST_DATA);
+    assertEquals(
+        ImmutableList.of(ColumnPath.of(0, 1, 0, 0), ColumnPath.of(0, 1, 1, 0), ColumnPath.of(1, 1)),
+        index.find("20"));
+    assertEquals(
+        ImmutableList.of(ColumnPath.of(0, 0), ColumnPath.of(2, 1)), index.find("DC_7A_n7A"));
+    assertEquals(ImmutableList.of(), index.find("DC_7A"));
+    assertEquals(ImmutableList.of(), index.find(""));
+  }
+
+  @Test
+  public void findPrefix_mergesKeys() {
+    TableIndex index = TableIndex.of(TEST_DATA);
+    assertEquals(
+        ImmutableList.of(ColumnPath.of(0, 0), ColumnPath.of(1, 0), ColumnPath.of(2, 1)),
+        index.findPrefix("DC_7A"));
+    assertEquals(ImmutableList.of(), index.findPrefix("DC_9"));
+    assertEquals(ImmutableList.of(), index.findPrefix("zzz"));
+    // Every leaf column has a cell starting with the empty prefix.
+    assertEquals(7, index.findPrefix("").size());
+  }
+
+  @Test
+  public void findRowsByPrefix_inFirstColumn() {
+    TableIndex index = TableIndex.of(TEST_DATA);
+    assertEquals(ImmutableIntArray.of(0, 1), index.findRowsByPrefix("DC_7A", 0));
+    assertEquals(ImmutableIntArray.of(2), index.findRowsByPrefix("DC_7A", 1));
+  }
+
+  @Test
+  public void resolve_sameColumn() {
+    TableIndex index = TableIndex.of(TEST_DATA);
+    for (ColumnPath path : index.findPrefix("")) {
+      assertEquals(TableColumn.Type.LEAF, path.resolve(TEST_DATA).type());
+    }
+    assertEquals(
+        TableColumn.leaf("40", "60", "20"), index.find("60").get(0).resolve(TEST_DATA));
+  }
+
+  @Test
+  public void toBytes_roundTrip() {
+    TableIndex index = TableIndex.of(TEST_DATA);
+    TableIndex decoded = TableIndex.of(ByteBuffer.wrap(index.toBytes()));
+    assertEquals(index.size(), decoded.size());
+    for (String key : Arrays.asList("20", "40", "DC_7A_n7A", "DC_8A_n7A", "missing")) {
+      assertEquals(index.find(key), decoded.find(key));
+    }
+    assertEquals(index.findPrefix("DC_"), decoded.findPrefix("DC_"));
+  }
+
+  @Test
+  public void of_failureDueToCorruptedBytes() {
+    byte[] bytes = TableIndex.of(TEST_DATA).toBytes();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TableIndex.of(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2))));
+    bytes[0] = 0;
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(ByteBuffer.wrap(bytes)));
+  }
+
+  // Serialized TEST_DATA with the int at the given offset replaced. Its layout is: the header of 6
+  // ints, then 6 key ends at 24, 6 posting ends at 48, 9 postings at 72 (the first key "20" has
+  // paths 1, 2 and 4), 7 path ends at 108, path indexes, and 34 bytes of key data.
+  private static ByteBuffer corrupted(int offset, int value) {
+    return ByteBuffer.wrap(TableIndex.of(TEST_DATA).toBytes()).putInt(offset, value);
+  }
+
+  @Test
+  public void of_failureDueToCorruptedCounts() {
+    // A huge count fails before its array is allocated.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(8, 1 << 30)));
+    assertThrows(
+        IllegalArgumentException.class, () -> TableIndex.of(corrupted(12, Integer.MAX_VALUE)));
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(16, -1)));
+  }
+
+  @Test
+  public void of_failureDueToTruncatedCountHasMessage() {
+    // 218 bytes of arrays and key data follow the header of 24 bytes.
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(8, 1 << 30)));
+    assertEquals(
+        "Invalid table index, 1073741824 key ends exceed the remaining 218 bytes", e.getMessage());
+  }
+
+  @Test
+  public void of_failureDueToCorruptedArrays() {
+    // The last key ends after the key data.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(44, 1000)));
+    // Posting ends decrease.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(52, 0)));
+    // A posting is not a path id.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(72, 7)));
+    // Postings of a key are not sorted.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(72, 3)));
+    // A path has an odd number of indexes.
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(corrupted(108, 1)));
+  }
+
+  @Test
+  public void of_failureDueToUnsortedKeys() {
+    byte[] bytes = TableIndex.of(TEST_DATA).toBytes();
+    // The first key "20" becomes "50", which is after the second key "40".
+    bytes[bytes.length - 34] = '5';
+    assertThrows(IllegalArgumentException.class, () -> TableIndex.of(ByteBuffer.wrap(bytes)));
+  }
+}
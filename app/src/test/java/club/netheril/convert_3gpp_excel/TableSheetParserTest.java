@@ -2,8 +2,11 @@ package club.netheril.convert_3gpp_excel;
 
 import static org.junit.Assert.*;
 
+import club.netheril.convert_3gpp_excel.TableSheetParser.Validation;
+import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.After;
 import org.junit.Before;
@@ -12,6 +15,7 @@ import org.junit.Test;
 public class TableSheetParserTest {
   private XSSFWorkbook testWorkbook;
   private XSSFWorkbook testWorkbookWide;
+  private ForkJoinPool pool;
 
   private XSSFWorkbook openExcelFile(String fileName) {
     InputStream file = getClass().getClassLoader().getResourceAsStream(fileName);
@@ -27,12 +31,14 @@ public class TableSheetParserTest {
 
   @Before
   public void setUp() {
+    pool = new ForkJoinPool(4);
     testWorkbook = openExcelFile("table_5.3B.1.3-1.xlsx");
     testWorkbookWide = openExcelFile("table_5.6A.1-2.xlsx");
   }
 
   @After
   public void tearDown() {
+    pool.shutdown();
     try {
       testWorkbook.close();
       testWorkbookWide.close();
@@ -372,4 +378,168 @@ public class TableSheetParserTest {
     assertThrows(
         IllegalArgumentException.class, () -> TableSheetParser.parse(testWorkbook, metadata));
   }
+
+  @Test
+  public void parseParallel_sameAsParse() {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber("5.3B.1.3-1")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A6", "G20"))
+            .build();
+    assertEquals(
+        TableSheetParser.parse(testWorkbook, metadata),
+        TableSheetParser.parseParallel(testWorkbook, metadata, pool));
+  }
+
+  @Test
+  public void parseParallel_sameAsParseOnWide() {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("36.101")
+            .setSpecVersion("h70")
+            .setTableSerialNumber("5.6A.1-2")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A4", "AF11"))
+            .build();
+    assertEquals(
+        TableSheetParser.parse(testWorkbookWide, metadata),
+        TableSheetParser.parseParallel(testWorkbookWide, metadata, pool));
+  }
+
+  @Test
+  public void parseParallel_preservesOrderOfManyRows() {
+    // A table of single row logical rows which is large enough to be split into many tasks.
+    int rowCount = 4 * TableSheetParser.PARALLEL_TASK_CELLS / 8;
+    ExcelRect rect = ExcelRect.of(ExcelCellIndex.of(1, 0), ExcelCellIndex.of(1 + rowCount, 8));
+    SheetSnapshot.Builder builder = SheetSnapshot.builder(rect);
+    int allBorders =
+        SheetParserUtils.TOP_BORDER
+            | SheetParserUtils.BOTTOM_BORDER
+            | SheetParserUtils.LEFT_BORDER
+            | SheetParserUtils.RIGHT_BORDER;
+    for (int row = rect.beginRow(); row < rect.endRow(); row++) {
+      for (int column = rect.beginColumn(); column < rect.endColumn(); column++) {
+        builder.addCell(row, column, allBorders, String.format("%d-%d", row, column));
+      }
+    }
+    SheetSnapshot snapshot = builder.build();
+
+    TableData expected = TableSheetParser.parse(snapshot);
+    TableData actual = TableSheetParser.parseParallel(snapshot, pool);
+    assertEquals(rowCount, actual.rows().size());
+    assertEquals(TableColumn.leaf("1-0"), actual.rows().get(0).columns().get(0));
+    assertEquals(
+        TableColumn.leaf(String.format("%d-7", rowCount)),
+        actual.rows().get(rowCount - 1).columns().get(7));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void parseParallel_failureDueToInvalidBorder() {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber("5.3B.1.3-1")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of(ExcelCellIndex.of(21, 0), ExcelCellIndex.of(26, 7)))
+            .build();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TableSheetParser.parseParallel(testWorkbook, metadata, pool));
+  }
+
+  @Test
+  public void parse_trustedSameAsParanoid() {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber("5.3B.1.3-1")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A6", "G20"))
+            .build();
+    assertEquals(
+        TableSheetParser.parse(testWorkbook, metadata, Validation.PARANOID),
+        TableSheetParser.parse(testWorkbook, metadata, Validation.TRUSTED));
+
+    TableMetadata metadataWide =
+        TableMetadata.builder()
+            .setSpecName("36.101")
+            .setSpecVersion("h70")
+            .setTableSerialNumber("5.6A.1-2")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A4", "AF11"))
+            .build();
+    assertEquals(
+        TableSheetParser.parse(testWorkbookWide, metadataWide, Validation.PARANOID),
+        TableSheetParser.parse(testWorkbookWide, metadataWide, Validation.TRUSTED));
+  }
+
+  @Test
+  public void parse_trustedFailsAsParanoid() {
+    // Invalid border and invalid data region, see the failure tests above.
+    for (ExcelRect rect :
+        new ExcelRect[] {
+          ExcelRect.of(ExcelCellIndex.of(21, 0), ExcelCellIndex.of(26, 7)),
+          ExcelRect.of(ExcelCellIndex.of(10, 0), ExcelCellIndex.of(20, 7)),
+        }) {
+      TableMetadata metadata =
+          TableMetadata.builder()
+              .setSpecName("38.101-3")
+              .setSpecVersion("h50")
+              .setTableSerialNumber("5.3B.1.3-1")
+              .setTableTitle("")
+              .setTableDataRect(rect)
+              .build();
+      IllegalArgumentException paranoidError =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> TableSheetParser.parse(testWorkbook, metadata, Validation.PARANOID));
+      IllegalArgumentException trustedError =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> TableSheetParser.parse(testWorkbook, metadata, Validation.TRUSTED));
+      assertEquals(paranoidError.getMessage(), trustedError.getMessage());
+    }
+  }
+
+  @Test
+  public void parseAll_sameAsParse() {
+    TableMetadata wholeTable = MetadataSheetParser.parse(testWorkbook);
+    TableMetadata partOfTable =
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber("5.3B.1.3-1")
+            .setTableTitle("")
+            .setTableDataRect(ExcelRect.of("A6", "G20"))
+            .build();
+    ImmutableList<ParsedTable> tables =
+        TableSheetParser.parseAll(testWorkbook, ImmutableList.of(wholeTable, partOfTable), pool);
+    assertEquals(
+        ImmutableList.of(
+            ParsedTable.of(wholeTable, TableSheetParser.parse(testWorkbook, wholeTable)),
+            ParsedTable.of(partOfTable, TableSheetParser.parse(testWorkbook, partOfTable))),
+        tables);
+  }
+
+  @Test
+  public void parseAll_failureDueToMissingSheet() {
+    TableMetadata metadata =
+        TableMetadata.builder()
+            .setSpecName("38.101-3")
+            .setSpecVersion("h50")
+            .setTableSerialNumber("5.3B.1.3-1")
+            .setTableTitle("")
+            .setTableSheetName("Table 2")
+            .setTableDataRect(ExcelRect.of("A6", "G20"))
+            .build();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TableSheetParser.parseAll(testWorkbook, ImmutableList.of(metadata), pool));
+  }
 }
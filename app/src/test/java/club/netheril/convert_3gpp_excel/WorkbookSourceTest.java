@@ -0,0 +1,106 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkbookSourceTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final String TEST_FILE_NAME = "table_5.3B.1.3-1.xlsx";
+
+  private Path testFile(String fileName) {
+    try {
+      return Path.of(getClass().getClassLoader().getResource(fileName).toURI());
+    } catch (URISyntaxException | NullPointerException e) {
+      throw new RuntimeException(String.format("Unable to find file '%s'", fileName), e);
+    }
+  }
+
+  private ParsedTable expectedTable() {
+    return App.parseExcelTable(testFile(TEST_FILE_NAME).toString(), null);
+  }
+
+  @Test
+  public void of_path() throws Exception {
+    WorkbookSource source = WorkbookSource.of(testFile(TEST_FILE_NAME));
+
+    assertEquals(expectedTable(), App.parseExcelTable(source, null));
+    assertEquals(expectedTable(), StreamingWorkbookParser.parseTable(source, null));
+  }
+
+  @Test
+  public void of_bytes() throws Exception {
+    WorkbookSource source =
+        WorkbookSource.of(Files.readAllBytes(testFile(TEST_FILE_NAME)), TEST_FILE_NAME);
+
+    assertEquals(expectedTable(), App.parseExcelTable(source, null));
+    assertEquals(expectedTable(), StreamingWorkbookParser.parseTable(source, null));
+  }
+
+  @Test
+  public void of_byteBufferFromPosition() throws Exception {
+    byte[] workbook = Files.readAllBytes(testFile(TEST_FILE_NAME));
+    // The workbook is in the middle of a larger buffer, e.g., a record of an archive.
+    ByteBuffer buffer = ByteBuffer.allocate(workbook.length + 20);
+    buffer.position(10);
+    buffer.put(workbook);
+    buffer.position(10).limit(10 + workbook.length);
+
+    WorkbookSource source = WorkbookSource.of(buffer, TEST_FILE_NAME);
+
+    assertEquals(expectedTable(), App.parseExcelTable(source, null));
+    // Opened again.
+    assertEquals(expectedTable(), StreamingWorkbookParser.parseTable(source, null));
+    assertEquals(10, buffer.position());
+    assertEquals(10 + workbook.length, buffer.limit());
+  }
+
+  @Test
+  public void mapped() throws Exception {
+    WorkbookSource source = WorkbookSource.mapped(testFile(TEST_FILE_NAME));
+
+    assertEquals(testFile(TEST_FILE_NAME).toString(), source.name());
+    assertEquals(expectedTable(), StreamingWorkbookParser.parseTable(source, null));
+  }
+
+  @Test
+  public void open_failureDueToInvalidBytes() {
+    WorkbookSource source =
+        WorkbookSource.of("not a workbook".getBytes(StandardCharsets.UTF_8), "invalid");
+
+    assertThrows(IllegalArgumentException.class, source::open);
+  }
+
+  @Test
+  public void open_failureDueToZipWhichIsNotWorkbook() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      zip.putNextEntry(new ZipEntry("hello.txt"));
+      zip.write("hello".getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    }
+    WorkbookSource source = WorkbookSource.of(bytes.toByteArray(), "hello.zip");
+
+    assertThrows(IllegalArgumentException.class, source::open);
+  }
+
+  @Test
+  public void open_failureDueToMissingFile() {
+    WorkbookSource source = WorkbookSource.of(tempFolder.getRoot().toPath().resolve("missing"));
+
+    assertThrows(IllegalArgumentException.class, source::open);
+  }
+}
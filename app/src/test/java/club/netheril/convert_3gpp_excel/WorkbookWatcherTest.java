@@ -0,0 +1,280 @@
+package club.netheril.convert_3gpp_excel;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkbookWatcherTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final Duration QUIET_PERIOD = Duration.ofMillis(100);
+
+  // Max time to wait for the watcher, which is much longer than it takes, so that a slow machine
+  // (or a polling WatchService, e.g., on macOS) doesn't fail the tests.
+  private static final long TIMEOUT_MILLIS = 30_000;
+
+  private Path watched;
+  private Path output;
+  private final AtomicInteger conversions = new AtomicInteger();
+  private final List<BatchConverter.FileResult> failures = new CopyOnWriteArrayList<>();
+  private WorkbookWatcher watcher;
+  private Thread watcherThread;
+
+  @Before
+  public void setUp() throws IOException {
+    watched = tempFolder.newFolder("watched").toPath();
+    output = tempFolder.newFolder("output").toPath();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (watcher != null) {
+      watcher.close();
+      watcherThread.join(TIMEOUT_MILLIS);
+      assertFalse(watcherThread.isAlive());
+    }
+  }
+
+  // The fake parser converts a "workbook" to a table with its text content in a leaf cell, or to
+  // a table per part of its content separated by ";", whose serial numbers are "5.3B.1.3-<n>".
+  private ImmutableList<ParsedTable> parse(Path file) {
+    conversions.incrementAndGet();
+    try {
+      String content = Files.readString(file);
+      if (content.equals("invalid")) {
+        throw new IllegalArgumentException("Invalid workbook " + file);
+      }
+      ImmutableList.Builder<ParsedTable> tables = ImmutableList.builder();
+      String[] parts = content.split(";");
+      for (int i = 0; i < parts.length; i++) {
+        tables.add(
+            ParsedTable.of(
+                TableMetadata.builder()
+                    .setSpecName("38.101-3")
+                    .setSpecVersion("h50")
+                    .setTableSerialNumber("5.3B.1.3-" + (i + 1))
+                    .setTableTitle("")
+                    .setTableDataRect(ExcelRect.of("A1", "A1"))
+                    .build(),
+                TableData.of(TableRow.of(TableColumn.leaf(parts[i])))));
+      }
+      return tables.build();
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private void startWatcher() throws IOException {
+    watcher =
+        WorkbookWatcher.create(
+            List.of(watched),
+            output,
+            this::parse,
+            BatchConverter.HEAP_BYTES_PER_FILE_BYTE,
+            TableDataWriter.Format.JSON,
+            QUIET_PERIOD,
+            result -> {
+              if (!result.succeeded()) {
+                failures.add(result);
+              }
+            });
+    watcherThread = new Thread(watcher::run);
+    watcherThread.start();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for the watcher", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content);
+  }
+
+  private static String toJson(String cell, Path workbook) throws IOException {
+    return toJson(cell, workbook.toAbsolutePath().toString());
+  }
+
+  private static String toJson(String cell, String source) throws IOException {
+    StringBuilder json = new StringBuilder();
+    TableDataWriter.write(
+        TableData.of(TableRow.of(TableColumn.leaf(cell))),
+        TableDataWriter.Format.JSON,
+        source,
+        json);
+    return json.toString();
+  }
+
+  private static String readIfExists(Path file) {
+    try {
+      return Files.readString(file, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Test
+  public void run_convertsExistingWorkbooks() throws Exception {
+    Path workbook = watched.resolve("38.101-3/a.xlsx");
+    write(workbook, "v1");
+    write(watched.resolve("notes.txt"), "not a workbook");
+    write(watched.resolve("~$a.xlsx"), "lock file");
+
+    startWatcher();
+
+    Path expectedOutput = output.resolve("38.101-3/a.json");
+    await(() -> watcher.convertedCount() == 1);
+    assertEquals(toJson("v1", workbook), Files.readString(expectedOutput));
+    assertEquals(1, conversions.get());
+    try (Stream<Path> files = Files.walk(output)) {
+      assertEquals(1, files.filter(Files::isRegularFile).count());
+    }
+  }
+
+  @Test
+  public void run_reconvertsChangedWorkbook() throws Exception {
+    Path workbook = watched.resolve("a.xlsx");
+    write(workbook, "v1");
+    startWatcher();
+    await(() -> watcher.convertedCount() == 1);
+
+    write(workbook, "v2");
+
+    String expected = toJson("v2", workbook);
+    await(() -> expected.equals(readIfExists(output.resolve("a.json"))));
+    assertEquals(2, watcher.convertedCount());
+  }
+
+  @Test
+  public void run_convertsNewWorkbookInNewDirectory() throws Exception {
+    startWatcher();
+
+    Path workbook = watched.resolve("new/b.xlsx");
+    write(workbook, "v1");
+
+    String expected = toJson("v1", workbook);
+    await(() -> expected.equals(readIfExists(output.resolve("new/b.json"))));
+  }
+
+  @Test
+  public void run_skipsUnchangedContent() throws Exception {
+    Path workbook = watched.resolve("a.xlsx");
+    write(workbook, "v1");
+    startWatcher();
+    await(() -> watcher.convertedCount() == 1);
+
+    // Saved again without any change.
+    write(workbook, "v1");
+
+    await(() -> watcher.skippedCount() == 1);
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  public void run_debouncesBurstOfWrites() throws Exception {
+    startWatcher();
+
+    Path workbook = watched.resolve("a.xlsx");
+    for (int i = 1; i <= 5; i++) {
+      write(workbook, "v" + i);
+    }
+
+    String expected = toJson("v5", workbook);
+    await(() -> expected.equals(readIfExists(output.resolve("a.json"))));
+    Thread.sleep(QUIET_PERIOD.toMillis() * 3);
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  public void run_deletesOutputOfDeletedWorkbook() throws Exception {
+    Path workbook = watched.resolve("a.xlsx");
+    write(workbook, "v1");
+    startWatcher();
+    await(() -> watcher.convertedCount() == 1);
+
+    Files.delete(workbook);
+
+    await(() -> !Files.exists(output.resolve("a.json")));
+  }
+
+  @Test
+  public void run_writesOutputPerTable() throws Exception {
+    Path workbook = watched.resolve("a.xlsx");
+    write(workbook, "x;y");
+    startWatcher();
+    await(() -> watcher.convertedCount() == 1);
+
+    String source = workbook.toAbsolutePath().toString();
+    assertEquals(
+        toJson("x", source + "#5.3B.1.3-1"), Files.readString(output.resolve("a.5.3B.1.3-1.json")));
+    assertEquals(
+        toJson("y", source + "#5.3B.1.3-2"), Files.readString(output.resolve("a.5.3B.1.3-2.json")));
+    assertFalse(Files.exists(output.resolve("a.json")));
+
+    // Outputs of removed tables are deleted.
+    write(workbook, "z");
+
+    String expected = toJson("z", workbook);
+    await(() -> expected.equals(readIfExists(output.resolve("a.json"))));
+    try (Stream<Path> files = Files.walk(output)) {
+      assertEquals(1, files.filter(Files::isRegularFile).count());
+    }
+
+    // All outputs of a deleted workbook are deleted.
+    write(workbook, "x;y");
+    await(() -> Files.exists(output.resolve("a.5.3B.1.3-2.json")));
+    Files.delete(workbook);
+
+    await(() -> !Files.exists(output.resolve("a.5.3B.1.3-1.json")));
+    await(() -> !Files.exists(output.resolve("a.5.3B.1.3-2.json")));
+  }
+
+  @Test
+  public void run_retriesFailedWorkbookWhenItIsSaved() throws Exception {
+    Path workbook = watched.resolve("a.xlsx");
+    write(workbook, "invalid");
+    startWatcher();
+    await(() -> failures.size() == 1);
+    assertFalse(Files.exists(output.resolve("a.json")));
+
+    write(workbook, "v1");
+
+    await(() -> watcher.convertedCount() == 1);
+    assertTrue(Files.exists(output.resolve("a.json")));
+  }
+
+  @Test
+  public void create_failureDueToMissingDirectory() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            WorkbookWatcher.create(
+                List.of(watched.resolve("missing")),
+                output,
+                this::parse,
+                BatchConverter.HEAP_BYTES_PER_FILE_BYTE,
+                TableDataWriter.Format.JSON,
+                QUIET_PERIOD,
+                result -> {}));
+  }
+}